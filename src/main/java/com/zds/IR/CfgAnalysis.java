@@ -0,0 +1,168 @@
+package com.zds.IR;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * CFG 分析算法 (CFG Analysis)
+ * 包级私有类，提供逆后序、支配树和自然循环的计算，结果由 IR.Cfg 缓存。
+ */
+class CfgAnalysis {
+
+    /**
+     * 计算逆后序（迭代 DFS，避免深度递归栈溢出）
+     * @param entry 入口块
+     * @return 从入口可达的块，按逆后序排列
+     */
+    static List<IR.BasicBlock> reversePostorder(IR.BasicBlock entry) {
+        List<IR.BasicBlock> post = new ArrayList<>();
+        Set<IR.BasicBlock> visited = new HashSet<>();
+        Deque<IR.BasicBlock> stack = new ArrayDeque<>();
+        Deque<Integer> next = new ArrayDeque<>(); // 每个栈帧下一个要访问的后继下标
+        visited.add(entry);
+        stack.push(entry);
+        next.push(0);
+        while (!stack.isEmpty()) {
+            IR.BasicBlock b = stack.peek();
+            int i = next.pop();
+            if (i < b.succs.size()) {
+                next.push(i + 1);
+                IR.BasicBlock s = b.succs.get(i);
+                if (visited.add(s)) {
+                    stack.push(s);
+                    next.push(0);
+                }
+            } else {
+                stack.pop();
+                post.add(b);
+            }
+        }
+        Collections.reverse(post);
+        return post;
+    }
+
+    /**
+     * 计算直接支配者（Cooper-Harvey-Kennedy 迭代算法）
+     * @param rpo 逆后序
+     * @param rpoIndex 块 -> 逆后序下标
+     * @return 块 -> 直接支配者（入口块不在结果中）
+     */
+    static Map<IR.BasicBlock, IR.BasicBlock> immediateDominators(List<IR.BasicBlock> rpo, Map<IR.BasicBlock, Integer> rpoIndex) {
+        int n = rpo.size();
+        int[] doms = new int[n];
+        java.util.Arrays.fill(doms, -1);
+        if (n == 0) return new HashMap<>();
+        doms[0] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < n; i++) {
+                IR.BasicBlock b = rpo.get(i);
+                int newIdom = -1;
+                for (IR.BasicBlock p : b.preds) {
+                    Integer pi = rpoIndex.get(p);
+                    if (pi == null || doms[pi] < 0) continue; // 不可达或尚未处理
+                    newIdom = newIdom < 0 ? pi : intersect(doms, pi, newIdom);
+                }
+                if (newIdom >= 0 && doms[i] != newIdom) {
+                    doms[i] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+        Map<IR.BasicBlock, IR.BasicBlock> idom = new HashMap<>();
+        for (int i = 1; i < n; i++) {
+            if (doms[i] >= 0) idom.put(rpo.get(i), rpo.get(doms[i]));
+        }
+        return idom;
+    }
+
+    private static int intersect(int[] doms, int a, int b) {
+        while (a != b) {
+            while (a > b) a = doms[a];
+            while (b > a) b = doms[b];
+        }
+        return a;
+    }
+
+    /**
+     * 计算支配边界（Cooper-Harvey-Kennedy：从每个汇合点的前驱沿支配树向上走到其直接支配者为止）
+     * @param rpo 逆后序
+     * @param idom 直接支配者
+     * @return 块 -> 支配边界
+     */
+    static Map<IR.BasicBlock, Set<IR.BasicBlock>> dominanceFrontiers(List<IR.BasicBlock> rpo, Map<IR.BasicBlock, IR.BasicBlock> idom) {
+        Map<IR.BasicBlock, Set<IR.BasicBlock>> df = new HashMap<>();
+        IR.BasicBlock entry = rpo.isEmpty() ? null : rpo.get(0);
+        for (IR.BasicBlock b : rpo) {
+            if (b.preds.size() < 2) continue;
+            IR.BasicBlock stop = idom.get(b);
+            for (IR.BasicBlock p : b.preds) {
+                if (p != entry && !idom.containsKey(p)) continue; // 不可达前驱
+                for (IR.BasicBlock runner = p; runner != null && runner != stop; runner = idom.get(runner)) {
+                    df.computeIfAbsent(runner, k -> new LinkedHashSet<>()).add(b);
+                }
+            }
+        }
+        return df;
+    }
+
+    /**
+     * 识别自然循环：对每条回边 latch -> header（header 支配 latch），
+     * 从 latch 反向搜索到 header 为止得到循环体；同一 header 的循环合并。
+     * @return 循环列表（外层在前），并设置 parent
+     */
+    static List<IR.Loop> naturalLoops(IR.Cfg cfg, List<IR.BasicBlock> rpo) {
+        Map<IR.BasicBlock, List<IR.BasicBlock>> latchesByHeader = new LinkedHashMap<>();
+        Map<IR.BasicBlock, Integer> order = new HashMap<>();
+        for (int i = 0; i < rpo.size(); i++) order.put(rpo.get(i), i);
+        for (IR.BasicBlock b : rpo) {
+            for (IR.BasicBlock s : b.succs) {
+                // 回边一定是逆后序中的后退边，只对后退边查询支配关系
+                Integer so = order.get(s);
+                if (so != null && so <= order.get(b) && cfg.dominates(s, b)) {
+                    latchesByHeader.computeIfAbsent(s, k -> new ArrayList<>()).add(b);
+                }
+            }
+        }
+        List<IR.Loop> loops = new ArrayList<>();
+        for (Map.Entry<IR.BasicBlock, List<IR.BasicBlock>> e : latchesByHeader.entrySet()) {
+            IR.BasicBlock header = e.getKey();
+            Set<IR.BasicBlock> body = new LinkedHashSet<>();
+            body.add(header);
+            Deque<IR.BasicBlock> work = new ArrayDeque<>();
+            for (IR.BasicBlock latch : e.getValue()) {
+                if (body.add(latch)) work.push(latch);
+            }
+            while (!work.isEmpty()) {
+                IR.BasicBlock b = work.pop();
+                for (IR.BasicBlock p : b.preds) {
+                    if (cfg.isReachable(p) && body.add(p)) work.push(p);
+                }
+            }
+            loops.add(new IR.Loop(header, e.getValue(), body));
+        }
+        // 外层循环（块更多）在前；parent 为包含它的最小循环
+        loops.sort((x, y) -> Integer.compare(y.blocks().size(), x.blocks().size()));
+        for (int i = 0; i < loops.size(); i++) {
+            IR.Loop inner = loops.get(i);
+            for (int j = i - 1; j >= 0; j--) {
+                IR.Loop outer = loops.get(j);
+                if (outer.contains(inner.header()) && outer.blocks().containsAll(inner.blocks())) {
+                    inner.parent = outer;
+                    break;
+                }
+            }
+        }
+        return loops;
+    }
+}
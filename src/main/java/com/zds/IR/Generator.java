@@ -12,14 +12,15 @@ import java.util.List;
  */
 class Generator {
     private final Semantic.Result sem; // 语义分析结果
-    private final List<IR.Quad> out = new ArrayList<>(); // 存储生成的四元式
+    private final IR.QuadSink out; // 四元式的消费者（生成一条交出一条）
     private final List<String> errors = new ArrayList<>(); // 存储错误信息
 
     private int tempId = 0; // 临时变量ID计数器
     private int labelId = 0; // 标签ID计数器
 
-    Generator(Semantic.Result sem) {
+    Generator(Semantic.Result sem, IR.QuadSink out) {
         this.sem = sem;
+        this.out = out;
     }
 
     public List<String> getErrors() {
@@ -27,17 +28,15 @@ class Generator {
     }
 
     /**
-     * 运行IR生成器，将AST转换为四元式列表
+     * 运行IR生成器，将AST转换为四元式并依次交给 sink
      * @param program 程序AST根节点
-     * @return 生成的四元式列表
      */
-    List<IR.Quad> run(Parser.Program program) {
+    void run(Parser.Program program) {
         if (program != null) {
             for (Parser.Stmt s : program.statements) {
                 genStmt(s);
             }
         }
-        return out;
     }
 
     // -------- stmt --------
@@ -59,8 +58,8 @@ class Generator {
         if (stmt instanceof Parser.VarDecl) {
             Parser.VarDecl d = (Parser.VarDecl) stmt;
             if (d.init != null) {
-                String rhs = genExpr(d.init); // 生成初始化表达式
-                emit(":=", rhs, "_", d.name); // 生成赋值四元式
+                Semantic.Symbol sym = sem == null ? null : sem.symbolOf(d);
+                genInto(d.init, sym, varOf(sym, d.name)); // 初始化表达式直接写入变量
             }
             return;
         }
@@ -68,8 +67,8 @@ class Generator {
         // 处理赋值语句
         if (stmt instanceof Parser.Assign) {
             Parser.Assign a = (Parser.Assign) stmt;
-            String rhs = genExpr(a.value); // 生成右值表达式
-            emit(":=", rhs, "_", a.name); // 生成赋值四元式
+            Semantic.Symbol sym = sem == null ? null : sem.symbolOf(a);
+            genInto(a.value, sym, varOf(sym, a.name)); // 右值表达式直接写入变量
             return;
         }
 
@@ -83,38 +82,38 @@ class Generator {
         // 处理if语句
         if (stmt instanceof Parser.IfStmt) {
             Parser.IfStmt i = (Parser.IfStmt) stmt;
-            String L_then = newLabel(); // then分支标签
-            String L_else = newLabel(); // else分支标签
-            String L_end  = newLabel(); // 结束标签
+            IR.Operand L_then = newLabel(); // then分支标签
+            IR.Operand L_else = newLabel(); // else分支标签
+            IR.Operand L_end  = newLabel(); // 结束标签
 
             emitCondJump(i.condition, L_then, L_else); // 根据条件跳转
 
-            emit("label", L_then, "_", "_"); // then标签
+            emitLabel(L_then); // then标签
             genStmt(i.thenBranch); // 生成then分支代码
-            emit("j", "_", "_", L_end); // 跳转到结束
+            emitJump(L_end); // 跳转到结束
 
-            emit("label", L_else, "_", "_"); // else标签
+            emitLabel(L_else); // else标签
             if (i.elseBranch != null) genStmt(i.elseBranch); // 生成else分支代码
 
-            emit("label", L_end, "_", "_"); // 结束标签
+            emitLabel(L_end); // 结束标签
             return;
         }
 
         // 处理while循环
         if (stmt instanceof Parser.WhileStmt) {
             Parser.WhileStmt w = (Parser.WhileStmt) stmt;
-            String L_begin = newLabel(); // 循环开始标签
-            String L_body  = newLabel(); // 循环体标签
-            String L_end   = newLabel(); // 循环结束标签
+            IR.Operand L_begin = newLabel(); // 循环开始标签
+            IR.Operand L_body  = newLabel(); // 循环体标签
+            IR.Operand L_end   = newLabel(); // 循环结束标签
 
-            emit("label", L_begin, "_", "_"); // 开始标签
+            emitLabel(L_begin); // 开始标签
             emitCondJump(w.condition, L_body, L_end); // 根据条件判断是否进入循环体或结束
 
-            emit("label", L_body, "_", "_"); // 循环体标签
+            emitLabel(L_body); // 循环体标签
             genStmt(w.body); // 生成循环体代码
-            emit("j", "_", "_", L_begin); // 跳转到循环开始
+            emitJump(L_begin); // 跳转到循环开始
 
-            emit("label", L_end, "_", "_"); // 结束标签
+            emitLabel(L_end); // 结束标签
             return;
         }
 
@@ -125,27 +124,27 @@ class Generator {
             // 处理初始化语句
             if (f.init != null) genStmt(f.init);
 
-            String L_begin = newLabel(); // 循环开始标签
-            String L_body  = newLabel(); // 循环体标签
-            String L_end   = newLabel(); // 循环结束标签
+            IR.Operand L_begin = newLabel(); // 循环开始标签
+            IR.Operand L_body  = newLabel(); // 循环体标签
+            IR.Operand L_end   = newLabel(); // 循环结束标签
 
-            emit("label", L_begin, "_", "_"); // 开始标签
+            emitLabel(L_begin); // 开始标签
 
             if (f.cond != null) {
                 emitCondJump(f.cond, L_body, L_end); // 根据条件判断是否进入循环体或结束
             } else {
                 // cond 为空：视为 true
-                emit("j", "_", "_", L_body);
+                emitJump(L_body);
             }
 
-            emit("label", L_body, "_", "_"); // 循环体标签
+            emitLabel(L_body); // 循环体标签
             genStmt(f.body); // 生成循环体代码
 
             // 处理步进语句
             if (f.step != null) genStmt(f.step);
 
-            emit("j", "_", "_", L_begin); // 跳转到循环开始
-            emit("label", L_end, "_", "_"); // 结束标签
+            emitJump(L_begin); // 跳转到循环开始
+            emitLabel(L_end); // 结束标签
             return;
         }
 
@@ -156,56 +155,98 @@ class Generator {
     /**
      * 生成表达式的IR代码
      * @param expr 待处理的表达式
-     * @return 表达式结果的存储位置
+     * @return 表达式结果的存储位置（常量、变量或临时变量）
      */
-    private String genExpr(Parser.Expr expr) {
-        if (expr == null) return "0";
+    private IR.Operand genExpr(Parser.Expr expr) {
+        return genExpr(expr, null);
+    }
+
+    /**
+     * 生成表达式的IR代码（目标驱动）
+     * target 不为空时，表达式的最后一条运算直接写入 target，避免先算到临时变量再复制；
+     * 子表达式仍然使用临时变量，所以 target 只会在所有操作数都读完之后才被写入（x = x + 1 也安全）。
+     * @param expr 待处理的表达式
+     * @param target 结果的目标位置（可为 null）
+     * @return 表达式结果的存储位置（target 不为空时就是 target）
+     */
+    private IR.Operand genExpr(Parser.Expr expr, IR.Operand target) {
+        if (expr == null) return deliver(IR.Operand.ofInt(0), target);
 
         // 处理字面量
         if (expr instanceof Parser.Literal) {
             Object v = ((Parser.Literal) expr).value;
-            if (v == null) return "0";
-            if (v instanceof String) return "\"" + v + "\"";
-            return String.valueOf(v);
+            if (v == null) return deliver(IR.Operand.ofInt(0), target);
+            if (v instanceof String) return deliver(IR.Operand.ofString((String) v), target);
+            if (v instanceof Integer || v instanceof Long) return deliver(IR.Operand.ofInt(((Number) v).longValue()), target);
+            if (v instanceof Number) return deliver(IR.Operand.ofDouble(((Number) v).doubleValue()), target);
+            return deliver(IR.Operand.parse(String.valueOf(v)), target);
         }
 
         // 处理变量
         if (expr instanceof Parser.Var) {
-            return ((Parser.Var) expr).name;
+            Parser.Var v = (Parser.Var) expr;
+            return deliver(varOf(sem == null ? null : sem.symbolOf(v), v.name), target);
         }
 
         // 处理一元运算
         if (expr instanceof Parser.Unary) {
             Parser.Unary u = (Parser.Unary) expr;
-            String x = genExpr(u.expr);
 
             if (u.op.equals("+")) {
-                return x;
+                return genExpr(u.expr, target);
             }
+            IR.Operand x = genExpr(u.expr);
             if (u.op.equals("-")) {
-                String t = newTemp(); // 创建临时变量
-                emit("neg", x, "_", t); // 生成取负四元式
+                IR.Operand t = target != null ? target : newTemp(); // 目标或新临时变量
+                emit(typedOp("neg", typeOf(u)), x, IR.Operand.NONE, t); // 生成取负四元式（ineg / dneg）
                 return t;
             }
 
             errors.add("IR错误: 未知一元运算符 " + u.op);
-            return x;
+            return deliver(x, target);
         }
 
         // 处理二元运算
         if (expr instanceof Parser.Binary) {
             Parser.Binary b = (Parser.Binary) expr;
-            String a = genExpr(b.left); // 左操作数
-            String c = genExpr(b.right); // 右操作数
+            Semantic.Type type = typeOf(b);
+            IR.Operand a = genExpr(b.left); // 左操作数
+            IR.Operand c = genExpr(b.right); // 右操作数
+            if (type == Semantic.Type.DOUBLE) {
+                // 混合运算：int 一侧显式转换为 double
+                a = coerce(a, typeOf(b.left), type, null);
+                c = coerce(c, typeOf(b.right), type, null);
+            }
 
-            // 算术 / 比较 都先按"产生一个临时量"处理（比较通常用于条件跳转时会走 emitCondJump）
-            String t = newTemp(); // 创建临时变量
-            emit(b.op, a, c, t); // 生成运算四元式
+            // 算术 / 比较 都产生一个结果（比较通常用于条件跳转时会走 emitCondJump）
+            IR.Operand t = target != null ? target : newTemp(); // 目标或新临时变量
+            emit(typedOp(b.op, type), a, c, t); // 生成运算四元式（iadd / dadd / concat ...）
             return t;
         }
 
         errors.add("IR错误: 未知表达式类型 " + expr.getClass().getSimpleName());
-        return "0";
+        return deliver(IR.Operand.ofInt(0), target);
+    }
+
+    /**
+     * 把表达式的值写入变量 dest：需要 int -> double 转换时由 i2d 直接写入，否则目标驱动地生成表达式
+     */
+    private void genInto(Parser.Expr value, Semantic.Symbol sym, IR.Operand dest) {
+        Semantic.Type from = typeOf(value);
+        if (sym != null && from == Semantic.Type.INT && sym.type == Semantic.Type.DOUBLE) {
+            coerce(genExpr(value), from, sym.type, dest);
+        } else {
+            genExpr(value, dest);
+        }
+    }
+
+    /**
+     * 把已经求出的值交给 target：target 为空或就是该值时不生成代码，否则生成一条复制
+     */
+    private IR.Operand deliver(IR.Operand value, IR.Operand target) {
+        if (target == null || target.equals(value)) return value;
+        emit(":=", value, IR.Operand.NONE, target);
+        return target;
     }
 
     // -------- cond jump（控制流关键）--------
@@ -215,23 +256,29 @@ class Generator {
      * @param trueLabel 条件为真时跳转的目标标签
      * @param falseLabel 条件为假时跳转的目标标签
      */
-    private void emitCondJump(Parser.Expr cond, String trueLabel, String falseLabel) {
+    private void emitCondJump(Parser.Expr cond, IR.Operand trueLabel, IR.Operand falseLabel) {
         // 期望：cond 是比较 Binary（< <= > >= == !=）
         if (cond instanceof Parser.Binary) {
             Parser.Binary b = (Parser.Binary) cond;
             if (isRelOp(b.op)) {
-                String left = genExpr(b.left);
-                String right = genExpr(b.right);
+                IR.Operand left = genExpr(b.left);
+                IR.Operand right = genExpr(b.right);
+                Semantic.Type lt = typeOf(b.left), rt = typeOf(b.right);
+                if (lt == Semantic.Type.DOUBLE || rt == Semantic.Type.DOUBLE) {
+                    // int 与 double 比较：int 一侧显式转换为 double
+                    left = coerce(left, lt, Semantic.Type.DOUBLE, null);
+                    right = coerce(right, rt, Semantic.Type.DOUBLE, null);
+                }
                 emit("j" + b.op, left, right, trueLabel); // 生成条件跳转
-                emit("j", "_", "_", falseLabel); // 生成无条件跳转到false分支
+                emitJump(falseLabel); // 生成无条件跳转到false分支
                 return;
             }
         }
 
         // fallback：cond 不是比较表达式，就用 "cond != 0" 作为真
-        String place = genExpr(cond);
-        emit("j!=", place, "0", trueLabel);
-        emit("j", "_", "_", falseLabel);
+        IR.Operand place = genExpr(cond);
+        emit("j!=", place, IR.Operand.ofInt(0), trueLabel);
+        emitJump(falseLabel);
     }
 
     /**
@@ -244,33 +291,100 @@ class Generator {
                 || op.equals("==") || op.equals("!=");
     }
 
+    // -------- types --------
+    /**
+     * 表达式的静态类型（没有语义信息时为 ERROR）
+     */
+    private Semantic.Type typeOf(Parser.Expr expr) {
+        return sem == null ? Semantic.Type.ERROR : sem.getType(expr);
+    }
+
+    /**
+     * 按结果类型选择类型化操作码：
+     * INT -> iadd/isub/imul/idiv/ineg，DOUBLE -> dadd/dsub/dmul/ddiv/dneg，STRING 的 + -> concat；
+     * 类型未知时保留无类型的 + - * / neg
+     */
+    private String typedOp(String op, Semantic.Type type) {
+        String name;
+        switch (op) {
+            case "+": name = "add"; break;
+            case "-": name = "sub"; break;
+            case "*": name = "mul"; break;
+            case "/": name = "div"; break;
+            case "neg": name = "neg"; break;
+            default: return op;
+        }
+        if (type == Semantic.Type.STRING && name.equals("add")) return "concat";
+        if (type == Semantic.Type.INT) return "i" + name;
+        if (type == Semantic.Type.DOUBLE) return "d" + name;
+        return op;
+    }
+
+    /**
+     * 把 int 值转换为 target 类型（目前只有 int -> double 需要转换）
+     * 整数常量直接变为浮点常量，其余生成 (i2d, x, _, dest)
+     * @param dest 结果的目标位置（可为 null，此时使用新临时变量）
+     */
+    private IR.Operand coerce(IR.Operand x, Semantic.Type from, Semantic.Type target, IR.Operand dest) {
+        if (from != Semantic.Type.INT || target != Semantic.Type.DOUBLE) return deliver(x, dest);
+        if (x instanceof IR.Operand.IntConst) return deliver(IR.Operand.ofDouble(((IR.Operand.IntConst) x).value), dest);
+        IR.Operand t = dest != null ? dest : newTemp();
+        emit("i2d", x, IR.Operand.NONE, t);
+        return t;
+    }
+
     // -------- utils --------
     /**
-     * 生成四元式并添加到输出列表
+     * 获取变量对应的操作数
+     * 使用语义分析阶段 alpha 重命名后的唯一名称，不同作用域的同名变量互不冲突
+     * @param sym 绑定的符号（可能为空）
+     * @param sourceName 源代码中的名称
+     * @return 变量操作数
+     */
+    private IR.Operand varOf(Semantic.Symbol sym, String sourceName) {
+        return IR.Operand.var(sym != null ? sym.irName : sourceName, sym);
+    }
+
+    /**
+     * 生成四元式并交给 sink
      * @param op 操作符
      * @param a1 操作数1
      * @param a2 操作数2
      * @param res 结果
      */
-    private void emit(String op, String a1, String a2, String res) {
-        out.add(new IR.Quad(op, a1, a2, res));
+    private void emit(String op, IR.Operand a1, IR.Operand a2, IR.Operand res) {
+        out.accept(new IR.Quad(op, a1, a2, res));
+    }
+
+    /**
+     * 生成标签四元式 (label, L, _, _)
+     */
+    private void emitLabel(IR.Operand label) {
+        emit("label", label, IR.Operand.NONE, IR.Operand.NONE);
+    }
+
+    /**
+     * 生成无条件跳转四元式 (j, _, _, L)
+     */
+    private void emitJump(IR.Operand label) {
+        emit("j", IR.Operand.NONE, IR.Operand.NONE, label);
     }
 
     /**
      * 创建新的临时变量
-     * @return 临时变量名
+     * @return 临时变量操作数
      */
-    private String newTemp() {
+    private IR.Operand newTemp() {
         tempId++;
-        return "t" + tempId;
+        return IR.Operand.temp(tempId);
     }
 
     /**
      * 创建新的标签
-     * @return 标签名
+     * @return 标签操作数
      */
-    private String newLabel() {
+    private IR.Operand newLabel() {
         labelId++;
-        return "L" + labelId;
+        return IR.Operand.label("L" + labelId);
     }
 }
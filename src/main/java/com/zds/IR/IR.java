@@ -3,7 +3,17 @@ package com.zds.IR;
 import com.zds.Semantic.Semantic;
 import com.zds.parser.Parser;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * 中间代码生成器 (IR Generator)
@@ -22,12 +32,82 @@ public class IR {
      * @return 四元式列表
      */
     public static List<Quad> generate(Parser.Program program, Semantic.Result sem, List<String> outErrors) {
-        Generator g = new Generator(sem);
-        List<Quad> quads = g.run(program);
-        if (outErrors != null) outErrors.addAll(g.getErrors());
+        List<Quad> quads = new ArrayList<>();
+        generate(program, sem, quads::add, outErrors);
         return quads;
     }
 
+    /**
+     * 流式生成中间代码：每条四元式生成后立即交给 sink，全部生成后调用 sink.finish()
+     * 整个程序的四元式列表不需要存在（下游可以是按块优化的 sink 或直接生成汇编）。
+     * @param program 程序 AST
+     * @param sem 语义分析结果
+     * @param sink 四元式消费者
+     * @param outErrors 错误收集列表
+     */
+    public static void generate(Parser.Program program, Semantic.Result sem, QuadSink sink, List<String> outErrors) {
+        Generator g = new Generator(sem, sink);
+        g.run(program);
+        sink.finish();
+        if (outErrors != null) outErrors.addAll(g.getErrors());
+    }
+
+    /**
+     * 判断操作数是否为编译器生成的临时变量 (t1, t2, ...；SSA 版本形如 t1.2)
+     * 语义分析阶段会把形如 t1 的用户变量重命名为 t1#1，因此该判断不会误伤用户变量（如 total）。
+     */
+    public static boolean isTemp(String value) {
+        if (value == null || value.length() < 2 || value.charAt(0) != 't') return false;
+        int dot = value.indexOf('.');
+        int end = dot < 0 ? value.length() : dot;
+        if (end < 2 || !allDigits(value, 1, end)) return false;
+        return dot < 0 || (dot + 1 < value.length() && allDigits(value, dot + 1, value.length()));
+    }
+
+    private static boolean allDigits(String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!Character.isDigit(s.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 保存预编译单元（版本化二进制格式，见 UnitCodec）
+     * @param file 目标文件（先写临时文件再替换，避免读到半个文件）
+     * @param unit 四元式 + 符号表
+     */
+    public static void saveUnit(Path file, Unit unit) throws IOException {
+        UnitCodec.write(file, unit);
+    }
+
+    /**
+     * 加载预编译单元：整个文件一次读入，不做任何词法/语法分析或文本解析
+     * @throws IOException 文件损坏（含长度字段越界）、魔数或格式版本不符时抛出
+     */
+    public static Unit loadUnit(Path file) throws IOException {
+        return UnitCodec.read(file);
+    }
+
+    /**
+     * 转换为 SSA 形式（原地修改 cfg）
+     * 用户变量与临时变量都会重命名为版本化名称（x.1, t3.1），汇合点按支配边界插入 phi。
+     * 每个出口块末尾会追加 (:=, x.k, _, x)，把各用户变量的最终版本写回原名，保证程序结束时的状态可观察。
+     * @param cfg 控制流图
+     * @return SSA 信息（定义-使用链等）
+     */
+    public static Ssa toSsa(Cfg cfg) {
+        return new SsaBuilder(cfg).build();
+    }
+
+    /**
+     * 退出 SSA 形式（原地修改 cfg）：phi 消除为前驱块中的并行复制并顺序化，
+     * 不冲突的版本合并回原变量名，其余版本保留为独立变量。
+     * @param ssa toSsa 的返回值
+     */
+    public static void fromSsa(Ssa ssa) {
+        new SsaDestructor(ssa).run();
+    }
+
     /**
      * 打印四元式列表到控制台
      */
@@ -51,11 +131,37 @@ public class IR {
         public final String arg2;    // 第二个操作数 (可为 "_")
         public final String result;  // 结果变量或跳转目标
 
+        public final Operand left;   // arg1 的类型化形式
+        public final Operand right;  // arg2 的类型化形式
+        public final Operand dest;   // result 的类型化形式
+
+        /**
+         * 由字符串构造：每个操作数只在这里分类一次
+         * label 的 arg1 和跳转的 result 按位置识别为标签
+         */
         public Quad(String op, String arg1, String arg2, String result) {
             this.op = op;
             this.arg1 = arg1;
             this.arg2 = arg2;
             this.result = result;
+            boolean isLabelOp = "label".equals(op);
+            boolean isJumpOp = op != null && op.startsWith("j");
+            this.left = isLabelOp ? Operand.label(arg1) : Operand.parse(arg1);
+            this.right = Operand.parse(arg2);
+            this.dest = isJumpOp ? Operand.label(result) : Operand.parse(result);
+        }
+
+        /**
+         * 由类型化操作数构造（IR.Generator 与优化器使用）
+         */
+        public Quad(String op, Operand left, Operand right, Operand dest) {
+            this.op = op;
+            this.left = left == null ? Operand.NONE : left;
+            this.right = right == null ? Operand.NONE : right;
+            this.dest = dest == null ? Operand.NONE : dest;
+            this.arg1 = this.left.text;
+            this.arg2 = this.right.text;
+            this.result = this.dest.text;
         }
 
         @Override
@@ -63,4 +169,1109 @@ public class IR {
             return "(" + op + ", " + arg1 + ", " + arg2 + ", " + result + ")";
         }
     }
+
+    /**
+     * 四元式消费者 (Quad Sink)
+     * IR.Generator 每生成一条四元式就调用一次 accept；生成结束后调用 finish 刷出缓冲。
+     * 可以是一个列表（quads::add）、按基本块优化的 sink（Optimizer.blockSink）或汇编生成器（CodeGen.sink）。
+     */
+    @FunctionalInterface
+    public interface QuadSink {
+        void accept(Quad q);
+
+        /** 输入结束（默认什么也不做） */
+        default void finish() {
+        }
+    }
+
+    /**
+     * 类型化操作数 (Operand)
+     * 由 IR.Generator 一次性创建，后续阶段通过 kind 字段判断类别，不再反复解析字符串。
+     */
+    public abstract static class Operand {
+        /** 操作数类别 */
+        public enum Kind {
+            TEMP,   // 临时变量 t1, t2 ...
+            VAR,    // 用户变量（alpha 重命名后的 IR 名称）
+            INT,    // 整数常量
+            DOUBLE, // 浮点常量
+            STRING, // 字符串常量（text 带引号）
+            LABEL,  // 跳转标签 L1, L2 ...
+            NONE    // 占位符 "_"
+        }
+
+        /** 占位符 "_" */
+        public static final Operand NONE = new None();
+
+        public final Kind kind;
+        public final String text; // 在四元式中的文本形式
+
+        private Operand(Kind kind, String text) {
+            this.kind = kind;
+            this.text = text;
+        }
+
+        public boolean isTemp() { return kind == Kind.TEMP; }
+        public boolean isVar() { return kind == Kind.VAR; }
+        public boolean isNumeric() { return kind == Kind.INT || kind == Kind.DOUBLE; }
+        public boolean isConst() { return isNumeric() || kind == Kind.STRING; }
+
+        /**
+         * 数值常量的值（非数值常量返回 NaN）
+         */
+        public double numericValue() {
+            return Double.NaN;
+        }
+
+        // -------- factories --------
+
+        public static Operand temp(int id) {
+            return new Temp(id);
+        }
+
+        public static Operand var(String irName, Semantic.Symbol symbol) {
+            return new Var(irName, symbol);
+        }
+
+        public static Operand ofInt(long value) {
+            return new IntConst(value);
+        }
+
+        public static Operand ofDouble(double value) {
+            return new DoubleConst(value);
+        }
+
+        public static Operand ofString(String value) {
+            return new StringConst(value);
+        }
+
+        /**
+         * 数值常量：整数值使用 IntConst，其余使用 DoubleConst
+         */
+        public static Operand ofNumber(double value) {
+            if (Math.rint(value) == value && !Double.isInfinite(value) && Math.abs(value) < 9.0e15) {
+                return new IntConst((long) value);
+            }
+            return new DoubleConst(value);
+        }
+
+        /**
+         * SSA 版本：与 base 同类别，文本为 base.version（如 x.2, t3.1）
+         */
+        public static Operand versioned(Operand base, int version) {
+            String text = base.text + "." + version;
+            if (base instanceof Temp) return new Temp(((Temp) base).id, text);
+            if (base instanceof Var) return new Var(text, ((Var) base).symbol);
+            throw new IllegalArgumentException("只有变量和临时变量可以版本化: " + base);
+        }
+
+        /**
+         * 由已解码的字段直接重建操作数（预编译单元加载时使用，不解析文本）
+         * @param text 文本形式（STRING 为去掉引号的内容）
+         * @param bits TEMP 为编号，INT 为数值，DOUBLE 为 Double.doubleToRawLongBits 的结果
+         * @param symbol VAR 的符号（可为 null）
+         */
+        static Operand restore(Kind kind, String text, long bits, Semantic.Symbol symbol) {
+            switch (kind) {
+                case TEMP: return new Temp((int) bits, text);
+                case VAR: return new Var(text, symbol);
+                case INT: return new IntConst(bits, text);
+                case DOUBLE: return new DoubleConst(Double.longBitsToDouble(bits), text);
+                case STRING: return new StringConst(text);
+                case LABEL: return new Label(text);
+                default: return NONE;
+            }
+        }
+
+        public static Operand label(String name) {
+            if (name == null) return NONE;
+            if ("_".equals(name)) return NONE;
+            return new Label(name);
+        }
+
+        /**
+         * 由文本分类操作数（兼容字符串构造的四元式；不会识别标签）
+         * 逐字符扫描数字格式，不依赖异常。
+         */
+        public static Operand parse(String text) {
+            if (text == null || "_".equals(text)) return NONE;
+            int n = text.length();
+            if (n >= 2 && text.charAt(0) == '"' && text.charAt(n - 1) == '"') {
+                return new StringConst(text.substring(1, n - 1));
+            }
+            if (IR.isTemp(text)) {
+                int dot = text.indexOf('.');
+                String digits = text.substring(1, dot < 0 ? n : dot);
+                if (digits.length() <= 9) return new Temp(Integer.parseInt(digits), text);
+            }
+            switch (numberShape(text)) {
+                case 1:
+                    try {
+                        return new IntConst(Long.parseLong(text), text);
+                    } catch (NumberFormatException ex) {
+                        return new DoubleConst(Double.parseDouble(text), text); // 超出 long 范围
+                    }
+                case 2:
+                    return new DoubleConst(Double.parseDouble(text), text);
+                default:
+                    return new Var(text, null);
+            }
+        }
+
+        /**
+         * 判断文本的数字形态：0 不是数字，1 整数，2 浮点数
+         */
+        private static int numberShape(String s) {
+            int n = s.length();
+            int i = 0;
+            if (i < n && (s.charAt(i) == '-' || s.charAt(i) == '+')) i++;
+            if (s.startsWith("Infinity", i) && i + 8 == n) return 2;
+            if (s.equals("NaN")) return 2;
+            int digits = 0;
+            while (i < n && Character.isDigit(s.charAt(i))) { i++; digits++; }
+            boolean real = false;
+            if (i < n && s.charAt(i) == '.') {
+                real = true;
+                i++;
+                while (i < n && Character.isDigit(s.charAt(i))) { i++; digits++; }
+            }
+            if (digits == 0) return 0;
+            if (i < n && (s.charAt(i) == 'E' || s.charAt(i) == 'e')) {
+                real = true;
+                i++;
+                if (i < n && (s.charAt(i) == '-' || s.charAt(i) == '+')) i++;
+                int exp = 0;
+                while (i < n && Character.isDigit(s.charAt(i))) { i++; exp++; }
+                if (exp == 0) return 0;
+            }
+            if (i != n) return 0;
+            return real ? 2 : 1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Operand)) return false;
+            Operand other = (Operand) o;
+            return kind == other.kind && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return kind.hashCode() * 31 + text.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+
+        /** 临时变量 */
+        public static final class Temp extends Operand {
+            public final int id;
+
+            private Temp(int id) {
+                this(id, "t" + id);
+            }
+
+            private Temp(int id, String text) {
+                super(Kind.TEMP, text);
+                this.id = id;
+            }
+        }
+
+        /** 用户变量，symbol 为语义分析的符号（由字符串解析得到时为 null） */
+        public static final class Var extends Operand {
+            public final Semantic.Symbol symbol;
+
+            private Var(String irName, Semantic.Symbol symbol) {
+                super(Kind.VAR, irName);
+                this.symbol = symbol;
+            }
+        }
+
+        /** 整数常量 */
+        public static final class IntConst extends Operand {
+            public final long value;
+
+            private IntConst(long value) {
+                this(value, Long.toString(value));
+            }
+
+            private IntConst(long value, String text) {
+                super(Kind.INT, text);
+                this.value = value;
+            }
+
+            @Override
+            public double numericValue() {
+                return value;
+            }
+        }
+
+        /** 浮点常量 */
+        public static final class DoubleConst extends Operand {
+            public final double value;
+
+            private DoubleConst(double value) {
+                this(value, Double.toString(value));
+            }
+
+            private DoubleConst(double value, String text) {
+                super(Kind.DOUBLE, text);
+                this.value = value;
+            }
+
+            @Override
+            public double numericValue() {
+                return value;
+            }
+        }
+
+        /** 字符串常量，value 为去掉引号的内容 */
+        public static final class StringConst extends Operand {
+            public final String value;
+
+            private StringConst(String value) {
+                super(Kind.STRING, "\"" + value + "\"");
+                this.value = value;
+            }
+        }
+
+        /** 跳转标签 */
+        public static final class Label extends Operand {
+            private Label(String name) {
+                super(Kind.LABEL, name);
+            }
+        }
+
+        /** 占位符 */
+        private static final class None extends Operand {
+            private None() {
+                super(Kind.NONE, "_");
+            }
+        }
+    }
+
+    /**
+     * 基本块 (Basic Block)
+     * 以若干标签开头（可以没有），块内不含标签；跳转指令只会出现在块尾。
+     * 生成器产生的 (j<, a, b, L1) (j, _, _, L2) 会被切分为两个块：
+     * 条件跳转所在块的顺序后继是只含 (j, _, _, L2) 的块。
+     */
+    public static final class BasicBlock {
+        private final int id;
+        private final List<Operand> labels = new ArrayList<>();
+        private final List<Quad> quads = new ArrayList<>();
+        final List<BasicBlock> succs = new ArrayList<>();
+        final List<BasicBlock> preds = new ArrayList<>();
+        final List<Phi> phis = new ArrayList<>();
+        BasicBlock layoutPrev;  // 布局中的前一个 / 后一个块（由 Cfg 维护）
+        BasicBlock layoutNext;
+        boolean inLayout;
+        final List<String> mappedLabels = new ArrayList<>(); // 在 Cfg 标签表中登记为本块的标签
+
+        BasicBlock(int id) {
+            this.id = id;
+        }
+
+        /** 块编号（在所属 CFG 内唯一，删除块后不复用） */
+        public int id() { return id; }
+
+        /** 块首标签（可修改，修改后需调用 Cfg.updateEdges 重新解析跳转） */
+        public List<Operand> labels() { return labels; }
+
+        /** 块内四元式（不含标签，可修改，修改块尾跳转后需调用 Cfg.updateEdges） */
+        public List<Quad> quads() { return quads; }
+
+        /** 块首的 phi（仅 SSA 形式下非空） */
+        public List<Phi> phis() { return phis; }
+
+        /** 后继块（条件跳转时先是跳转目标，再是顺序后继） */
+        public List<BasicBlock> successors() { return Collections.unmodifiableList(succs); }
+
+        /** 前驱块 */
+        public List<BasicBlock> predecessors() { return Collections.unmodifiableList(preds); }
+
+        /**
+         * 块尾跳转指令（没有则返回 null）
+         */
+        public Quad terminator() {
+            if (quads.isEmpty()) return null;
+            Quad last = quads.get(quads.size() - 1);
+            return isJumpOp(last.op) ? last : null;
+        }
+
+        /**
+         * 块是否可能顺序执行到布局中的下一个块（不以无条件跳转结尾）
+         */
+        public boolean fallsThrough() {
+            Quad t = terminator();
+            return t == null || !"j".equals(t.op);
+        }
+
+        @Override
+        public String toString() {
+            return "B" + id + (labels.isEmpty() ? "" : labels.toString());
+        }
+    }
+
+    /**
+     * 自然循环 (Natural Loop)
+     * 由回边 latch -> header（header 支配 latch）确定，同一 header 的多条回边合并为一个循环。
+     */
+    public static final class Loop {
+        private final BasicBlock header;
+        private final List<BasicBlock> latches;
+        private final Set<BasicBlock> blocks;
+        Loop parent;
+
+        Loop(BasicBlock header, List<BasicBlock> latches, Set<BasicBlock> blocks) {
+            this.header = header;
+            this.latches = latches;
+            this.blocks = blocks;
+        }
+
+        /** 循环头 */
+        public BasicBlock header() { return header; }
+
+        /** 回边的源块 */
+        public List<BasicBlock> latches() { return Collections.unmodifiableList(latches); }
+
+        /** 循环体（包含循环头） */
+        public Set<BasicBlock> blocks() { return Collections.unmodifiableSet(blocks); }
+
+        /** 直接外层循环（最外层为 null） */
+        public Loop parent() { return parent; }
+
+        public boolean contains(BasicBlock b) {
+            return blocks.contains(b);
+        }
+
+        /**
+         * 循环出口边的目标块（循环外、且有循环内前驱的块）
+         */
+        public List<BasicBlock> exits() {
+            Set<BasicBlock> out = new LinkedHashSet<>();
+            for (BasicBlock b : blocks) {
+                for (BasicBlock s : b.succs) {
+                    if (!blocks.contains(s)) out.add(s);
+                }
+            }
+            return new ArrayList<>(out);
+        }
+
+        @Override
+        public String toString() {
+            return "Loop(header=" + header + ", blocks=" + blocks.size() + ")";
+        }
+    }
+
+    /**
+     * 控制流图 (Control-Flow Graph)
+     * blocks() 保持线性布局顺序，toQuads() 按该顺序输出即可得到等价的四元式序列。
+     *
+     * 增量更新：修改某个块的标签或块尾跳转后调用 updateEdges(block)，
+     * 插入 / 删除块使用 insertBlockAfter / removeBlock，只重算受影响块的边。
+     * 布局是块之间的双向链表，next、插入与删除都是 O(1)；blocks() 的数组形式在结构变化后按需重建。
+     * 跳到尚不存在的标签的块记在待定表中，标签出现时只重算这些块，不扫描整个图。
+     * 逆后序、支配树和循环按需计算并缓存，图结构变化时自动失效。
+     */
+    public static final class Cfg {
+        private BasicBlock first;         // 布局链表的首尾
+        private BasicBlock last;
+        private int size;
+        private List<BasicBlock> layout;  // 缓存：布局顺序的数组形式
+        private final List<BasicBlock> view = new AbstractList<>() {
+            @Override
+            public BasicBlock get(int index) { return layout().get(index); }
+
+            @Override
+            public int size() { return size; }
+        };
+        private final Map<String, BasicBlock> labelMap = new HashMap<>();
+        private final Map<String, Set<BasicBlock>> dangling = new HashMap<>(); // 标签 -> 跳到它但它尚未登记的块
+        private int nextBlockId = 0;
+        private int nextLabelId = 0;
+
+        private List<BasicBlock> rpo;          // 缓存：逆后序（仅可达块）
+        private Map<BasicBlock, BasicBlock> idom; // 缓存：直接支配者
+        private Map<BasicBlock, List<BasicBlock>> domChildren; // 缓存：支配树子节点
+        private Map<BasicBlock, Integer> rpoIndex;
+        private List<Loop> loops;               // 缓存：自然循环
+        private Map<BasicBlock, Loop> innermost; // 缓存：块 -> 包含它的最内层循环
+        private Map<BasicBlock, Set<BasicBlock>> frontiers; // 缓存：支配边界
+
+        private Cfg() {
+        }
+
+        /**
+         * 由线性四元式构建 CFG
+         * 切分规则：label 开始新块（连续的 label 归入同一块），跳转指令结束当前块。
+         */
+        public static Cfg build(List<Quad> quads) {
+            Cfg cfg = new Cfg();
+            BasicBlock current = null;
+            if (quads != null) {
+                for (Quad q : quads) {
+                    if (q == null) continue;
+                    if ("label".equals(q.op)) {
+                        if (current == null || !current.quads.isEmpty()) {
+                            current = cfg.appendBlock();
+                        }
+                        current.labels.add(q.left);
+                        cfg.noteLabel(q.left);
+                        continue;
+                    }
+                    if (current == null) current = cfg.appendBlock();
+                    current.quads.add(q);
+                    if (isJumpOp(q.op)) current = null;
+                }
+            }
+            if (cfg.size == 0) cfg.appendBlock();
+            cfg.rebuildEdges();
+            return cfg;
+        }
+
+        /**
+         * 按布局顺序还原为线性四元式
+         */
+        public List<Quad> toQuads() {
+            List<Quad> out = new ArrayList<>();
+            for (BasicBlock b = first; b != null; b = b.layoutNext) {
+                if (!b.phis.isEmpty()) throw new IllegalStateException("CFG 仍处于 SSA 形式，需先调用 IR.fromSsa");
+                for (Operand l : b.labels) out.add(new Quad("label", l, Operand.NONE, Operand.NONE));
+                out.addAll(b.quads);
+            }
+            return out;
+        }
+
+        /** 所有块（布局顺序，只读视图，随图结构变化） */
+        public List<BasicBlock> blocks() { return view; }
+
+        /** 块编号上界（所有块的 id 都小于它），可作为按块编号索引的数组长度 */
+        public int blockIdBound() { return nextBlockId; }
+
+        /** 入口块 */
+        public BasicBlock entry() { return first; }
+
+        /** 标签 -> 所在块 */
+        public BasicBlock blockOf(String label) { return labelMap.get(label); }
+
+        /** 布局中的下一个块（没有则为 null） */
+        public BasicBlock next(BasicBlock b) {
+            return b.inLayout ? b.layoutNext : null;
+        }
+
+        /**
+         * 是否为出口块：没有后继，或者最后一条不是无条件跳转且布局中没有下一个块（条件跳转不成立时落出程序末尾）
+         */
+        public boolean isExit(BasicBlock b) {
+            return b.succs.isEmpty() || b.fallsThrough() && next(b) == null;
+        }
+
+        /**
+         * 跳转的目标块（非跳转或目标标签不存在时为 null）
+         */
+        public BasicBlock targetOf(Quad jump) {
+            if (jump == null || !isJumpOp(jump.op)) return null;
+            return labelMap.get(jump.result);
+        }
+
+        // -------- analyses --------
+
+        /** 逆后序（只包含从入口可达的块） */
+        public List<BasicBlock> reversePostorder() {
+            if (rpo == null) {
+                rpo = CfgAnalysis.reversePostorder(entry());
+                rpoIndex = new HashMap<>();
+                for (int i = 0; i < rpo.size(); i++) rpoIndex.put(rpo.get(i), i);
+            }
+            return Collections.unmodifiableList(rpo);
+        }
+
+        /** 块是否从入口可达 */
+        public boolean isReachable(BasicBlock b) {
+            reversePostorder();
+            return rpoIndex.containsKey(b);
+        }
+
+        /** 直接支配者（入口块与不可达块返回 null） */
+        public BasicBlock idom(BasicBlock b) {
+            ensureDominators();
+            return idom.get(b);
+        }
+
+        /** 支配树中的子节点 */
+        public List<BasicBlock> dominatorChildren(BasicBlock b) {
+            ensureDominators();
+            return Collections.unmodifiableList(domChildren.getOrDefault(b, List.of()));
+        }
+
+        /** a 是否支配 b（块支配自身） */
+        public boolean dominates(BasicBlock a, BasicBlock b) {
+            ensureDominators();
+            if (!isReachable(a) || !isReachable(b)) return false;
+            for (BasicBlock x = b; x != null; x = idom.get(x)) {
+                if (x == a) return true;
+            }
+            return false;
+        }
+
+        /** 支配边界（只对可达块有意义） */
+        public Set<BasicBlock> dominanceFrontier(BasicBlock b) {
+            if (frontiers == null) {
+                ensureDominators();
+                frontiers = CfgAnalysis.dominanceFrontiers(reversePostorder(), idom);
+            }
+            return Collections.unmodifiableSet(frontiers.getOrDefault(b, Set.of()));
+        }
+
+        /** 自然循环（外层循环在前） */
+        public List<Loop> loops() {
+            if (loops == null) {
+                ensureDominators();
+                loops = CfgAnalysis.naturalLoops(this, reversePostorder());
+            }
+            return Collections.unmodifiableList(loops);
+        }
+
+        /** 包含块 b 的最内层循环（不在循环中返回 null） */
+        public Loop loopOf(BasicBlock b) {
+            if (innermost == null) {
+                innermost = new HashMap<>();
+                for (Loop l : loops()) {
+                    for (BasicBlock x : l.blocks) {
+                        Loop best = innermost.get(x);
+                        if (best == null || best.blocks.size() > l.blocks.size()) innermost.put(x, l);
+                    }
+                }
+            }
+            return innermost.get(b);
+        }
+
+        // -------- incremental updates --------
+
+        /**
+         * 重新解析块 b 的标签和块尾跳转，只更新 b 的出边
+         */
+        public void updateEdges(BasicBlock b) {
+            List<BasicBlock> oldPreds = new ArrayList<>(b.preds);
+            unmapLabels(b);
+            for (Operand l : b.labels) claimLabel(l, b);
+            computeSuccessors(b);
+            for (BasicBlock p : oldPreds) {
+                if (p != b) computeSuccessors(p); // 标签变化可能让原来的跳转失效
+            }
+            refreshJumpsTo(b);
+            invalidate();
+        }
+
+        /**
+         * 在 after 之后插入一个空块（after 为 null 时插入到最前）
+         */
+        public BasicBlock insertBlockAfter(BasicBlock after, List<Operand> labels) {
+            BasicBlock b = new BasicBlock(nextBlockId++);
+            linkAfter(after, b);
+            if (labels != null) {
+                b.labels.addAll(labels);
+                for (Operand l : labels) claimLabel(l, b);
+            }
+            computeSuccessors(b);
+            if (after != null) computeSuccessors(after); // after 的顺序后继变了
+            refreshJumpsTo(b);
+            invalidate();
+            return b;
+        }
+
+        /**
+         * 删除块 b：其标签失效，跳转到这些标签的块、以及布局中的前一个块会重新计算出边
+         * 调用方负责保证删除后不再有指向 b 的跳转（或把它们改为指向其他标签）。
+         */
+        public void removeBlock(BasicBlock b) {
+            if (!b.inLayout) return;
+            for (BasicBlock s : new ArrayList<>(b.succs)) unlink(b, s);
+            List<BasicBlock> preds = new ArrayList<>(b.preds);
+            BasicBlock prev = b.layoutPrev;
+            unlinkLayout(b);
+            unmapLabels(b);
+            for (BasicBlock p : preds) {
+                if (p != b && p.inLayout) computeSuccessors(p);
+            }
+            if (prev != null) computeSuccessors(prev);
+            if (size == 0) appendBlock();
+            invalidate();
+        }
+
+        /**
+         * 批量修改之后整体重建：按各块当前的标签重建标签表，按块尾跳转与布局顺序重算所有块的边
+         * 一次线性扫描，适合一次改动很多块的标签 / 跳转之后调用（逐块修改用 updateEdges）。只用于非 SSA 形式。
+         */
+        public void rebuildEdges() {
+            labelMap.clear();
+            dangling.clear();
+            for (BasicBlock b = first; b != null; b = b.layoutNext) {
+                b.mappedLabels.clear();
+                for (Operand l : b.labels) mapLabel(l, b);
+                b.succs.clear();
+                b.preds.clear();
+            }
+            for (BasicBlock b = first; b != null; b = b.layoutNext) {
+                Quad t = b.terminator();
+                if (t != null) {
+                    BasicBlock target = labelMap.get(t.result);
+                    if (target != null) link(b, target);
+                    else dangle(t.result, b);
+                }
+                if (b.fallsThrough() && b.layoutNext != null) link(b, b.layoutNext);
+            }
+            invalidate();
+        }
+
+        /**
+         * 批量删除块并重建边（见 rebuildEdges）；调用方负责保证不再有指向被删除块的跳转
+         */
+        public void removeBlocks(Set<BasicBlock> dead) {
+            if (dead.isEmpty()) return;
+            for (BasicBlock b : dead) {
+                if (b.inLayout) unlinkLayout(b);
+            }
+            if (size == 0) appendBlock();
+            rebuildEdges();
+        }
+
+        /**
+         * 拆分边 from -> to：在边上插入一个新块并返回它
+         * - 若该边是顺序执行边，新块放在 from 之后（from 跳转到 to 时也改为跳到新块）
+         * - 若该边只是跳转边，新块放在不会被顺序执行到的位置，以 (j, _, _, to) 结尾
+         * to 中 phi 来自 from 的参数改为来自新块。
+         */
+        public BasicBlock splitEdge(BasicBlock from, BasicBlock to) {
+            if (!from.succs.contains(to)) throw new IllegalArgumentException("不存在的边: " + from + " -> " + to);
+            Quad t = from.terminator();
+            boolean viaJump = t != null && labelMap.get(t.result) == to;
+            boolean viaFall = from.fallsThrough() && next(from) == to;
+            BasicBlock mid;
+            if (viaFall) {
+                mid = insertBlockAfter(from, null);
+                if (viaJump) retarget(from, labelOf(mid));
+            } else {
+                mid = insertDetachedBlock();
+                mid.quads.add(new Quad("j", Operand.NONE, Operand.NONE, labelOf(to)));
+                retarget(from, labelOf(mid));
+                computeSuccessors(mid);
+            }
+            for (Phi phi : to.phis) phi.replacePred(from, mid);
+            invalidate();
+            return mid;
+        }
+
+        /**
+         * 循环的前置块 (preheader)：循环外进入循环头的唯一前驱，且只有循环头一个后继；没有时建立一个
+         * - 唯一的循环外前驱只有一个后继时直接返回它
+         * - 唯一的循环外前驱有多个后继时拆分这条边
+         * - 有多个循环外前驱时新建一个块，把它们进入循环头的边都改到新块
+         * - 循环头是入口（没有循环外前驱）时在程序开头插入空块
+         * 不维护 phi（只用于非 SSA 形式的 CFG）。
+         */
+        public BasicBlock preheader(Loop loop) {
+            BasicBlock header = loop.header();
+            List<BasicBlock> outside = new ArrayList<>();
+            for (BasicBlock p : header.preds) {
+                if (!loop.contains(p)) outside.add(p);
+            }
+            if (outside.isEmpty()) {
+                if (header != entry()) throw new IllegalArgumentException("循环头没有循环外前驱: " + header);
+                return insertBlockAfter(null, null);
+            }
+            if (outside.size() == 1) {
+                BasicBlock o = outside.get(0);
+                return o.succs.size() == 1 ? o : splitEdge(o, header);
+            }
+            BasicBlock prev = header.layoutPrev;
+            BasicBlock pre;
+            if (prev != null && outside.contains(prev) && prev.fallsThrough()) {
+                pre = insertBlockAfter(prev, null);
+            } else {
+                pre = insertDetachedBlock();
+                pre.quads.add(new Quad("j", Operand.NONE, Operand.NONE, labelOf(header)));
+                computeSuccessors(pre);
+            }
+            Operand label = labelOf(pre);
+            for (BasicBlock o : outside) {
+                if (targetOf(o.terminator()) == header) retarget(o, label);
+            }
+            invalidate();
+            return pre;
+        }
+
+        /**
+         * 插入一个不会被顺序执行到的空块（放在某个以无条件跳转结尾的块之后）。
+         * 若不存在这样的位置，先在末尾追加 (j, _, _, Lend) 与空的 Lend 块作为落脚点。
+         */
+        public BasicBlock insertDetachedBlock() {
+            BasicBlock anchor = last;
+            while (anchor != null && anchor.fallsThrough()) anchor = anchor.layoutPrev;
+            if (anchor == null) {
+                BasicBlock tail = last;
+                BasicBlock end = insertBlockAfter(tail, List.of(newLabel()));
+                anchor = insertBlockAfter(tail, null);
+                anchor.quads.add(new Quad("j", Operand.NONE, Operand.NONE, end.labels.get(0)));
+                computeSuccessors(anchor);
+            }
+            return insertBlockAfter(anchor, null);
+        }
+
+        /**
+         * 把块 b 尾部跳转的目标改为 label
+         */
+        public void retarget(BasicBlock b, Operand label) {
+            Quad t = b.terminator();
+            if (t == null) throw new IllegalStateException(b + " 没有跳转指令");
+            b.quads.set(b.quads.size() - 1, new Quad(t.op, t.left, t.right, label));
+            computeSuccessors(b);
+            invalidate();
+        }
+
+        /**
+         * 生成一个未被使用的新标签
+         */
+        public Operand newLabel() {
+            Operand l;
+            do {
+                l = Operand.label("L" + (++nextLabelId));
+            } while (labelMap.containsKey(l.text));
+            return l;
+        }
+
+        /**
+         * 确保块 b 有标签（没有则新建一个），返回第一个标签
+         */
+        public Operand labelOf(BasicBlock b) {
+            if (b.labels.isEmpty()) {
+                Operand l = newLabel();
+                b.labels.add(l);
+                mapLabel(l, b);
+            }
+            return b.labels.get(0);
+        }
+
+        /**
+         * 分析缓存失效（结构变化后调用；updateEdges 等方法会自动调用）
+         */
+        public void invalidate() {
+            rpo = null;
+            rpoIndex = null;
+            idom = null;
+            domChildren = null;
+            loops = null;
+            innermost = null;
+            frontiers = null;
+        }
+
+        // -------- internals --------
+
+        private BasicBlock appendBlock() {
+            BasicBlock b = new BasicBlock(nextBlockId++);
+            linkAfter(last, b);
+            return b;
+        }
+
+        /** 布局顺序的数组形式，结构变化后按链表重建 */
+        private List<BasicBlock> layout() {
+            if (layout == null) {
+                List<BasicBlock> list = new ArrayList<>(size);
+                for (BasicBlock b = first; b != null; b = b.layoutNext) list.add(b);
+                layout = list;
+            }
+            return layout;
+        }
+
+        /** 把 b 链入布局，放在 after 之后（after 为 null 时放在最前） */
+        private void linkAfter(BasicBlock after, BasicBlock b) {
+            BasicBlock n = after == null ? first : after.layoutNext;
+            b.layoutPrev = after;
+            b.layoutNext = n;
+            if (after == null) first = b;
+            else after.layoutNext = b;
+            if (n == null) last = b;
+            else n.layoutPrev = b;
+            b.inLayout = true;
+            size++;
+            layout = null;
+        }
+
+        private void unlinkLayout(BasicBlock b) {
+            if (b.layoutPrev == null) first = b.layoutNext;
+            else b.layoutPrev.layoutNext = b.layoutNext;
+            if (b.layoutNext == null) last = b.layoutPrev;
+            else b.layoutNext.layoutPrev = b.layoutPrev;
+            b.layoutPrev = null;
+            b.layoutNext = null;
+            b.inLayout = false;
+            size--;
+            layout = null;
+        }
+
+        /** 登记标签 l 属于块 b，返回原来登记的块 */
+        private BasicBlock mapLabel(Operand l, BasicBlock b) {
+            BasicBlock old = labelMap.put(l.text, b);
+            b.mappedLabels.add(l.text);
+            noteLabel(l);
+            return old;
+        }
+
+        /** 同 mapLabel；标签原属于别的块时，原来跳到它的块改为跳到 b */
+        private void claimLabel(Operand l, BasicBlock b) {
+            BasicBlock old = mapLabel(l, b);
+            if (old == null || old == b) return;
+            for (BasicBlock p : new ArrayList<>(old.preds)) {
+                Quad t = p.terminator();
+                if (t != null && t.result.equals(l.text)) computeSuccessors(p);
+            }
+        }
+
+        /** 注销块 b 登记过的标签（已被别的块登记的不受影响） */
+        private void unmapLabels(BasicBlock b) {
+            for (String t : b.mappedLabels) labelMap.remove(t, b);
+            b.mappedLabels.clear();
+        }
+
+        private void dangle(String label, BasicBlock b) {
+            dangling.computeIfAbsent(label, k -> new LinkedHashSet<>()).add(b);
+        }
+
+        private void noteLabel(Operand label) {
+            String t = label.text;
+            if (t.length() > 1 && t.charAt(0) == 'L') {
+                int n = 0;
+                for (int i = 1; i < t.length(); i++) {
+                    char c = t.charAt(i);
+                    if (c < '0' || c > '9' || n > 100_000_000) return;
+                    n = n * 10 + (c - '0');
+                }
+                nextLabelId = Math.max(nextLabelId, n);
+            }
+        }
+
+        private void computeSuccessors(BasicBlock b) {
+            for (BasicBlock s : new ArrayList<>(b.succs)) unlink(b, s);
+            Quad t = b.terminator();
+            if (t != null) {
+                BasicBlock target = labelMap.get(t.result);
+                if (target != null) link(b, target);
+                else dangle(t.result, b);
+            }
+            if (b.fallsThrough() && b.inLayout && b.layoutNext != null) link(b, b.layoutNext);
+        }
+
+        /** 新块的标签可能让原本悬空的跳转生效 */
+        private void refreshJumpsTo(BasicBlock b) {
+            for (Operand l : b.labels) {
+                Set<BasicBlock> waiting = dangling.remove(l.text);
+                if (waiting == null) continue;
+                for (BasicBlock x : waiting) {
+                    if (x != b && x.inLayout && targetOf(x.terminator()) == b && !x.succs.contains(b)) computeSuccessors(x);
+                }
+            }
+        }
+
+        private static void link(BasicBlock from, BasicBlock to) {
+            if (from.succs.contains(to)) return;
+            from.succs.add(to);
+            to.preds.add(from);
+        }
+
+        private static void unlink(BasicBlock from, BasicBlock to) {
+            from.succs.remove(to);
+            to.preds.remove(from);
+        }
+
+        private void ensureDominators() {
+            if (idom != null) return;
+            List<BasicBlock> order = reversePostorder();
+            idom = CfgAnalysis.immediateDominators(order, rpoIndex);
+            domChildren = new HashMap<>();
+            for (BasicBlock b : order) {
+                BasicBlock d = idom.get(b);
+                if (d != null) domChildren.computeIfAbsent(d, k -> new ArrayList<>()).add(b);
+            }
+        }
+    }
+
+    /**
+     * 预编译单元 (Precompiled Unit)
+     * 一次编译的可缓存结果：（优化后的）四元式 + 语义分析的符号表 + 源码指纹。
+     * 加载得到的 Semantic.Result 只有符号表，不含 AST 相关的表达式类型与名字绑定。
+     */
+    public static final class Unit {
+        /** 二进制格式版本，格式不兼容地变化时递增 */
+        public static final int FORMAT_VERSION = 2;
+
+        private final List<Quad> quads;
+        private final Semantic.Result sem;
+        private final long sourceHash;
+        private final String pipeline;
+
+        /**
+         * @param pipeline 产生这些四元式的优化流水线描述（含优化器版本，由调用方决定），空串表示未优化
+         */
+        public Unit(List<Quad> quads, Semantic.Result sem, long sourceHash, String pipeline) {
+            this.quads = List.copyOf(quads);
+            this.sem = sem;
+            this.sourceHash = sourceHash;
+            this.pipeline = pipeline == null ? "" : pipeline;
+        }
+
+        public List<Quad> quads() { return quads; }
+        public Semantic.Result semantic() { return sem; }
+
+        /** 源码指纹（由调用方计算，用于判断缓存是否过期） */
+        public long sourceHash() { return sourceHash; }
+
+        /** 优化流水线描述（空串表示未优化），用于判断缓存是否由同一优化器、同一流水线产生 */
+        public String pipeline() { return pipeline; }
+
+        /** 四元式是否已经过优化 */
+        public boolean optimized() { return !pipeline.isEmpty(); }
+    }
+
+    /**
+     * phi 函数 (SSA)
+     * dest = phi(来自各前驱的参数)，参数按前驱块索引。
+     */
+    public static final class Phi {
+        private Operand dest;
+        private final Map<BasicBlock, Operand> args = new LinkedHashMap<>();
+
+        Phi(Operand dest) {
+            this.dest = dest;
+        }
+
+        public Operand dest() { return dest; }
+
+        /** 前驱块 -> 参数 */
+        public Map<BasicBlock, Operand> args() { return Collections.unmodifiableMap(args); }
+
+        public Operand argFrom(BasicBlock pred) { return args.get(pred); }
+
+        public void setDest(Operand dest) { this.dest = dest; }
+
+        public void setArg(BasicBlock pred, Operand value) { args.put(pred, value); }
+
+        void replacePred(BasicBlock oldPred, BasicBlock newPred) {
+            Operand v = args.remove(oldPred);
+            if (v != null) args.put(newPred, v);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(dest.text).append(" = phi(");
+            boolean first = true;
+            for (Map.Entry<BasicBlock, Operand> e : args.entrySet()) {
+                if (!first) sb.append(", ");
+                sb.append(e.getKey()).append(": ").append(e.getValue());
+                first = false;
+            }
+            return sb.append(")").toString();
+        }
+    }
+
+    /**
+     * SSA 信息 (SSA Form)
+     * 记录版本名到原变量的映射以及定义-使用链，供稀疏分析使用。
+     * 在 SSA 形式上改写四元式后，调用 refresh() 重新计算定义-使用链。
+     */
+    public static final class Ssa {
+        private final Cfg cfg;
+        private final Map<Operand, Operand> baseOf;
+        private final Set<Quad> exitCopies;
+        private final Map<Operand, BasicBlock> defBlock = new HashMap<>();
+        private final Map<Operand, Quad> defQuad = new HashMap<>();
+        private final Map<Operand, Phi> defPhi = new HashMap<>();
+        private final Map<Operand, List<Quad>> useQuads = new HashMap<>();
+        private final Map<Operand, List<Phi>> usePhis = new HashMap<>();
+
+        Ssa(Cfg cfg, Map<Operand, Operand> baseOf, Set<Quad> exitCopies) {
+            this.cfg = cfg;
+            this.baseOf = baseOf;
+            this.exitCopies = exitCopies;
+            refresh();
+        }
+
+        public Cfg cfg() { return cfg; }
+
+        /** 版本名 -> 原变量（非版本名返回自身） */
+        public Operand baseOf(Operand version) {
+            return baseOf.getOrDefault(version, version);
+        }
+
+        /** 所有版本名 */
+        public Set<Operand> versions() {
+            return Collections.unmodifiableSet(baseOf.keySet());
+        }
+
+        /** 是否为出口处把最终版本写回原名的复制 */
+        public boolean isExitCopy(Quad q) {
+            return exitCopies.contains(q);
+        }
+
+        /** 定义所在块（入口值 x.0 没有定义，返回 null） */
+        public BasicBlock defBlock(Operand v) { return defBlock.get(v); }
+
+        /** 定义该版本的四元式（由 phi 定义时为 null） */
+        public Quad defQuad(Operand v) { return defQuad.get(v); }
+
+        /** 定义该版本的 phi（由四元式定义时为 null） */
+        public Phi defPhi(Operand v) { return defPhi.get(v); }
+
+        /** 使用该版本的四元式 */
+        public List<Quad> useQuads(Operand v) { return useQuads.getOrDefault(v, List.of()); }
+
+        /** 使用该版本的 phi */
+        public List<Phi> usePhis(Operand v) { return usePhis.getOrDefault(v, List.of()); }
+
+        /**
+         * 重新扫描 CFG，计算定义-使用链
+         */
+        public void refresh() {
+            defBlock.clear();
+            defQuad.clear();
+            defPhi.clear();
+            useQuads.clear();
+            usePhis.clear();
+            for (BasicBlock b : cfg.blocks()) {
+                for (Phi phi : b.phis) {
+                    defBlock.put(phi.dest, b);
+                    defPhi.put(phi.dest, phi);
+                    for (Operand a : phi.args.values()) {
+                        if (a.isTemp() || a.isVar()) usePhis.computeIfAbsent(a, k -> new ArrayList<>()).add(phi);
+                    }
+                }
+                for (Quad q : b.quads) {
+                    if (q.left.isTemp() || q.left.isVar()) useQuads.computeIfAbsent(q.left, k -> new ArrayList<>()).add(q);
+                    if (q.right.isTemp() || q.right.isVar()) useQuads.computeIfAbsent(q.right, k -> new ArrayList<>()).add(q);
+                    if (!isJumpOp(q.op) && (q.dest.isTemp() || q.dest.isVar()) && !exitCopies.contains(q)) {
+                        defBlock.put(q.dest, b);
+                        defQuad.put(q.dest, q);
+                    }
+                }
+            }
+        }
+
+        void forgetExitCopy(Quad q) {
+            exitCopies.remove(q);
+        }
+
+        void noteExitCopy(Quad q) {
+            exitCopies.add(q);
+        }
+    }
+
+    /**
+     * 判断操作符是否为跳转（j, j<, j== ...）
+     */
+    static boolean isJumpOp(String op) {
+        return op != null && op.startsWith("j");
+    }
 }
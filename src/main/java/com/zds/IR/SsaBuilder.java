@@ -0,0 +1,186 @@
+package com.zds.IR;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SSA 构造 (SSA Construction)
+ * 包级私有类，由 IR.toSsa 调用：
+ * 1. 删除不可达块；入口块有前驱时在最前面补一个空入口块
+ * 2. 在每个出口块末尾追加 (:=, x, _, x)，把用户变量的最终版本写回原名（落出程序末尾的条件跳转块先补一个空的出口块）
+ * 3. 按迭代支配边界为跨块活跃的名字放置 phi（半剪枝 SSA）
+ * 4. 沿支配树重命名：每次定义产生新版本 x.1, x.2 ...，入口处的值记为 x.0
+ */
+class SsaBuilder {
+    private final IR.Cfg cfg;
+    private final Map<IR.Operand, IR.Operand> baseOf = new HashMap<>();
+    private final Set<IR.Quad> exitCopies = new HashSet<>();
+    private final Map<IR.Phi, IR.Operand> phiBase = new IdentityHashMap<>();
+    private final Map<IR.Operand, Deque<IR.Operand>> stacks = new HashMap<>();
+    private final Map<IR.Operand, Integer> counters = new HashMap<>();
+
+    SsaBuilder(IR.Cfg cfg) {
+        this.cfg = cfg;
+    }
+
+    IR.Ssa build() {
+        removeUnreachable();
+        if (!cfg.entry().predecessors().isEmpty()) cfg.insertBlockAfter(null, null);
+        insertExitCopies();
+        placePhis();
+        rename();
+        return new IR.Ssa(cfg, baseOf, exitCopies);
+    }
+
+    private void removeUnreachable() {
+        for (IR.BasicBlock b : new ArrayList<>(cfg.blocks())) {
+            if (!cfg.isReachable(b)) cfg.removeBlock(b);
+        }
+    }
+
+    private void insertExitCopies() {
+        Set<IR.Operand> vars = new LinkedHashSet<>();
+        for (IR.BasicBlock b : cfg.blocks()) {
+            for (IR.Quad q : b.quads()) {
+                if (!IR.isJumpOp(q.op) && q.dest.isVar()) vars.add(q.dest);
+            }
+        }
+        for (IR.BasicBlock b : new ArrayList<>(cfg.blocks())) {
+            if (!cfg.isExit(b)) continue;
+            // 条件跳转后落出程序末尾：在末尾补一个空块作为出口，复制只在离开程序的路径上执行
+            if (!b.successors().isEmpty()) b = cfg.insertBlockAfter(b, null);
+            int at = b.terminator() == null ? b.quads().size() : b.quads().size() - 1;
+            for (IR.Operand v : vars) {
+                IR.Quad copy = new IR.Quad(":=", v, IR.Operand.NONE, v);
+                b.quads().add(at++, copy);
+                exitCopies.add(copy);
+            }
+        }
+    }
+
+    /**
+     * 只为在某块中先使用后定义（跨块活跃）的名字放置 phi
+     */
+    private void placePhis() {
+        Set<IR.Operand> global = new HashSet<>();
+        Map<IR.Operand, Set<IR.BasicBlock>> defSites = new LinkedHashMap<>();
+        for (IR.BasicBlock b : cfg.blocks()) {
+            Set<IR.Operand> killed = new HashSet<>();
+            for (IR.Quad q : b.quads()) {
+                if (isName(q.left) && !killed.contains(q.left)) global.add(q.left);
+                if (isName(q.right) && !killed.contains(q.right)) global.add(q.right);
+                if (defines(q)) {
+                    killed.add(q.dest);
+                    defSites.computeIfAbsent(q.dest, k -> new LinkedHashSet<>()).add(b);
+                }
+            }
+        }
+        for (Map.Entry<IR.Operand, Set<IR.BasicBlock>> e : defSites.entrySet()) {
+            IR.Operand name = e.getKey();
+            if (!global.contains(name)) continue;
+            Set<IR.BasicBlock> hasPhi = new HashSet<>();
+            Deque<IR.BasicBlock> work = new ArrayDeque<>(e.getValue());
+            Set<IR.BasicBlock> queued = new HashSet<>(e.getValue());
+            while (!work.isEmpty()) {
+                IR.BasicBlock b = work.pop();
+                for (IR.BasicBlock f : cfg.dominanceFrontier(b)) {
+                    if (!hasPhi.add(f)) continue;
+                    IR.Phi phi = new IR.Phi(name);
+                    f.phis.add(phi);
+                    phiBase.put(phi, name);
+                    if (queued.add(f)) work.push(f);
+                }
+            }
+        }
+    }
+
+    /**
+     * 沿支配树先序重命名（显式栈，避免深度递归）
+     */
+    private void rename() {
+        Deque<IR.BasicBlock> blocks = new ArrayDeque<>();
+        Deque<List<IR.Operand>> pushed = new ArrayDeque<>(); // 与 blocks 对应：该块定义过的原名，出栈时弹出版本
+        blocks.push(cfg.entry());
+        pushed.push(List.of());
+        Set<IR.BasicBlock> done = new HashSet<>();
+        while (!blocks.isEmpty()) {
+            IR.BasicBlock b = blocks.peek();
+            if (done.add(b)) {
+                List<IR.Operand> defs = renameBlock(b);
+                pushed.pop();
+                pushed.push(defs);
+                List<IR.BasicBlock> children = cfg.dominatorChildren(b);
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    blocks.push(children.get(i));
+                    pushed.push(List.of());
+                }
+            } else {
+                blocks.pop();
+                for (IR.Operand base : pushed.pop()) stacks.get(base).pop();
+            }
+        }
+    }
+
+    private List<IR.Operand> renameBlock(IR.BasicBlock b) {
+        List<IR.Operand> defs = new ArrayList<>();
+        for (IR.Phi phi : b.phis) {
+            IR.Operand base = phiBase.get(phi);
+            phi.setDest(newVersion(base));
+            defs.add(base);
+        }
+        List<IR.Quad> quads = b.quads();
+        for (int i = 0; i < quads.size(); i++) {
+            IR.Quad q = quads.get(i);
+            IR.Operand left = isName(q.left) ? current(q.left) : q.left;
+            IR.Operand right = isName(q.right) ? current(q.right) : q.right;
+            IR.Operand dest = q.dest;
+            boolean exitCopy = exitCopies.remove(q);
+            if (!exitCopy && defines(q)) {
+                defs.add(dest);
+                dest = newVersion(dest);
+            }
+            IR.Quad renamed = new IR.Quad(q.op, left, right, dest);
+            quads.set(i, renamed);
+            if (exitCopy) exitCopies.add(renamed);
+        }
+        for (IR.BasicBlock s : b.successors()) {
+            for (IR.Phi phi : s.phis) {
+                phi.setArg(b, current(phiBase.get(phi)));
+            }
+        }
+        return defs;
+    }
+
+    private IR.Operand newVersion(IR.Operand base) {
+        int v = counters.merge(base, 1, Integer::sum);
+        IR.Operand version = IR.Operand.versioned(base, v);
+        baseOf.put(version, base);
+        stacks.computeIfAbsent(base, k -> new ArrayDeque<>()).push(version);
+        return version;
+    }
+
+    private IR.Operand current(IR.Operand base) {
+        Deque<IR.Operand> stack = stacks.get(base);
+        if (stack != null && !stack.isEmpty()) return stack.peek();
+        IR.Operand entry = IR.Operand.versioned(base, 0);
+        baseOf.put(entry, base);
+        return entry;
+    }
+
+    static boolean isName(IR.Operand o) {
+        return o.isTemp() || o.isVar();
+    }
+
+    static boolean defines(IR.Quad q) {
+        return !IR.isJumpOp(q.op) && !"label".equals(q.op) && isName(q.dest);
+    }
+}
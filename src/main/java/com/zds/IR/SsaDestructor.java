@@ -0,0 +1,268 @@
+package com.zds.IR;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SSA 析构 (Out-of-SSA)
+ * 包级私有类，由 IR.fromSsa 调用：
+ * 1. 拆分关键边，使每条 phi 边上都有一个可以放复制的块
+ * 2. phi 改为前驱块末尾的并行复制，再顺序化（有环时借助新的临时变量）
+ * 3. 用活跃分析判断同一原名的各版本是否冲突，不冲突的合并回原名
+ * 4. 删除合并后变成 x := x 的复制
+ * 5. 删除拆分边时新建、最终没有放入复制的块（只剩一条无条件跳转或为空），跳到它们的跳转直接改到目标
+ */
+class SsaDestructor {
+    private final IR.Ssa ssa;
+    private final IR.Cfg cfg;
+    private int nextTemp;
+
+    SsaDestructor(IR.Ssa ssa) {
+        this.ssa = ssa;
+        this.cfg = ssa.cfg();
+    }
+
+    void run() {
+        nextTemp = maxTempId() + 1;
+        int firstNew = cfg.blockIdBound();
+        splitCriticalEdges();
+        for (IR.BasicBlock b : cfg.blocks()) {
+            if (b.phis.isEmpty()) continue;
+            for (IR.BasicBlock p : new ArrayList<>(b.preds)) {
+                Map<IR.Operand, IR.Operand> copies = new LinkedHashMap<>();
+                for (IR.Phi phi : b.phis) {
+                    IR.Operand src = phi.argFrom(p);
+                    if (src != null && !src.equals(phi.dest())) copies.put(phi.dest(), src);
+                }
+                insertCopies(p, sequentialize(copies));
+            }
+            b.phis.clear();
+        }
+        coalesce();
+        removeEmptySplits(firstNew);
+    }
+
+    private void splitCriticalEdges() {
+        for (IR.BasicBlock b : new ArrayList<>(cfg.blocks())) {
+            if (b.phis.isEmpty()) continue;
+            for (IR.BasicBlock p : new ArrayList<>(b.preds)) {
+                IR.Quad t = p.terminator();
+                if (p.succs.size() > 1 || (t != null && !"j".equals(t.op))) cfg.splitEdge(p, b);
+            }
+        }
+    }
+
+    /**
+     * 删除 id 不小于 firstNew（拆分边时新建，包括 insertDetachedBlock 补的落脚块）且没有复制的块
+     * 只剩 (j, _, _, L) 的块：跳到它的跳转改为直接跳到 L；只有顺序执行进入它之后紧接着就是 L 时才能删除。
+     * 空块：跳到它的跳转改为跳到布局中的下一个块；在程序末尾且仍有跳转进入时保留。
+     */
+    private void removeEmptySplits(int firstNew) {
+        boolean changed = true;
+        while (changed) { // 删除一个块后，它前面的落脚块可能也只剩跳到下一个块的跳转
+            changed = false;
+            for (IR.BasicBlock b : new ArrayList<>(cfg.blocks())) {
+                if (b.id() >= firstNew && b != cfg.entry()) changed |= removeIfEmpty(b);
+            }
+        }
+    }
+
+    private boolean removeIfEmpty(IR.BasicBlock b) {
+        IR.Quad t = b.terminator();
+        boolean empty = b.quads().isEmpty();
+        if (!empty && (b.quads().size() > 1 || !"j".equals(t.op))) return false;
+        IR.BasicBlock to = empty ? cfg.next(b) : cfg.targetOf(t);
+        if (to == b) return false;
+        List<IR.BasicBlock> jumpIn = new ArrayList<>();
+        boolean fallIn = false;
+        for (IR.BasicBlock p : b.preds) {
+            if (cfg.targetOf(p.terminator()) == b) jumpIn.add(p);
+            if (p.fallsThrough() && cfg.next(p) == b) fallIn = true;
+        }
+        if (to == null && !jumpIn.isEmpty()) return false;
+        if (!empty && fallIn && cfg.next(b) != to) return false;
+        for (IR.BasicBlock p : jumpIn) cfg.retarget(p, cfg.labelOf(to));
+        cfg.removeBlock(b);
+        return true;
+    }
+
+    /**
+     * 并行复制顺序化：先发出目标不再被读取的复制；只剩环时把一个目标的旧值存入新临时变量打破环
+     */
+    private List<IR.Quad> sequentialize(Map<IR.Operand, IR.Operand> pending) {
+        List<IR.Quad> out = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            IR.Operand ready = null;
+            for (IR.Operand d : pending.keySet()) {
+                if (!pending.containsValue(d)) {
+                    ready = d;
+                    break;
+                }
+            }
+            if (ready != null) {
+                out.add(new IR.Quad(":=", pending.remove(ready), IR.Operand.NONE, ready));
+                continue;
+            }
+            IR.Operand d = pending.keySet().iterator().next();
+            IR.Operand saved = IR.Operand.temp(nextTemp++);
+            out.add(new IR.Quad(":=", d, IR.Operand.NONE, saved));
+            pending.replaceAll((k, v) -> v.equals(d) ? saved : v);
+        }
+        return out;
+    }
+
+    private void insertCopies(IR.BasicBlock p, List<IR.Quad> copies) {
+        IR.Quad t = p.terminator();
+        int at = t == null ? p.quads().size() : p.quads().size() - 1;
+        p.quads().addAll(at, copies);
+    }
+
+    // -------- coalescing --------
+
+    private final Map<IR.Operand, Integer> index = new HashMap<>();
+    private final List<IR.Operand> names = new ArrayList<>();
+    private final Map<Integer, BitSet> interference = new HashMap<>();
+
+    private int indexOf(IR.Operand o) {
+        Integer i = index.get(o);
+        if (i == null) {
+            i = names.size();
+            index.put(o, i);
+            names.add(o);
+        }
+        return i;
+    }
+
+    private void coalesce() {
+        List<IR.BasicBlock> blocks = cfg.blocks();
+        for (IR.BasicBlock b : blocks) {
+            for (IR.Quad q : b.quads()) {
+                if (SsaBuilder.isName(q.left)) indexOf(q.left);
+                if (SsaBuilder.isName(q.right)) indexOf(q.right);
+                if (SsaBuilder.defines(q)) indexOf(q.dest);
+            }
+        }
+        Map<IR.BasicBlock, BitSet> liveOut = liveness(blocks);
+        for (IR.BasicBlock b : blocks) {
+            BitSet live = (BitSet) liveOut.get(b).clone();
+            List<IR.Quad> quads = b.quads();
+            for (int i = quads.size() - 1; i >= 0; i--) {
+                IR.Quad q = quads.get(i);
+                if (SsaBuilder.defines(q)) {
+                    int d = index.get(q.dest);
+                    int src = ":=".equals(q.op) && SsaBuilder.isName(q.left) ? index.get(q.left) : -1;
+                    for (int l = live.nextSetBit(0); l >= 0; l = live.nextSetBit(l + 1)) {
+                        if (l != d && l != src) addEdge(d, l);
+                    }
+                    live.clear(d);
+                }
+                if (SsaBuilder.isName(q.left)) live.set(index.get(q.left));
+                if (SsaBuilder.isName(q.right)) live.set(index.get(q.right));
+            }
+        }
+
+        // 每个原名一个等价类：原名本身与入口版本 x.0 先入类，其余版本按编号尝试合并
+        Map<IR.Operand, BitSet> classes = new HashMap<>();
+        List<IR.Operand> versions = new ArrayList<>();
+        for (IR.Operand o : names) {
+            IR.Operand base = ssa.baseOf(o);
+            if (base.equals(o) || versionNumber(o) == 0) {
+                classes.computeIfAbsent(base, k -> new BitSet()).set(index.get(o));
+            } else {
+                versions.add(o);
+            }
+        }
+        versions.sort((a, b) -> Integer.compare(versionNumber(a), versionNumber(b)));
+        Map<IR.Operand, IR.Operand> renamed = new HashMap<>();
+        for (IR.Operand v : versions) {
+            IR.Operand base = ssa.baseOf(v);
+            BitSet members = classes.computeIfAbsent(base, k -> new BitSet());
+            BitSet conflicts = interference.get(index.get(v));
+            if (conflicts == null || !conflicts.intersects(members)) {
+                members.set(index.get(v));
+                renamed.put(v, base);
+            }
+        }
+        for (IR.Operand o : names) {
+            if (!ssa.baseOf(o).equals(o) && versionNumber(o) == 0) renamed.put(o, ssa.baseOf(o));
+        }
+
+        for (IR.BasicBlock b : blocks) {
+            List<IR.Quad> quads = b.quads();
+            List<IR.Quad> out = new ArrayList<>(quads.size());
+            for (IR.Quad q : quads) {
+                IR.Operand left = renamed.getOrDefault(q.left, q.left);
+                IR.Operand right = renamed.getOrDefault(q.right, q.right);
+                IR.Operand dest = renamed.getOrDefault(q.dest, q.dest);
+                ssa.forgetExitCopy(q);
+                if (":=".equals(q.op) && left.equals(dest)) continue;
+                out.add(left == q.left && right == q.right && dest == q.dest ? q : new IR.Quad(q.op, left, right, dest));
+            }
+            quads.clear();
+            quads.addAll(out);
+        }
+    }
+
+    private Map<IR.BasicBlock, BitSet> liveness(List<IR.BasicBlock> blocks) {
+        Map<IR.BasicBlock, BitSet> use = new HashMap<>();
+        Map<IR.BasicBlock, BitSet> def = new HashMap<>();
+        Map<IR.BasicBlock, BitSet> in = new HashMap<>();
+        Map<IR.BasicBlock, BitSet> out = new HashMap<>();
+        for (IR.BasicBlock b : blocks) {
+            BitSet u = new BitSet(), d = new BitSet();
+            for (IR.Quad q : b.quads()) {
+                if (SsaBuilder.isName(q.left) && !d.get(index.get(q.left))) u.set(index.get(q.left));
+                if (SsaBuilder.isName(q.right) && !d.get(index.get(q.right))) u.set(index.get(q.right));
+                if (SsaBuilder.defines(q)) d.set(index.get(q.dest));
+            }
+            use.put(b, u);
+            def.put(b, d);
+            in.put(b, (BitSet) u.clone());
+            out.put(b, new BitSet());
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                IR.BasicBlock b = blocks.get(i);
+                BitSet o = out.get(b);
+                for (IR.BasicBlock s : b.succs) o.or(in.get(s));
+                BitSet n = (BitSet) o.clone();
+                n.andNot(def.get(b));
+                n.or(use.get(b));
+                if (!n.equals(in.get(b))) {
+                    in.put(b, n);
+                    changed = true;
+                }
+            }
+        }
+        return out;
+    }
+
+    /** 只记录同一原名的版本之间的冲突（合并只在同名版本间进行） */
+    private void addEdge(int a, int b) {
+        IR.Operand x = names.get(a), y = names.get(b);
+        if (!ssa.baseOf(x).equals(ssa.baseOf(y))) return;
+        interference.computeIfAbsent(a, k -> new BitSet()).set(b);
+        interference.computeIfAbsent(b, k -> new BitSet()).set(a);
+    }
+
+    private int versionNumber(IR.Operand o) {
+        if (ssa.baseOf(o).equals(o)) return -1;
+        return Integer.parseInt(o.text.substring(o.text.lastIndexOf('.') + 1));
+    }
+
+    private int maxTempId() {
+        int max = 0;
+        for (IR.BasicBlock b : cfg.blocks()) {
+            for (IR.Quad q : b.quads()) {
+                if (q.dest instanceof IR.Operand.Temp) max = Math.max(max, ((IR.Operand.Temp) q.dest).id);
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,255 @@
+package com.zds.IR;
+
+import com.zds.Semantic.Semantic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预编译单元编解码 (Unit Codec)
+ * 包级私有类，由 IR.saveUnit / IR.loadUnit 调用。
+ *
+ * 文件布局（大端序）：
+ *   header  : magic "ZDSU" (int) | FORMAT_VERSION (int) | flags (int, 保留为 0) | sourceHash (long) | pipeline (str)
+ *   strings : count (int) | 每项 length (int) + UTF-8 字节
+ *   symbols : count (int) | 每项 name (str) + irName (str) + type (byte) + depth (int)
+ *   operands: count (int) | 每项 kind (byte) + text (str) + payload (long)
+ *   quads   : count (int) | 每项 op (str) + left + right + dest (operand 下标)
+ * 其中 str 为字符串池下标；payload 对 TEMP 是编号、INT 是数值、DOUBLE 是位模式、VAR 是符号下标（-1 表示无符号）。
+ * 读取时整个文件一次读入堆内存（单元文件不大，也避免映射在 GC 之前一直占着文件），各节按顺序解码，
+ * 字符串只做 UTF-8 解码，操作数由字段直接重建。每个计数 / 长度字段先与剩余字节数比较，
+ * 损坏的文件不会引起超大的分配，统一报告为 IOException。
+ */
+class UnitCodec {
+    static final int MAGIC = 0x5A445355; // "ZDSU"
+
+    private static final Semantic.Type[] TYPES = Semantic.Type.values();
+    private static final IR.Operand.Kind[] KINDS = IR.Operand.Kind.values();
+
+    // ==========================================
+    // write
+    // ==========================================
+
+    static void write(Path file, IR.Unit unit) throws IOException {
+        Writer w = new Writer();
+        byte[] bytes = w.encode(unit);
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, bytes);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static final class Writer {
+        private final Map<String, Integer> strings = new LinkedHashMap<>();
+        private final Map<Semantic.Symbol, Integer> symbols = new IdentityHashMap<>();
+        private final List<Semantic.Symbol> symbolList = new ArrayList<>();
+        private final Map<IR.Operand, Integer> operands = new HashMap<>();
+        private final List<IR.Operand> operandList = new ArrayList<>();
+
+        byte[] encode(IR.Unit unit) throws IOException {
+            if (unit.semantic() != null) {
+                for (Semantic.Symbol s : unit.semantic().allSymbols()) symbol(s);
+                if (unit.semantic().global != null) {
+                    for (Semantic.Symbol s : unit.semantic().global.symbolsHere()) symbol(s);
+                }
+            }
+            int[] quadIds = new int[unit.quads().size() * 4];
+            int k = 0;
+            for (IR.Quad q : unit.quads()) {
+                quadIds[k++] = string(q.op);
+                quadIds[k++] = operand(q.left);
+                quadIds[k++] = operand(q.right);
+                quadIds[k++] = operand(q.dest);
+            }
+            // 操作数里的符号可能不在符号表中（例如手工构造的 Unit），收集完所有符号后再把名字放入字符串池
+            for (Semantic.Symbol s : symbolList) {
+                string(s.name);
+                string(s.irName);
+            }
+            int pipeline = string(unit.pipeline());
+
+            ByteArrayOutputStream buf = new ByteArrayOutputStream(64 + quadIds.length * 4);
+            DataOutputStream out = new DataOutputStream(buf);
+            out.writeInt(MAGIC);
+            out.writeInt(IR.Unit.FORMAT_VERSION);
+            out.writeInt(0);
+            out.writeLong(unit.sourceHash());
+            out.writeInt(pipeline);
+
+            out.writeInt(strings.size());
+            for (String s : strings.keySet()) {
+                byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(b.length);
+                out.write(b);
+            }
+
+            out.writeInt(symbolList.size());
+            for (Semantic.Symbol s : symbolList) {
+                out.writeInt(strings.get(s.name));
+                out.writeInt(strings.get(s.irName));
+                out.writeByte(s.type.ordinal());
+                out.writeInt(s.depth);
+            }
+
+            out.writeInt(operandList.size());
+            for (IR.Operand o : operandList) {
+                out.writeByte(o.kind.ordinal());
+                out.writeInt(strings.get(textOf(o)));
+                out.writeLong(payloadOf(o));
+            }
+
+            out.writeInt(unit.quads().size());
+            for (int id : quadIds) out.writeInt(id);
+            out.flush();
+            return buf.toByteArray();
+        }
+
+        private int string(String s) {
+            return strings.computeIfAbsent(s, k -> strings.size());
+        }
+
+        private int symbol(Semantic.Symbol s) {
+            Integer i = symbols.get(s);
+            if (i == null) {
+                i = symbolList.size();
+                symbols.put(s, i);
+                symbolList.add(s);
+            }
+            return i;
+        }
+
+        private int operand(IR.Operand o) {
+            Integer i = operands.get(o);
+            if (i == null) {
+                i = operandList.size();
+                operands.put(o, i);
+                operandList.add(o);
+                string(textOf(o));
+                if (o instanceof IR.Operand.Var && ((IR.Operand.Var) o).symbol != null) {
+                    symbol(((IR.Operand.Var) o).symbol);
+                }
+            }
+            return i;
+        }
+
+        private String textOf(IR.Operand o) {
+            return o instanceof IR.Operand.StringConst ? ((IR.Operand.StringConst) o).value : o.text;
+        }
+
+        private long payloadOf(IR.Operand o) {
+            if (o instanceof IR.Operand.Temp) return ((IR.Operand.Temp) o).id;
+            if (o instanceof IR.Operand.IntConst) return ((IR.Operand.IntConst) o).value;
+            if (o instanceof IR.Operand.DoubleConst) return Double.doubleToRawLongBits(((IR.Operand.DoubleConst) o).value);
+            if (o instanceof IR.Operand.Var) {
+                Semantic.Symbol s = ((IR.Operand.Var) o).symbol;
+                return s == null ? -1 : symbols.get(s);
+            }
+            return 0;
+        }
+    }
+
+    // ==========================================
+    // read
+    // ==========================================
+
+    static IR.Unit read(Path file) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("预编译单元过大: " + file);
+            buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining() && ch.read(buf) >= 0) {
+                // 读满为止
+            }
+            buf.flip();
+        }
+        try {
+            return decode(buf, file);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new IOException("预编译单元已损坏: " + file, ex);
+        }
+    }
+
+    private static IR.Unit decode(ByteBuffer in, Path file) throws IOException {
+        if (in.remaining() < 24 || in.getInt() != MAGIC) throw new IOException("不是预编译单元: " + file);
+        int version = in.getInt();
+        if (version != IR.Unit.FORMAT_VERSION) {
+            throw new IOException("不支持的预编译单元版本 " + version + "（当前为 " + IR.Unit.FORMAT_VERSION + "）: " + file);
+        }
+        in.getInt(); // flags
+        long sourceHash = in.getLong();
+        int pipeline = in.getInt();
+
+        String[] strings = new String[count(in, 4, file)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] b = new byte[count(in, 1, file)];
+            in.get(b);
+            strings[i] = new String(b, StandardCharsets.UTF_8);
+        }
+
+        // 符号表：深度 0 的符号放回全局作用域，所有符号按 IR 名称索引
+        Semantic.Scope global = new Semantic.Scope(null, 0);
+        Map<String, Semantic.Symbol> byIrName = new LinkedHashMap<>();
+        Semantic.Symbol[] symbols = new Semantic.Symbol[count(in, 13, file)];
+        for (int i = 0; i < symbols.length; i++) {
+            String name = strings[in.getInt()];
+            String irName = strings[in.getInt()];
+            Semantic.Type type = TYPES[in.get()];
+            int depth = in.getInt();
+            Semantic.Symbol s = null;
+            if (depth == 0 && global.define(name, type, irName)) s = global.resolve(name);
+            if (s == null) s = new Semantic.Symbol(name, type, depth, irName);
+            symbols[i] = s;
+            byIrName.putIfAbsent(irName, s);
+        }
+
+        IR.Operand[] operands = new IR.Operand[count(in, 13, file)];
+        for (int i = 0; i < operands.length; i++) {
+            IR.Operand.Kind kind = KINDS[in.get()];
+            String text = strings[in.getInt()];
+            long payload = in.getLong();
+            Semantic.Symbol sym = kind == IR.Operand.Kind.VAR && payload >= 0 ? symbols[(int) payload] : null;
+            operands[i] = IR.Operand.restore(kind, text, payload, sym);
+        }
+
+        int n = count(in, 16, file);
+        List<IR.Quad> quads = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String op = strings[in.getInt()];
+            quads.add(new IR.Quad(op, operands[in.getInt()], operands[in.getInt()], operands[in.getInt()]));
+        }
+
+        Semantic.Result sem = new Semantic.Result(global, new ArrayList<>(), new IdentityHashMap<>(),
+                new IdentityHashMap<>(), byIrName);
+        return new IR.Unit(quads, sem, sourceHash, strings[pipeline]);
+    }
+
+    /**
+     * 读取计数 / 长度字段：每项至少占 itemBytes 字节，超出剩余字节数（或为负）说明文件已损坏
+     */
+    private static int count(ByteBuffer in, int itemBytes, Path file) throws IOException {
+        int n = in.getInt();
+        if (n < 0 || n > in.remaining() / itemBytes) throw new IOException("预编译单元已损坏（长度字段越界）: " + file);
+        return n;
+    }
+}
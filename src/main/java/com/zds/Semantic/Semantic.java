@@ -34,11 +34,17 @@ public class Semantic {
         public final String name;   // 符号名称
         public final Type type;     // 符号类型
         public final int depth;     // 作用域深度
+        public final String irName; // IR 中使用的唯一名称（同名变量 alpha 重命名后互不冲突）
 
         public Symbol(String name, Type type, int depth) {
+            this(name, type, depth, name);
+        }
+
+        public Symbol(String name, Type type, int depth, String irName) {
             this.name = name;
             this.type = type;
             this.depth = depth;
+            this.irName = irName == null ? name : irName;
         }
     }
 
@@ -58,8 +64,13 @@ public class Semantic {
 
         // 在当前作用域定义一个符号
         public boolean define(String name, Type type) {
+            return define(name, type, name);
+        }
+
+        // 在当前作用域定义一个符号，并指定其在 IR 中的唯一名称
+        public boolean define(String name, Type type, String irName) {
             if (table.containsKey(name)) return false;  // 已存在同名符号，定义失败
-            table.put(name, new Symbol(name, type, depth));
+            table.put(name, new Symbol(name, type, depth, irName));
             return true;
         }
 
@@ -85,11 +96,22 @@ public class Semantic {
         public final List<String> errors;   // 错误信息列表
         // 用 IdentityHashMap：按对象引用记录"某个 Expr 的类型"
         private final IdentityHashMap<Parser.Expr, Type> exprTypes;
+        // 名字绑定：VarDecl / Assign / Var 节点 -> 它实际引用的符号（按对象引用记录）
+        private final IdentityHashMap<Object, Symbol> bindings;
+        // 所有声明过的符号（按 IR 名称索引，包含已退出的块作用域中的符号）
+        private final Map<String, Symbol> symbolsByIrName;
 
         public Result(Scope global, List<String> errors, IdentityHashMap<Parser.Expr, Type> exprTypes) {
+            this(global, errors, exprTypes, new IdentityHashMap<>(), new LinkedHashMap<>());
+        }
+
+        public Result(Scope global, List<String> errors, IdentityHashMap<Parser.Expr, Type> exprTypes,
+                      IdentityHashMap<Object, Symbol> bindings, Map<String, Symbol> symbolsByIrName) {
             this.global = global;
             this.errors = errors;
             this.exprTypes = exprTypes;
+            this.bindings = bindings;
+            this.symbolsByIrName = symbolsByIrName;
         }
 
         // 获取表达式的类型
@@ -98,6 +120,31 @@ public class Semantic {
             return (t == null) ? Type.ERROR : t;
         }
 
+        // 获取声明语句定义的符号
+        public Symbol symbolOf(Parser.VarDecl d) {
+            return bindings.get(d);
+        }
+
+        // 获取赋值语句写入的符号
+        public Symbol symbolOf(Parser.Assign a) {
+            return bindings.get(a);
+        }
+
+        // 获取变量引用读取的符号
+        public Symbol symbolOf(Parser.Var v) {
+            return bindings.get(v);
+        }
+
+        // 按 IR 名称查找符号（IR/CodeGen 阶段使用，作用域已经展开）
+        public Symbol lookupIrName(String irName) {
+            return irName == null ? null : symbolsByIrName.get(irName);
+        }
+
+        // 所有声明过的符号（按声明顺序）
+        public Collection<Symbol> allSymbols() {
+            return Collections.unmodifiableCollection(symbolsByIrName.values());
+        }
+
         // 导出符号表信息
         public String dumpSymbolTable() {
             StringBuilder sb = new StringBuilder();
@@ -111,7 +158,9 @@ public class Semantic {
             String pad = "  ".repeat(Math.max(0, indent));
             sb.append(pad).append("Scope(depth=").append(scope.depth()).append(")\n");
             for (Symbol sym : scope.symbolsHere()) {
-                sb.append(pad).append("  - ").append(sym.name).append(" : ").append(sym.type).append("\n");
+                sb.append(pad).append("  - ").append(sym.name).append(" : ").append(sym.type);
+                if (!sym.irName.equals(sym.name)) sb.append(" (IR: ").append(sym.irName).append(")");
+                sb.append("\n");
             }
             // 这里不保存子 Scope 引用（为了"最小实现"），所以只打印全局 scope 的内容即可
             // 如果你想把所有 block scope 都打印出来，需要把子 scope 链表保存起来。
@@ -132,6 +181,9 @@ public class Semantic {
     private static class Analyzer {
         private final List<String> errors = new ArrayList<>();  // 错误收集列表
         private final IdentityHashMap<Parser.Expr, Type> exprTypes = new IdentityHashMap<>();  // 表达式类型映射
+        private final IdentityHashMap<Object, Symbol> bindings = new IdentityHashMap<>();  // 名字绑定
+        private final Map<String, Symbol> symbolsByIrName = new LinkedHashMap<>();  // IR 名称 -> 符号
+        private final Map<String, Integer> declCount = new HashMap<>();  // 源名称 -> 已声明次数
 
         private Scope current;  // 当前作用域
 
@@ -143,7 +195,7 @@ public class Semantic {
                     checkStmt(s);  // 检查每个语句
                 }
             }
-            return new Result(current, errors, exprTypes);
+            return new Result(current, errors, exprTypes, bindings, symbolsByIrName);
         }
 
         // -------- Stmt 语句检查 --------
@@ -164,8 +216,12 @@ public class Semantic {
                 Parser.VarDecl d = (Parser.VarDecl) stmt;
                 Type declared = parseType(d.typeName);
 
-                if (!current.define(d.name, declared)) {
+                if (!current.define(d.name, declared, uniqueIrName(d.name))) {
                     err("重复声明变量: " + d.name);
+                } else {
+                    Symbol sym = current.resolve(d.name);
+                    bindings.put(d, sym);
+                    symbolsByIrName.put(sym.irName, sym);
                 }
 
                 if (d.init != null) {
@@ -186,6 +242,7 @@ public class Semantic {
                     checkExpr(a.value); // 尽量继续走，收集更多错误
                     return;
                 }
+                bindings.put(a, sym);
                 Type rhs = checkExpr(a.value);
                 if (!assignable(sym.type, rhs)) {
                     err("类型不兼容：不能把 " + rhs + " 赋值给 " + sym.type + "（变量 " + a.name + "）");
@@ -269,6 +326,7 @@ public class Semantic {
                     exprTypes.put(expr, Type.ERROR);
                     return Type.ERROR;
                 }
+                bindings.put(expr, sym);
                 exprTypes.put(expr, sym.type);
                 return sym.type;
             }
@@ -393,6 +451,16 @@ public class Semantic {
             if (current.parent() != null) current = current.parent();
         }
 
+        // alpha 重命名：为声明分配 IR 中的唯一名称
+        // 源名称第一次出现时保持原名；再次声明（不同作用域的同名变量）追加 #序号。
+        // 形如 t1、t2 的用户变量总是追加后缀，避免与 IR 临时变量冲突。
+        // '#' 不是合法的标识符字符，因此重命名结果不会与任何源名称冲突。
+        private String uniqueIrName(String name) {
+            int n = declCount.merge(name, 1, Integer::sum);
+            if (n == 1 && !name.matches("t\\d+")) return name;
+            return name + "#" + n;
+        }
+
         // 解析类型名称为 Type 枚举
         private Type parseType(String typeName) {
             if (typeName == null) return Type.ERROR;
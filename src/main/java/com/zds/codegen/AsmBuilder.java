@@ -10,10 +10,16 @@ import java.util.Map;
 /**
  * 汇编生成器核心实现 (AsmBuilder)
  * 包级私有类，负责将四元式映射为伪汇编指令。
+ * 实现 IR.QuadSink，可以直接接在 IR 生成器或按块优化器之后，边生成四元式边生成汇编。
  */
-class AsmBuilder {
+class AsmBuilder implements CodeGen.AsmSink {
     private final Asm asm = new Asm(); // 存储生成的汇编指令
-    private final Map<String, ValueType> tempTypes = new HashMap<>(); // 临时变量的类型映射
+    private final Map<IR.Operand, ValueType> tempTypes = new HashMap<>(); // 临时变量的类型映射
+    private final Semantic.Result sem; // 语义分析结果
+
+    AsmBuilder(Semantic.Result sem) {
+        this.sem = sem;
+    }
 
     /**
      * 获取生成的汇编对象
@@ -26,18 +32,30 @@ class AsmBuilder {
     /**
      * 遍历所有四元式并转换为汇编指令
      * @param quads 四元式列表
-     * @param sem 语义分析结果
      */
-    public void run(List<IR.Quad> quads, Semantic.Result sem) {
+    public void run(List<IR.Quad> quads) {
         if (quads != null) {
             for (IR.Quad quad : quads) {
-                if (quad != null) {
-                    emitQuad(quad, sem); // 处理每个四元式
-                }
+                accept(quad); // 处理每个四元式
             }
         }
     }
 
+    /**
+     * 处理一条四元式（流式入口）
+     */
+    @Override
+    public void accept(IR.Quad quad) {
+        if (quad != null) {
+            emitQuad(quad, sem);
+        }
+    }
+
+    @Override
+    public List<CodeGen.Instr> instructions() {
+        return asm.instructions();
+    }
+
     /**
      * 根据四元式的操作类型生成相应的汇编指令
      * @param q 四元式
@@ -48,16 +66,16 @@ class AsmBuilder {
         // 处理赋值操作
         if (":=".equals(op)) {
             asm.add("MOV", q.result, q.arg1);
-            if (isTemp(q.result)) {
-                tempTypes.put(q.result, typeOf(q.arg1, sem, tempTypes));
+            if (q.dest.isTemp()) {
+                tempTypes.put(q.dest, typeOf(q.left, sem, tempTypes));
             }
             return;
         }
         // 处理负号操作
         if ("neg".equals(op)) {
             asm.add("NEG", q.result, q.arg1);
-            if (isTemp(q.result)) {
-                tempTypes.put(q.result, typeOf(q.arg1, sem, tempTypes));
+            if (q.dest.isTemp()) {
+                tempTypes.put(q.dest, typeOf(q.left, sem, tempTypes));
             }
             return;
         }
@@ -81,9 +99,22 @@ class AsmBuilder {
             }
             return;
         }
-        // 处理算术运算（+、-、*、/）
+        // 处理类型化运算（IR 生成时已按语义类型选定，直接映射）
+        String typed = op == null ? null : typedMnemonic(op);
+        if (typed != null) {
+            if (q.arg2 == null || "_".equals(q.arg2)) {
+                asm.add(typed, q.result, q.arg1);
+            } else {
+                asm.add(typed, q.result, q.arg1, q.arg2);
+            }
+            if (q.dest.isTemp()) {
+                tempTypes.put(q.dest, typedResult(op));
+            }
+            return;
+        }
+        // 处理无类型算术运算（+、-、*、/），按操作数推断类型
         if ("+".equals(op) || "-".equals(op) || "*".equals(op) || "/".equals(op)) {
-            ValueType type = inferBinaryType(op, q.arg1, q.arg2, sem, tempTypes);
+            ValueType type = inferBinaryType(op, q.left, q.right, sem, tempTypes);
             String instr = switch (op) {
                 case "+" -> type == ValueType.STRING ? "CONCAT" : "ADD"; // 字符串相加使用CONCAT指令
                 case "-" -> "SUB";
@@ -92,8 +123,8 @@ class AsmBuilder {
                 default -> "ADD";
             };
             asm.add(instr, q.result, q.arg1, q.arg2);
-            if (isTemp(q.result)) {
-                tempTypes.put(q.result, type);
+            if (q.dest.isTemp()) {
+                tempTypes.put(q.dest, type);
             }
             return;
         }
@@ -102,6 +133,30 @@ class AsmBuilder {
         asm.addRaw(";;UNSUPPORTED " + q);
     }
 
+    /**
+     * 类型化操作码到汇编助记符的映射（非类型化操作码返回 null）
+     */
+    private String typedMnemonic(String op) {
+        return switch (op) {
+            case "iadd", "dadd" -> "ADD";
+            case "isub", "dsub" -> "SUB";
+            case "imul", "dmul" -> "MUL";
+            case "idiv", "ddiv" -> "DIV";
+            case "ineg", "dneg" -> "NEG";
+            case "concat" -> "CONCAT";
+            case "i2d" -> "I2D";
+            default -> null;
+        };
+    }
+
+    /**
+     * 类型化操作码的结果类型
+     */
+    private ValueType typedResult(String op) {
+        if ("concat".equals(op)) return ValueType.STRING;
+        return op.startsWith("i") && !"i2d".equals(op) ? ValueType.INT : ValueType.DOUBLE;
+    }
+
     /**
      * 将条件跳转操作转换为汇编跳转助记符
      * @param op 条件跳转操作
@@ -128,7 +183,7 @@ class AsmBuilder {
      * @param tempTypes 临时变量类型映射
      * @return 运算结果类型
      */
-    private ValueType inferBinaryType(String op, String left, String right, Semantic.Result sem, Map<String, ValueType> tempTypes) {
+    private ValueType inferBinaryType(String op, IR.Operand left, IR.Operand right, Semantic.Result sem, Map<IR.Operand, ValueType> tempTypes) {
         ValueType leftType = typeOf(left, sem, tempTypes);
         ValueType rightType = typeOf(right, sem, tempTypes);
         // 如果是字符串连接操作，结果为字符串类型
@@ -147,53 +202,45 @@ class AsmBuilder {
     }
 
     /**
-     * 获取值的类型
+     * 获取值的类型（按操作数类别直接判断，不解析字符串）
      * @param value 值
      * @param sem 语义分析结果
      * @param tempTypes 临时变量类型映射
      * @return 值的类型
      */
-    private ValueType typeOf(String value, Semantic.Result sem, Map<String, ValueType> tempTypes) {
+    private ValueType typeOf(IR.Operand value, Semantic.Result sem, Map<IR.Operand, ValueType> tempTypes) {
         if (value == null) return ValueType.UNKNOWN;
-        if (value.startsWith("\"") && value.endsWith("\"")) return ValueType.STRING; // 字符串字面量
-        if (isNumericLiteral(value)) return value.contains(".") ? ValueType.DOUBLE : ValueType.INT; // 数值字面量
-        if (isTemp(value)) return tempTypes.getOrDefault(value, ValueType.UNKNOWN); // 临时变量类型
-        if (sem != null && sem.global != null) {
-            Semantic.Symbol sym = sem.global.resolve(value);
-            if (sym != null) {
-                // 根据符号表中的类型返回对应值类型
-                return switch (sym.type) {
-                    case STRING -> ValueType.STRING;
-                    case DOUBLE -> ValueType.DOUBLE;
-                    case INT, BOOL -> ValueType.INT;
-                    default -> ValueType.UNKNOWN;
-                };
-            }
+        switch (value.kind) {
+            case STRING: return ValueType.STRING; // 字符串字面量
+            case INT: return ValueType.INT; // 整数字面量
+            case DOUBLE: return ValueType.DOUBLE; // 浮点字面量
+            case TEMP: return tempTypes.getOrDefault(value, ValueType.UNKNOWN); // 临时变量类型
+            case VAR: return typeOfSymbol(symbolOf((IR.Operand.Var) value, sem));
+            default: return ValueType.UNKNOWN;
         }
-        return ValueType.UNKNOWN;
     }
 
     /**
-     * 判断是否为临时变量
-     * @param value 变量名
-     * @return 是否为临时变量
+     * 查找变量操作数对应的符号：优先使用 IR 生成时记录的符号
      */
-    private boolean isTemp(String value) {
-        return value != null && value.startsWith("t");
+    private Semantic.Symbol symbolOf(IR.Operand.Var var, Semantic.Result sem) {
+        if (var.symbol != null) return var.symbol;
+        if (sem == null || sem.global == null) return null;
+        Semantic.Symbol sym = sem.lookupIrName(var.text); // 按 alpha 重命名后的 IR 名称查找
+        return sym != null ? sym : sem.global.resolve(var.text);
     }
 
     /**
-     * 判断是否为数值字面量
-     * @param value 值
-     * @return 是否为数值字面量
+     * 根据符号表中的类型返回对应值类型
      */
-    private boolean isNumericLiteral(String value) {
-        try {
-            Double.parseDouble(value);
-            return true;
-        } catch (NumberFormatException ex) {
-            return false;
-        }
+    private ValueType typeOfSymbol(Semantic.Symbol sym) {
+        if (sym == null) return ValueType.UNKNOWN;
+        return switch (sym.type) {
+            case STRING -> ValueType.STRING;
+            case DOUBLE -> ValueType.DOUBLE;
+            case INT, BOOL -> ValueType.INT;
+            default -> ValueType.UNKNOWN;
+        };
     }
 
     /**
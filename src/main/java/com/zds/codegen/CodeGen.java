@@ -26,11 +26,20 @@ public class CodeGen {
      * @return 汇编指令列表
      */
     public static List<Instr> generate(List<IR.Quad> quads, Semantic.Result sem) {
-        AsmBuilder builder = new AsmBuilder();
-        builder.run(quads, sem);
+        AsmBuilder builder = new AsmBuilder(sem);
+        builder.run(quads);
         return builder.getAsm().instructions();
     }
 
+    /**
+     * 创建流式汇编生成器：作为 IR.QuadSink 逐条接收四元式，不需要完整的四元式列表
+     * @param sem 语义信息（用于辅助判断变量类型）
+     * @return 汇编 sink，输入结束后通过 instructions() 取得结果
+     */
+    public static AsmSink sink(Semantic.Result sem) {
+        return new AsmBuilder(sem);
+    }
+
     /**
      * 将指令列表转换为格式化的文本
      */
@@ -63,6 +72,14 @@ public class CodeGen {
     // Data Structures
     // ==========================================
 
+    /**
+     * 汇编 sink：接收四元式流并累积汇编指令
+     */
+    public interface AsmSink extends IR.QuadSink {
+        /** 目前为止生成的汇编指令 */
+        List<Instr> instructions();
+    }
+
     /**
      * 汇编指令 (Instruction)
      */
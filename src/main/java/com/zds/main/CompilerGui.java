@@ -1,4 +1,5 @@
 package com.zds.main;
+import com.zds.optimizer.Optimizer;
 import com.zds.service.CompilerService;
 
 import javax.swing.*;
@@ -6,6 +7,7 @@ import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 
@@ -18,6 +20,8 @@ public class CompilerGui {
     private final JTextArea asmArea = new JTextArea();
     private final JTextArea errorArea = new JTextArea();
     private CompilerService.Artifacts lastResult = CompilerService.Artifacts.empty();
+    // O3 流水线；窗口存在期间重复编译时共用它的块缓存
+    private final Optimizer.PassManager passes = Optimizer.PassManager.level(3);
     public void show() {
         JFrame frame = new JFrame("简易编译器 GUI");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -66,13 +70,21 @@ public class CompilerGui {
 
     private void runCompilation() {
         String source = sourceArea.getText();
-        lastResult = CompilerService.compile(source, true);
+        lastResult = CompilerService.compile(source, passes);
+        String errorText = lastResult.errorText();
+        if (!lastResult.hasErrors()) {
+            try {
+                CompilerService.writeAsm(lastResult, CompilerService.ASM_OUTPUTS);
+            } catch (IOException ex) {
+                errorText = "写文件失败: " + ex.getMessage();
+            }
+        }
         lexerArea.setText(lastResult.lexerText());
         astArea.setText(lastResult.astText());
         irBeforeArea.setText(lastResult.irBeforeText());
         irAfterArea.setText(lastResult.irAfterText());
         asmArea.setText(lastResult.asmText());
-        errorArea.setText(lastResult.errorText());
+        errorArea.setText(errorText);
 
         resetCarets();
     }
@@ -1,4 +1,5 @@
 package com.zds.main;
+import com.zds.optimizer.Optimizer;
 import com.zds.service.CompilerService;
 
 import java.io.InputStream;
@@ -14,28 +15,31 @@ import java.nio.charset.StandardCharsets;
  * 3) 输出 AST
  * 4) 语义分析 Semantic -> 符号表/类型检查
  * 5) IR 生成 -> 四元式输出
+ *
+ * 命令行模式：cli [流水线]，流水线为 O0 ~ O3（默认 O3）或自定义的 pass 列表（见 Optimizer.PassManager）
  */
 public class Main {
 
     public static void main(String[] args) throws Exception {
         if (args != null && args.length > 0 && "cli".equalsIgnoreCase(args[0])) {
-            runConsole();
+            runConsole(Optimizer.PassManager.parse(args.length > 1 ? args[1] : "O3"));
             return;
         }
 
         CompilerGui.main(args);
     }
 
-    private static void runConsole() throws Exception {
+    private static void runConsole(Optimizer.PassManager passes) throws Exception {
         String source = readResource("input.txt");
 
-        CompilerService.Artifacts artifacts = CompilerService.compile(source, true);
+        CompilerService.Artifacts artifacts = CompilerService.compile(source, passes);
 
         if (artifacts.hasErrors()) {
             System.out.println("===== 错误信息 Errors =====");
             System.out.println(artifacts.errorText());
             return;
         }
+        CompilerService.writeAsm(artifacts, CompilerService.ASM_OUTPUTS);
 
         System.out.println("===== IR Before =====");
         System.out.print(artifacts.irBeforeText());
@@ -43,6 +47,10 @@ public class Main {
         System.out.println("===== IR After =====");
         System.out.print(artifacts.irAfterText());
 
+        System.out.println("===== Passes (" + passes + ") =====");
+        System.out.print(artifacts.passStatsText());
+        System.out.printf("块缓存: 命中 %d, 未命中 %d, %d 个块%n", passes.cacheHits(), passes.cacheMisses(), passes.cacheSize());
+
         System.out.println("===== ASM =====");
         System.out.print(artifacts.asmText());
     }
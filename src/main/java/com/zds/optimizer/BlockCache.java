@@ -0,0 +1,257 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基本块优化结果缓存 (Block Cache)
+ * 块内优化（值编号、简化、死临时变量消除）的结果只取决于块本身的四元式，且与临时变量的具体编号无关：
+ * 把临时变量按首次出现的顺序换成规范编号后，内容相同的块优化结果也相同（换回原编号即可）。
+ * 生成的程序中常有大量相同的块，修改少量源码后重新编译时大部分块也没有变化，命中时直接跳过块内优化。
+ *
+ * 包级私有类：键是规范化后的四元式序列，容量有限，按最近最少使用 (LRU) 淘汰。
+ * 块内优化运行到不动点，优化结果本身也作为"无变化"登记，后续 pass 再次遇到未改动的块同样命中。
+ * 缓存属于一个 Optimizer.PassManager（或一个 blockSink），随它一起回收；用户变量只按名字保存，
+ * 不引用符号表，命中时换回本块自己的变量对象。
+ * 线程安全：并行块内优化（BlockParallelism）的多个线程可以共用一个缓存。
+ */
+final class BlockCache {
+    /** 默认容量（块数） */
+    static final int DEFAULT_CAPACITY = 32768;
+    /** 参与缓存的最少四元式数：更小的块直接优化比查表更快 */
+    static final int MIN_QUADS = 3;
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Entry> entries;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param capacity 最多缓存的块数
+     */
+    BlockCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("缓存容量应为正数: " + capacity);
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > BlockCache.this.capacity;
+            }
+        };
+    }
+
+    int capacity() { return capacity; }
+    synchronized int size() { return entries.size(); }
+    synchronized long hits() { return hits; }
+    synchronized long misses() { return misses; }
+
+    /** 清空缓存与计数 */
+    synchronized void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("BlockCache[size=%d/%d, hits=%d, misses=%d]", entries.size(), capacity, hits, misses);
+    }
+
+    /**
+     * 块内优化到不动点（等价于 OptimizationPass.optimizeInPlace），命中时按缓存的结果改写
+     * @return 是否发生变化
+     */
+    boolean optimize(List<IR.Quad> block) {
+        if (block.size() < MIN_QUADS) return OptimizationPass.optimizeInPlace(block);
+        Canonical in = new Canonical(block);
+        Entry e = lookup(in.key);
+        if (e != null) {
+            if (e.changed) e.apply(block, in);
+            return e.changed;
+        }
+        IR.Quad[] input = block.toArray(new IR.Quad[0]);
+        boolean changed = OptimizationPass.optimizeInPlace(block);
+        Entry result = Entry.of(input, block, in, changed);
+        if (result == null) return changed;
+        store(in.key, result);
+        if (changed && block.size() >= MIN_QUADS) store(new Canonical(block).key, Entry.UNCHANGED); // 不动点
+        return changed;
+    }
+
+    private synchronized Entry lookup(Key key) {
+        Entry e = entries.get(key);
+        if (e != null) hits++;
+        else misses++;
+        return e;
+    }
+
+    private synchronized void store(Key key, Entry e) {
+        entries.put(key, e);
+    }
+
+    // ==========================================
+    // Canonical form
+    // ==========================================
+
+    /**
+     * 块的规范形式：每条四元式占 4 个槽 (op, left, right, dest)，临时变量换成首次出现的序号 (Integer)，
+     * 用户变量换成只有名字的 VarName，其余操作数（常量、标签）按 Operand.equals（类别 + 文本）比较
+     */
+    private static final class Canonical {
+        final Key key;
+        final Map<IR.Operand, Integer> index = new HashMap<>(); // 临时变量 -> 规范序号
+        final List<IR.Operand> temps = new ArrayList<>();        // 规范序号 -> 本块的临时变量
+        final Set<String> varNames = new HashSet<>();            // 本块出现的用户变量名
+        private Map<String, IR.Operand> vars;                     // 本块的用户变量对象（换回时使用本块的符号，用到时才建立）
+
+        Canonical(List<IR.Quad> block) {
+            Object[] slots = new Object[block.size() * 4];
+            int k = 0;
+            for (IR.Quad q : block) {
+                slots[k++] = q.op;
+                slots[k++] = slot(q.left);
+                slots[k++] = slot(q.right);
+                slots[k++] = slot(q.dest);
+            }
+            key = new Key(slots);
+        }
+
+        Object slot(IR.Operand o) {
+            if (o.isTemp()) {
+                Integer i = index.get(o);
+                if (i == null) {
+                    i = temps.size();
+                    index.put(o, i);
+                    temps.add(o);
+                }
+                return i;
+            }
+            if (!o.isVar()) return o;
+            varNames.add(o.text);
+            return new VarName(o.text);
+        }
+
+        IR.Operand operand(Object slot, IR.Quad[] block) {
+            if (slot instanceof Integer) return temps.get((Integer) slot);
+            if (!(slot instanceof VarName)) return (IR.Operand) slot;
+            if (vars == null) {
+                vars = new HashMap<>();
+                for (IR.Quad q : block) {
+                    for (IR.Operand v : new IR.Operand[]{q.left, q.right, q.dest}) {
+                        if (v.isVar()) vars.putIfAbsent(v.text, v);
+                    }
+                }
+            }
+            return vars.get(((VarName) slot).text); // Entry.of 保证结果中的变量都出现在块中
+        }
+    }
+
+    /** 规范形式中的用户变量：只有 IR 名字，不引用符号 */
+    private static final class VarName {
+        final String text;
+
+        VarName(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof VarName && text.equals(((VarName) o).text);
+        }
+
+        @Override
+        public int hashCode() {
+            return text.hashCode();
+        }
+    }
+
+    private static final class Key {
+        private final Object[] slots;
+        private final int hash;
+
+        Key(Object[] slots) {
+            this.slots = slots;
+            this.hash = Arrays.hashCode(slots);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && hash == ((Key) o).hash && Arrays.equals(slots, ((Key) o).slots);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 优化结果：每条输出四元式要么是输入中第 source 条（原对象复用），要么是规范形式的新四元式
+     */
+    private static final class Entry {
+        static final Entry UNCHANGED = new Entry(false, null, null);
+
+        final boolean changed;
+        final int[] source;    // 输入中的位置，-1 表示新四元式
+        final Object[] slots;  // 新四元式的规范形式（4 个槽一条，source >= 0 的位置为空）
+
+        private Entry(boolean changed, int[] source, Object[] slots) {
+            this.changed = changed;
+            this.source = source;
+            this.slots = slots;
+        }
+
+        /**
+         * 由一次实际优化的输入与输出构造；输出中出现输入没有的临时变量或用户变量时（块内优化不会这样做）返回 null
+         */
+        static Entry of(IR.Quad[] input, List<IR.Quad> output, Canonical in, boolean changed) {
+            if (!changed) return UNCHANGED;
+            Map<IR.Quad, Integer> position = new IdentityHashMap<>();
+            for (int i = 0; i < input.length; i++) position.put(input[i], i);
+            int[] source = new int[output.size()];
+            Object[] slots = new Object[output.size() * 4];
+            for (int i = 0; i < output.size(); i++) {
+                IR.Quad q = output.get(i);
+                Integer p = position.get(q);
+                source[i] = p == null ? -1 : p;
+                if (p != null) continue;
+                slots[i * 4] = q.op;
+                for (int j = 1; j <= 3; j++) {
+                    IR.Operand o = j == 1 ? q.left : j == 2 ? q.right : q.dest;
+                    if (o.isTemp()) {
+                        Integer t = in.index.get(o);
+                        if (t == null) return null;
+                        slots[i * 4 + j] = t;
+                    } else {
+                        if (o.isVar() && !in.varNames.contains(o.text)) return null;
+                        slots[i * 4 + j] = o.isVar() ? new VarName(o.text) : o;
+                    }
+                }
+            }
+            return new Entry(true, source, slots);
+        }
+
+        /** 按缓存的结果改写块（in 是该块的规范形式） */
+        void apply(List<IR.Quad> block, Canonical in) {
+            IR.Quad[] input = block.toArray(new IR.Quad[0]);
+            block.clear();
+            for (int i = 0; i < source.length; i++) {
+                if (source[i] >= 0) {
+                    block.add(input[source[i]]);
+                } else {
+                    int k = i * 4;
+                    block.add(new IR.Quad((String) slots[k], in.operand(slots[k + 1], input), in.operand(slots[k + 2], input), in.operand(slots[k + 3], input)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 并行块内优化 (Block Parallelism)
+ * 包级私有类：块内改写（值编号、简化、死临时变量消除）只读写所在的基本块，不同块之间互不依赖，
+ * 可以分给 ForkJoinPool 的多个线程同时完成。每个块原地改写，块的顺序由 IR.Cfg 保持，不需要再拼接。
+ *
+ * 按四元式数而不是块数切分任务：块的大小差别很大，按前缀和二分可以让每个任务的工作量接近 GRAIN。
+ * 四元式总数低于阈值时在当前线程顺序执行，避免小程序付出任务调度的开销。
+ * 结果与顺序执行完全相同。
+ */
+class BlockParallelism {
+    /** 默认的并行阈值（四元式总数） */
+    static final int DEFAULT_THRESHOLD = 20_000;
+    /** 单个任务的四元式数 */
+    static final int GRAIN = 2_000;
+
+    private final IR.BasicBlock[] blocks;
+    private final long[] prefix; // prefix[i] = 前 i 个块的四元式数
+    private final BlockCache cache;
+
+    private BlockParallelism(List<IR.BasicBlock> blocks, BlockCache cache) {
+        this.cache = cache;
+        this.blocks = blocks.toArray(new IR.BasicBlock[0]);
+        this.prefix = new long[this.blocks.length + 1];
+        for (int i = 0; i < this.blocks.length; i++) prefix[i + 1] = prefix[i] + this.blocks[i].quads().size();
+    }
+
+    /**
+     * 把每个块优化到不动点（逐块调用 OptimizationPass.optimizeInPlace 或 BlockCache.optimize）
+     * @param threshold 四元式总数不低于它时并行（Integer.MAX_VALUE 表示总是顺序执行）
+     * @param cache 块优化结果缓存，null 表示不使用
+     * @return 是否有块发生变化
+     */
+    static boolean run(IR.Cfg cfg, int threshold, BlockCache cache) {
+        BlockParallelism p = new BlockParallelism(cfg.blocks(), cache);
+        int n = p.blocks.length;
+        if (p.prefix[n] < threshold || ForkJoinPool.getCommonPoolParallelism() < 2) return p.optimize(0, n);
+        return ForkJoinPool.commonPool().invoke(new Range(p, 0, n));
+    }
+
+    private boolean optimize(int from, int to) {
+        boolean changed = false;
+        for (int i = from; i < to; i++) {
+            List<IR.Quad> quads = blocks[i].quads();
+            changed |= cache == null ? OptimizationPass.optimizeInPlace(quads) : cache.optimize(quads);
+        }
+        return changed;
+    }
+
+    /**
+     * 块区间 [from, to) 的优化任务：超过 GRAIN 时按四元式数对半切分
+     */
+    private static final class Range extends RecursiveTask<Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient BlockParallelism work;
+        private final int from;
+        private final int to;
+
+        Range(BlockParallelism work, int from, int to) {
+            this.work = work;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Boolean compute() {
+            long[] prefix = work.prefix;
+            if (to - from < 2 || prefix[to] - prefix[from] <= GRAIN) return work.optimize(from, to);
+            int mid = split(prefix);
+            Range right = new Range(work, mid, to);
+            right.fork();
+            boolean changed = new Range(work, from, mid).compute();
+            return right.join() | changed;
+        }
+
+        /** 使两半四元式数最接近的切分点，保证两半都非空 */
+        private int split(long[] prefix) {
+            long half = (prefix[from] + prefix[to]) / 2;
+            int lo = from + 1;
+            int hi = to - 1;
+            while (lo < hi) {
+                int m = (lo + hi) >>> 1;
+                if (prefix[m] < half) lo = m + 1;
+                else hi = m;
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按基本块优化的四元式 sink (Block Sink)
+ * 包级私有类：与 IR.Cfg 的切分规则一致（标签开始新块，跳转结束当前块），
+ * 只缓存当前基本块，到达块边界时优化并交给下游，内存占用与最大基本块成正比。
+ */
+class BlockSink implements IR.QuadSink {
+    private final IR.QuadSink downstream;
+    private final BlockCache cache;
+    private final List<IR.Quad> block = new ArrayList<>(); // 当前基本块（不含标签）
+
+    BlockSink(IR.QuadSink downstream, BlockCache cache) {
+        this.downstream = downstream;
+        this.cache = cache;
+    }
+
+    @Override
+    public void accept(IR.Quad q) {
+        if (q == null) return;
+        if ("label".equals(q.op)) {
+            flush();
+            downstream.accept(q);
+            return;
+        }
+        block.add(q);
+        if (q.op != null && q.op.startsWith("j")) {
+            flush();
+        }
+    }
+
+    @Override
+    public void finish() {
+        flush();
+        downstream.finish();
+    }
+
+    private void flush() {
+        if (block.isEmpty()) return;
+        cache.optimize(block);
+        for (IR.Quad q : block) {
+            downstream.accept(q);
+        }
+        block.clear();
+    }
+}
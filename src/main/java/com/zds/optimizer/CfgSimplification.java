@@ -0,0 +1,289 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+import com.zds.Semantic.Semantic;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 控制流图化简 (CFG Simplification)
+ * 包级私有类：清理生成器留下的多余跳转与标签。Generator 在条件跳转后总是跟一个 (j, _, _, Lfalse)，
+ * if 没有 else 时也会生成 j L_end 与空的 else 标签，于是出现跳到跳转的跳转、跳到下一条指令的跳转和没人引用的标签。
+ *
+ * 每一轮依次做（直接修改块的四元式与标签，最后由 IR.Cfg.rebuildEdges 一次重建边）：
+ * 0. 删除从入口不可达的块；两个操作数都是数字常量的条件跳转直接求值：成立改为无条件跳转，不成立删除
+ * 1. 跳转穿透 (Jump Threading)：目标块为空或只有 (j, _, _, L) 时，沿链改为直接跳到最终目标
+ * 2. 条件反转：(jX, a, b, L1) (j, _, _, L2) 且 L1 紧随其后时，改为 (j!X, a, b, L2) 并删除无条件跳转
+ * 3. 删除跳到顺序后继的跳转（中间只隔着空块也算）
+ * 4. 删除没有被任何跳转引用的标签
+ * 5. 合并顺序相接的块：没有标签的块并入不以跳转结尾的前一个块，空块直接删除
+ * 直到某一轮没有变化。每轮对四元式数是线性的。
+ *
+ * 浮点比较遇到 NaN 时 a < b 与 !(a >= b) 不等价，有序比较只在两个操作数都不可能是浮点数时反转；== / != 总可以反转。
+ */
+class CfgSimplification {
+    private static final Set<String> NON_DOUBLE_OPS = Set.of("iadd", "isub", "imul", "idiv", "ineg", "concat");
+
+    private final IR.Cfg cfg;
+    private int[] position; // 块编号 -> 布局位置
+
+    private CfgSimplification(IR.Cfg cfg) {
+        this.cfg = cfg;
+    }
+
+    /**
+     * 化简整个 CFG
+     * @return 是否有跳转、标签或块被删除 / 改写
+     */
+    static boolean run(IR.Cfg cfg) {
+        CfgSimplification s = new CfgSimplification(cfg);
+        boolean changed = false;
+        while (s.round()) changed = true;
+        return changed;
+    }
+
+    private boolean round() {
+        // 边在上一轮结束时已重建，可达性是准确的
+        boolean[] reachable = new boolean[cfg.blockIdBound()];
+        for (IR.BasicBlock b : cfg.reversePostorder()) reachable[b.id()] = true;
+        Set<IR.BasicBlock> unreachable = new HashSet<>();
+        for (IR.BasicBlock b : cfg.blocks()) {
+            if (!reachable[b.id()]) unreachable.add(b);
+        }
+        cfg.removeBlocks(unreachable);
+        List<IR.BasicBlock> blocks = cfg.blocks();
+        position = new int[cfg.blockIdBound()];
+        for (int i = 0; i < blocks.size(); i++) position[blocks.get(i).id()] = i;
+        boolean changed = !unreachable.isEmpty();
+        changed |= foldConstantBranches(blocks);
+        changed |= threadJumps(blocks);
+        changed |= dropDeadLabels(blocks); // 穿透后不再被引用的标签先删掉，条件反转才能看到紧随其后的跳转块
+        changed |= invertBranches(blocks);
+        changed |= removeFallthroughJumps(blocks);
+        changed |= dropDeadLabels(blocks);
+        Set<IR.BasicBlock> dead = mergeBlocks(blocks);
+        if (!dead.isEmpty()) cfg.removeBlocks(dead);
+        else if (changed) cfg.rebuildEdges();
+        return changed || !dead.isEmpty();
+    }
+
+    // -------- 0. constant branches --------
+
+    private boolean foldConstantBranches(List<IR.BasicBlock> blocks) {
+        boolean changed = false;
+        for (IR.BasicBlock b : blocks) {
+            IR.Quad t = b.terminator();
+            if (t == null || "j".equals(t.op) || !t.left.isNumeric() || !t.right.isNumeric()) continue;
+            Boolean taken = compare(t.op, t.left, t.right);
+            if (taken == null) continue;
+            if (taken) {
+                b.quads().set(b.quads().size() - 1, new IR.Quad("j", IR.Operand.NONE, IR.Operand.NONE, t.dest));
+            } else {
+                b.quads().remove(b.quads().size() - 1);
+            }
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * 求值常量比较；两侧都是整数时按 long 比较，否则按 double 比较（与运行时一致）。未知操作码返回 null
+     */
+    static Boolean compare(String op, IR.Operand a, IR.Operand b) {
+        int c;
+        if (a instanceof IR.Operand.IntConst && b instanceof IR.Operand.IntConst) {
+            c = Long.compare(((IR.Operand.IntConst) a).value, ((IR.Operand.IntConst) b).value);
+        } else {
+            double x = a.numericValue(), y = b.numericValue();
+            if (Double.isNaN(x) || Double.isNaN(y)) return null;
+            c = Double.compare(x, y);
+            if (x == y) c = 0; // 0.0 与 -0.0 相等
+        }
+        switch (op) {
+            case "j<": return c < 0;
+            case "j<=": return c <= 0;
+            case "j>": return c > 0;
+            case "j>=": return c >= 0;
+            case "j==": return c == 0;
+            case "j!=": return c != 0;
+            default: return null;
+        }
+    }
+
+    // -------- 1. jump threading --------
+
+    private boolean threadJumps(List<IR.BasicBlock> blocks) {
+        boolean changed = false;
+        for (IR.BasicBlock b : blocks) {
+            IR.Quad t = b.terminator();
+            if (t == null) continue;
+            IR.BasicBlock target = cfg.targetOf(t);
+            if (target == null) continue;
+            IR.BasicBlock last = finalTarget(target, blocks);
+            if (last == target) continue;
+            retarget(b, t, cfg.labelOf(last));
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * 从 b 出发穿过空块（顺序执行到下一块）与只有无条件跳转的块，得到真正执行代码的块；遇到环时停在环上
+     */
+    private IR.BasicBlock finalTarget(IR.BasicBlock b, List<IR.BasicBlock> blocks) {
+        Set<IR.BasicBlock> seen = new HashSet<>();
+        while (seen.add(b)) {
+            IR.BasicBlock next;
+            if (b.quads().isEmpty()) {
+                int p = position[b.id()] + 1;
+                next = p < blocks.size() ? blocks.get(p) : null;
+            } else if (b.quads().size() == 1 && "j".equals(b.quads().get(0).op)) {
+                next = cfg.targetOf(b.quads().get(0));
+            } else {
+                return b;
+            }
+            if (next == null) return b;
+            b = next;
+        }
+        return b;
+    }
+
+    // -------- 2. branch inversion --------
+
+    private boolean invertBranches(List<IR.BasicBlock> blocks) {
+        boolean changed = false;
+        for (int i = 0; i + 1 < blocks.size(); i++) {
+            IR.BasicBlock b = blocks.get(i);
+            IR.Quad t = b.terminator();
+            if (t == null || "j".equals(t.op)) continue;
+            IR.BasicBlock jump = blocks.get(i + 1);
+            if (!jump.labels().isEmpty() || jump.quads().size() != 1 || !"j".equals(jump.quads().get(0).op)) continue;
+            if (cfg.targetOf(t) != fallInto(blocks, i + 2)) continue;
+            String inverse = inverse(t.op);
+            if (inverse == null || !invertible(t, b)) continue;
+            b.quads().set(b.quads().size() - 1, new IR.Quad(inverse, t.left, t.right, jump.quads().get(0).dest));
+            jump.quads().clear();
+            changed = true;
+        }
+        return changed;
+    }
+
+    /** 条件取反后的操作码（整数比较意义下；非比较操作码返回 null） */
+    static String inverse(String op) {
+        switch (op) {
+            case "j<": return "j>=";
+            case "j>=": return "j<";
+            case "j<=": return "j>";
+            case "j>": return "j<=";
+            case "j==": return "j!=";
+            case "j!=": return "j==";
+            default: return null;
+        }
+    }
+
+    /**
+     * 条件跳转 t（位于块 b）能否取反：== / != 总可以；有序比较要求两侧都不可能是浮点数（NaN）
+     */
+    static boolean invertible(IR.Quad t, IR.BasicBlock b) {
+        if ("j==".equals(t.op) || "j!=".equals(t.op)) return true;
+        return !mayBeDouble(t.left, b) && !mayBeDouble(t.right, b);
+    }
+
+    /**
+     * 操作数是否可能是浮点数（类型不明时保守地返回 true）；临时变量只在块内活跃，按它在本块中的定义判断
+     */
+    private static boolean mayBeDouble(IR.Operand o, IR.BasicBlock b) {
+        switch (o.kind) {
+            case INT: case STRING: return false;
+            case VAR: {
+                IR.Operand.Var v = (IR.Operand.Var) o;
+                return v.symbol == null || v.symbol.type == Semantic.Type.DOUBLE;
+            }
+            case TEMP: {
+                List<IR.Quad> quads = b.quads();
+                for (int i = quads.size() - 1; i >= 0; i--) {
+                    IR.Quad q = quads.get(i);
+                    if (!o.equals(q.dest) || !Liveness.defines(q)) continue;
+                    if (":=".equals(q.op)) return mayBeDouble(q.left, b);
+                    return !NON_DOUBLE_OPS.contains(q.op);
+                }
+                return true;
+            }
+            default: return true;
+        }
+    }
+
+    // -------- 3. jumps to the fallthrough block --------
+
+    /**
+     * 从后往前处理：删掉后面的跳转后，它所在的块变空，前面跳到同一目标的跳转在同一遍中也成为顺序执行
+     */
+    private boolean removeFallthroughJumps(List<IR.BasicBlock> blocks) {
+        boolean changed = false;
+        for (int i = blocks.size() - 1; i >= 0; i--) {
+            IR.BasicBlock b = blocks.get(i);
+            IR.Quad t = b.terminator();
+            if (t == null || cfg.targetOf(t) == null || cfg.targetOf(t) != fallInto(blocks, i + 1)) continue;
+            b.quads().remove(b.quads().size() - 1); // 条件跳转的比较没有副作用，同样可以删除
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * 从布局位置 from 开始顺序执行时第一个非空的块；之后全是空块时为最后一个块（程序结尾，跳转穿透也停在这里）；from 越界时为 null
+     */
+    private static IR.BasicBlock fallInto(List<IR.BasicBlock> blocks, int from) {
+        for (int i = from; i < blocks.size(); i++) {
+            if (!blocks.get(i).quads().isEmpty()) return blocks.get(i);
+        }
+        return from < blocks.size() ? blocks.get(blocks.size() - 1) : null;
+    }
+
+    // -------- 4. dead labels --------
+
+    private boolean dropDeadLabels(List<IR.BasicBlock> blocks) {
+        Set<String> referenced = new HashSet<>();
+        for (IR.BasicBlock b : blocks) {
+            IR.Quad t = b.terminator();
+            if (t != null) referenced.add(t.dest.text);
+        }
+        boolean changed = false;
+        for (IR.BasicBlock b : blocks) {
+            if (!b.labels().isEmpty()) changed |= b.labels().removeIf(l -> !referenced.contains(l.text));
+        }
+        return changed;
+    }
+
+    // -------- 5. merge straight-line blocks --------
+
+    /**
+     * 合并后的块只改动四元式列表，被并入的块与空块作为结果返回，由调用方批量删除
+     */
+    private Set<IR.BasicBlock> mergeBlocks(List<IR.BasicBlock> blocks) {
+        Set<IR.BasicBlock> dead = new HashSet<>();
+        IR.BasicBlock into = null; // 可以接收后续代码的块：不以跳转结尾
+        for (IR.BasicBlock b : blocks) {
+            boolean unlabeled = b.labels().isEmpty();
+            if (unlabeled && b.quads().isEmpty()) {
+                dead.add(b); // 空块：顺序执行直接穿过
+                continue;
+            }
+            if (unlabeled && into != null) {
+                into.quads().addAll(b.quads());
+                dead.add(b);
+            } else {
+                into = b;
+            }
+            if (into.terminator() != null) into = null;
+        }
+        if (dead.size() == blocks.size()) dead.remove(blocks.get(0));
+        return dead;
+    }
+
+    private void retarget(IR.BasicBlock b, IR.Quad t, IR.Operand label) {
+        b.quads().set(b.quads().size() - 1, new IR.Quad(t.op, t.left, t.right, label));
+    }
+}
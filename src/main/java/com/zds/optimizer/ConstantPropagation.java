@@ -0,0 +1,54 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+import java.util.Map;
+
+/**
+ * 全局常量传播 (Global Constant Propagation)
+ * 包级私有类：在 IR.Cfg 上做前向数据流分析，把已知为常量的变量 / 临时变量替换为字面量，
+ * 之后由 OptimizationPass 的常量折叠接着化简。
+ *
+ * 格 (Lattice)：每个名字取 未定义(TOP) > 常量 c > 非常量(NAC) 三层。
+ * 状态表中的名字为常量，不在表中即为 NAC；尚未到达的块为 TOP。
+ * 汇合点上各前驱取值相同的常量才保留，程序入口处所有名字都是 NAC（求解骨架见 ForwardPropagation）。
+ */
+class ConstantPropagation extends ForwardPropagation {
+
+    private ConstantPropagation(IR.Cfg cfg) {
+        super(cfg);
+    }
+
+    /**
+     * 分析并改写整个 CFG
+     * @return 是否有操作数被替换为常量
+     */
+    static boolean run(IR.Cfg cfg) {
+        return new ConstantPropagation(cfg).propagate();
+    }
+
+    /**
+     * 传递函数：定义点的值按替换后的四元式求值，能化简为常量复制即为常量，否则为 NAC
+     */
+    @Override
+    void transfer(IR.Quad q, Map<IR.Operand, IR.Operand> state) {
+        if (!Liveness.defines(q)) return;
+        if (":=".equals(q.op)) {
+            IR.Operand value = replace(q.left, state);
+            if (value.isConst()) state.put(q.dest, value);
+            else state.remove(q.dest);
+            return;
+        }
+        IR.Quad folded = OptimizationPass.simplifyQuad(substitute(q, state));
+        if (":=".equals(folded.op) && folded.left.isConst()) {
+            state.put(q.dest, folded.left);
+        } else {
+            state.remove(q.dest);
+        }
+    }
+
+    @Override
+    IR.Operand replace(IR.Operand o, Map<IR.Operand, IR.Operand> state) {
+        return state.getOrDefault(o, o);
+    }
+}
@@ -0,0 +1,63 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+import java.util.Map;
+
+/**
+ * 复制传播 (Copy Propagation)
+ * 包级私有类：对 (:=, y, _, x) 形式的复制，把其后对 x 的使用替换为 y，
+ * 复制本身若因此不再被使用，由死代码消除删除。
+ *
+ * 状态表记录当前可用的复制 x -> y；x 或 y 被重新定义时该复制失效。
+ * 块内顺序扫描即为局部复制传播；跨块时块入口可用的复制为所有前驱出口可用复制的交集（求解骨架见 ForwardPropagation）。
+ * 替换时沿复制链解析到最初的来源：t3 := a; b := t3 之后 b 替换为 a。
+ * 链只在替换时解析，分析中只记录直接来源，传递函数保持单调。
+ *
+ * 块内死临时变量消除假定临时变量不跨块活跃，因此来源是临时变量的复制不传出块，
+ * 跨块只传播来源是用户变量的复制。
+ */
+class CopyPropagation extends ForwardPropagation {
+
+    private CopyPropagation(IR.Cfg cfg) {
+        super(cfg);
+    }
+
+    /**
+     * 分析并改写整个 CFG
+     * @return 是否有操作数被替换
+     */
+    static boolean run(IR.Cfg cfg) {
+        return new CopyPropagation(cfg).propagate();
+    }
+
+    /**
+     * 传递函数：定义 x 使 x -> ? 与 ? -> x 失效；若本身是复制则加入 x -> 来源
+     */
+    @Override
+    void transfer(IR.Quad q, Map<IR.Operand, IR.Operand> state) {
+        if (!Liveness.defines(q)) return;
+        IR.Operand d = q.dest;
+        state.remove(d);
+        if (!state.isEmpty()) state.values().removeIf(d::equals);
+        if (":=".equals(q.op) && Liveness.isName(q.left) && !q.left.equals(d)) state.put(d, q.left);
+    }
+
+    /**
+     * 沿可用复制链找到最初的来源（定义会使以被定义名字为来源的复制失效，链中不会有环）
+     */
+    @Override
+    IR.Operand replace(IR.Operand o, Map<IR.Operand, IR.Operand> state) {
+        IR.Operand src = state.get(o);
+        while (src != null) {
+            o = src;
+            src = state.get(o);
+        }
+        return o;
+    }
+
+    @Override
+    boolean flowsOut(IR.BasicBlock b, IR.Operand name, IR.Operand value) {
+        return !value.isTemp() && super.flowsOut(b, name, value);
+    }
+}
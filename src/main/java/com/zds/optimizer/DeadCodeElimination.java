@@ -0,0 +1,94 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 全局死代码消除 (Global Dead Code Elimination)
+ * 包级私有类：以全局活跃变量分析（Liveness）的块出口集合为起点，在每个块内从后往前扫描，
+ * 定义的名字此后不再活跃、且运算没有副作用的四元式即为死代码，直接删除。
+ *
+ * 与块内的死临时变量消除不同，这里同样删除用户变量的死定义（死存储）：
+ * 从未被读取的局部变量、在读取之前就被覆盖的赋值（x := 1; x := 2 中的前者，跨块同样适用）等；
+ * 程序出口处可观察的变量（默认为全局变量，见 Optimizer.ExitObservable）在出口处视为活跃，最后一次赋值保留。
+ *
+ * 活跃集合是按名字编号索引的 BitSet，一遍扫描对四元式数是线性的；
+ * 块内的定义链在同一遍中就能删干净；被删除的定义读取了块入口活跃的名字时，
+ * 该名字在别的块中的定义可能随之变为死定义，此时重新分析，直到没有这样的删除。
+ */
+class DeadCodeElimination {
+
+    private final Optimizer.ExitObservable observable;
+    private Liveness live;
+    private boolean again; // 删除的定义读取了块入口活跃的名字：它在别的块中的定义可能随之变为死代码
+
+    private DeadCodeElimination(Optimizer.ExitObservable observable) {
+        this.observable = observable;
+    }
+
+    /**
+     * 删除整个 CFG 中的死定义（全局变量在出口处可观察）
+     * @return 是否有四元式被删除
+     */
+    static boolean run(IR.Cfg cfg) {
+        return run(cfg, Optimizer.ExitObservable.GLOBALS);
+    }
+
+    /**
+     * 删除整个 CFG 中的死定义
+     * @param observable 程序出口处可观察的变量
+     * @return 是否有四元式被删除
+     */
+    static boolean run(IR.Cfg cfg, Optimizer.ExitObservable observable) {
+        DeadCodeElimination dce = new DeadCodeElimination(observable);
+        boolean changed = false;
+        do {
+            dce.again = false;
+            dce.live = Liveness.compute(cfg, observable);
+            for (IR.BasicBlock b : cfg.blocks()) changed |= dce.sweep(b);
+        } while (dce.again);
+        return changed;
+    }
+
+    /**
+     * 块内从后往前维护活跃集合：遇到定义先判断死活，再把它的操作数加入活跃集合
+     */
+    private boolean sweep(IR.BasicBlock b) {
+        List<IR.Quad> quads = b.quads();
+        BitSet alive = live.liveOut(b);
+        BitSet dead = null;
+        for (int i = quads.size() - 1; i >= 0; i--) {
+            IR.Quad q = quads.get(i);
+            if (Liveness.defines(q)) {
+                int d = live.id(q.dest);
+                if (!alive.get(d) && removable(q)) {
+                    if (dead == null) dead = new BitSet(quads.size());
+                    dead.set(i);
+                    again |= live.liveIn(b, q.left) || live.liveIn(b, q.right);
+                    continue;
+                }
+                alive.clear(d);
+            }
+            if (Liveness.isName(q.left)) alive.set(live.id(q.left));
+            if (Liveness.isName(q.right)) alive.set(live.id(q.right));
+        }
+        if (dead == null) return false;
+        List<IR.Quad> kept = new ArrayList<>(quads.size() - dead.cardinality());
+        for (int i = 0; i < quads.size(); i++) {
+            if (!dead.get(i)) kept.add(quads.get(i));
+        }
+        quads.clear();
+        quads.addAll(kept);
+        return true;
+    }
+
+    /**
+     * 没有副作用的定义：复制与纯运算（IR 中没有调用 / 输入输出，除零不视为可观察行为，与块内消除一致）
+     */
+    private static boolean removable(IR.Quad q) {
+        return ":=".equals(q.op) || ValueNumbering.isPure(q.op);
+    }
+}
@@ -0,0 +1,139 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 前向替换传播框架 (Forward Propagation)
+ * 包级私有抽象类：常量传播与复制传播共用的数据流求解与改写骨架。
+ *
+ * 状态是 Map<名字, 值>：名字在表中表示"此处可以把它替换为该值"，不在表中表示未知。
+ * 块入口状态为所有已到达前驱出口状态的交集（各前驱取值相同的项才保留）；
+ * 尚未到达的前驱（第一次经过回边时）不参与交汇，迭代到不动点后结果仍然安全。程序入口处状态为空。
+ * 块出口状态只保留在出口处活跃的名字（见 Liveness），状态大小与活跃的项数成正比，不随程序长度增长。
+ *
+ * 子类提供传递函数 transfer 与操作数替换 replace。
+ */
+abstract class ForwardPropagation {
+    protected final IR.Cfg cfg;
+    private final Liveness live;
+    private final List<Map<IR.Operand, IR.Operand>> out; // 按块编号索引，null 表示尚未到达
+
+    ForwardPropagation(IR.Cfg cfg) {
+        this.cfg = cfg;
+        this.live = Liveness.compute(cfg);
+        this.out = new ArrayList<>(Collections.nCopies(cfg.blockIdBound(), null));
+    }
+
+    /**
+     * 传递函数：按四元式 q（替换前的原始形式）更新状态
+     */
+    abstract void transfer(IR.Quad q, Map<IR.Operand, IR.Operand> state);
+
+    /**
+     * 操作数在当前状态下的替换结果；不能替换时返回 o 本身
+     */
+    abstract IR.Operand replace(IR.Operand o, Map<IR.Operand, IR.Operand> state);
+
+    /**
+     * 块出口的一项是否继续传给后继（默认：名字在出口处活跃即保留）
+     */
+    boolean flowsOut(IR.BasicBlock b, IR.Operand name, IR.Operand value) {
+        return live.liveOut(b, name);
+    }
+
+    /**
+     * 求解并改写整个 CFG
+     * @return 是否有操作数被替换
+     */
+    final boolean propagate() {
+        solve();
+        return rewrite();
+    }
+
+    /**
+     * 按逆后序扫描，只重新计算被标记的块；出口状态变化时标记后继，直到没有标记（不动点）
+     * 沿逆后序处理时前驱总是先于后继，只有回边会引起下一轮扫描。
+     */
+    private void solve() {
+        List<IR.BasicBlock> rpo = cfg.reversePostorder();
+        boolean[] dirty = new boolean[cfg.blockIdBound()];
+        int[] order = new int[cfg.blockIdBound()];
+        for (int i = 0; i < rpo.size(); i++) {
+            dirty[rpo.get(i).id()] = true;
+            order[rpo.get(i).id()] = i;
+        }
+        boolean again = true;
+        while (again) {
+            again = false;
+            for (IR.BasicBlock b : rpo) {
+                if (!dirty[b.id()]) continue;
+                dirty[b.id()] = false;
+                Map<IR.Operand, IR.Operand> state = meet(b);
+                for (IR.Quad q : b.quads()) transfer(q, state);
+                if (!state.isEmpty()) state.entrySet().removeIf(e -> !flowsOut(b, e.getKey(), e.getValue()));
+                if (state.equals(out.get(b.id()))) continue;
+                out.set(b.id(), state);
+                for (IR.BasicBlock s : b.successors()) {
+                    dirty[s.id()] = true;
+                    again |= order[s.id()] <= order[b.id()]; // 回边：下一轮扫描
+                }
+            }
+        }
+    }
+
+    /**
+     * 块入口状态：入口块为空，其余块为已到达前驱出口状态的交集
+     */
+    private Map<IR.Operand, IR.Operand> meet(IR.BasicBlock b) {
+        if (b == cfg.entry()) return new HashMap<>();
+        Map<IR.Operand, IR.Operand> result = null;
+        for (IR.BasicBlock p : b.predecessors()) {
+            Map<IR.Operand, IR.Operand> s = out.get(p.id());
+            if (s == null) continue; // 尚未到达：不影响交汇结果
+            if (result == null) {
+                result = new HashMap<>(s);
+            } else {
+                result.entrySet().removeIf(e -> !e.getValue().equals(s.get(e.getKey())));
+            }
+        }
+        return result == null ? new HashMap<>() : result;
+    }
+
+    /**
+     * 用分析结果替换各块中的操作数（不可达块保持不变），块入口状态由收敛后的前驱出口状态重新交汇得到
+     */
+    private boolean rewrite() {
+        boolean changed = false;
+        for (IR.BasicBlock b : cfg.reversePostorder()) {
+            Map<IR.Operand, IR.Operand> state = meet(b);
+            List<IR.Quad> quads = b.quads();
+            for (int i = 0; i < quads.size(); i++) {
+                IR.Quad q = quads.get(i);
+                IR.Quad s = substitute(q, state);
+                if (s != q) {
+                    quads.set(i, s);
+                    changed = true;
+                }
+                transfer(q, state);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 替换 left / right；没有可替换的操作数时返回 q 本身
+     */
+    final IR.Quad substitute(IR.Quad q, Map<IR.Operand, IR.Operand> state) {
+        if ("label".equals(q.op) || state.isEmpty()) return q;
+        IR.Operand left = replace(q.left, state);
+        IR.Operand right = replace(q.right, state);
+        if (left == q.left && right == q.right) return q;
+        return new IR.Quad(q.op, left, right, q.dest);
+    }
+}
@@ -0,0 +1,64 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+import com.zds.Semantic.Semantic;
+
+/**
+ * 保存变量 (Holder Variables)
+ * 包级私有类：代码移动类优化（PRE、循环不变量外提）把计算结果存入新的用户变量，在移动后的位置与原位置之间传值。
+ * 临时变量只在块内活跃，不能承担跨块传值，因此分配形如 prefix$n 的变量：
+ * - 符号作用域深度为 1（局部），不属于程序出口处可观察的全局变量，死代码消除可以删除它们
+ * - 源程序的标识符不含 $，不会与用户变量重名；编号从 CFG 中已有的同前缀名字之后开始，重复优化也不重名
+ * - 类型由操作码决定（见 resultType），代码生成按符号类型选择指令
+ */
+class HolderVariables {
+    private final String prefix;
+    private int next;
+
+    /**
+     * @param prefix 名字前缀（含 $），如 "pre$"
+     */
+    HolderVariables(IR.Cfg cfg, String prefix) {
+        this.prefix = prefix;
+        this.next = firstFree(cfg, prefix);
+    }
+
+    /**
+     * 分配一个保存 op 运算结果的新变量
+     */
+    IR.Operand create(String op) {
+        String name = prefix + (next++);
+        return IR.Operand.var(name, new Semantic.Symbol(name, resultType(op), 1, name));
+    }
+
+    /**
+     * 类型化操作码的结果类型（无类型操作码返回 null：结果类型未知，不能为它分配保存变量）
+     */
+    static Semantic.Type resultType(String op) {
+        switch (op) {
+            case "iadd": case "isub": case "imul": case "idiv": case "ineg": return Semantic.Type.INT;
+            case "dadd": case "dsub": case "dmul": case "ddiv": case "dneg": case "i2d": return Semantic.Type.DOUBLE;
+            case "concat": return Semantic.Type.STRING;
+            default: return null;
+        }
+    }
+
+    /**
+     * 已有的 prefix$n 之后的第一个编号
+     */
+    private static int firstFree(IR.Cfg cfg, String prefix) {
+        int max = 0;
+        for (IR.BasicBlock b : cfg.blocks()) {
+            for (IR.Quad q : b.quads()) {
+                if (q.dest.isVar() && q.dest.text.startsWith(prefix)) {
+                    try {
+                        max = Math.max(max, Integer.parseInt(q.dest.text.substring(prefix.length())));
+                    } catch (NumberFormatException ignored) {
+                        // 不是这里生成的名字
+                    }
+                }
+            }
+        }
+        return max + 1;
+    }
+}
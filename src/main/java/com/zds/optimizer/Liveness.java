@@ -0,0 +1,164 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 全局活跃变量分析 (Liveness)
+ * 包级私有类：在 IR.Cfg 上做后向数据流分析，活跃集合用 BitSet 表示，按名字编号索引；
+ * 各块的集合放在按块编号索引的数组里，块入口集合变化时只把它的前驱重新加入工作表。
+ *
+ * 只为"跨块名字"（在某个块中先使用、后定义的变量 / 临时变量，以及出口处可观察的变量）编号，只在块内活跃的名字不会出现在任何块的入口。
+ * 程序出口处可观察的变量（默认为全局变量，见 Optimizer.ExitObservable）在出口块的出口处活跃；其余变量出口处视为不活跃。
+ */
+class Liveness {
+    private final Map<IR.Operand, Integer> index = new HashMap<>();
+    private final Optimizer.ExitObservable observable;
+    private BitSet[] in;
+    private BitSet[] out;
+
+    private Liveness(Optimizer.ExitObservable observable) {
+        this.observable = observable;
+    }
+
+    /**
+     * 计算 cfg 中各块入口 / 出口的活跃名字（全局变量在出口处可观察）
+     */
+    static Liveness compute(IR.Cfg cfg) {
+        return compute(cfg, Optimizer.ExitObservable.GLOBALS);
+    }
+
+    /**
+     * 计算 cfg 中各块入口 / 出口的活跃名字
+     * @param observable 程序出口处可观察（活跃）的变量
+     */
+    static Liveness compute(IR.Cfg cfg, Optimizer.ExitObservable observable) {
+        Liveness live = new Liveness(observable);
+        live.solve(cfg);
+        return live;
+    }
+
+    /** 名字在块入口是否活跃 */
+    boolean liveIn(IR.BasicBlock b, IR.Operand name) {
+        return test(in[b.id()], name);
+    }
+
+    /** 名字在块出口是否活跃 */
+    boolean liveOut(IR.BasicBlock b, IR.Operand name) {
+        return test(out[b.id()], name);
+    }
+
+    /** 块出口活跃集合的副本（按 id 编号） */
+    BitSet liveOut(IR.BasicBlock b) {
+        return (BitSet) out[b.id()].clone();
+    }
+
+    /**
+     * 名字的编号：跨块名字的编号与活跃集合一致；只在块内活跃的名字按需分配新编号，它们不会出现在任何块的活跃集合中
+     */
+    int id(IR.Operand name) {
+        Integer i = index.get(name);
+        if (i != null) return i;
+        index.put(name, index.size());
+        return index.size() - 1;
+    }
+
+    private boolean test(BitSet set, IR.Operand name) {
+        Integer i = index.get(name);
+        return i != null && set.get(i);
+    }
+
+    private void solve(IR.Cfg cfg) {
+        List<IR.BasicBlock> blocks = cfg.blocks();
+        int n = cfg.blockIdBound();
+        in = new BitSet[n];
+        out = new BitSet[n];
+        BitSet[] use = new BitSet[n];
+        BitSet[] def = new BitSet[n];
+        // 第一遍：为跨块名字编号（块内先使用后定义，或出口处可观察）
+        for (IR.BasicBlock b : blocks) {
+            Set<IR.Operand> killed = new HashSet<>();
+            for (IR.Quad q : b.quads()) {
+                if (isName(q.left) && !killed.contains(q.left)) indexOf(q.left);
+                if (isName(q.right) && !killed.contains(q.right)) indexOf(q.right);
+                if (defines(q)) {
+                    if (observable.test(q.dest)) indexOf(q.dest); // 出口处被"读取"
+                    killed.add(q.dest);
+                }
+            }
+        }
+        BitSet exit = new BitSet();
+        for (Map.Entry<IR.Operand, Integer> e : index.entrySet()) {
+            if (observable.test(e.getKey())) exit.set(e.getValue());
+        }
+        // 第二遍：块的 use / def
+        for (IR.BasicBlock b : blocks) {
+            BitSet u = new BitSet(), d = new BitSet();
+            for (IR.Quad q : b.quads()) {
+                mark(u, d, q.left);
+                mark(u, d, q.right);
+                if (defines(q)) {
+                    Integer i = index.get(q.dest);
+                    if (i != null) d.set(i);
+                }
+            }
+            int id = b.id();
+            use[id] = u;
+            def[id] = d;
+            in[id] = (BitSet) u.clone();
+            out[id] = cfg.isExit(b) ? (BitSet) exit.clone() : new BitSet(); // 落出末尾的条件跳转块也是出口
+        }
+        // 工作表：初始按逆布局顺序，入口集合变化时前驱重新入表
+        Deque<IR.BasicBlock> work = new ArrayDeque<>();
+        boolean[] queued = new boolean[n];
+        for (int k = blocks.size() - 1; k >= 0; k--) {
+            work.add(blocks.get(k));
+            queued[blocks.get(k).id()] = true;
+        }
+        while (!work.isEmpty()) {
+            IR.BasicBlock b = work.poll();
+            int id = b.id();
+            queued[id] = false;
+            BitSet o = out[id];
+            for (IR.BasicBlock s : b.successors()) o.or(in[s.id()]);
+            BitSet live = (BitSet) o.clone();
+            live.andNot(def[id]);
+            live.or(use[id]);
+            if (!live.equals(in[id])) {
+                in[id] = live;
+                for (IR.BasicBlock p : b.predecessors()) {
+                    if (!queued[p.id()]) {
+                        queued[p.id()] = true;
+                        work.add(p);
+                    }
+                }
+            }
+        }
+    }
+
+    private void mark(BitSet use, BitSet def, IR.Operand o) {
+        if (!isName(o)) return;
+        Integer i = index.get(o);
+        if (i != null && !def.get(i)) use.set(i);
+    }
+
+    private void indexOf(IR.Operand o) {
+        index.putIfAbsent(o, index.size());
+    }
+
+    static boolean isName(IR.Operand o) {
+        return o.isTemp() || o.isVar();
+    }
+
+    static boolean defines(IR.Quad q) {
+        return !"label".equals(q.op) && !q.op.startsWith("j") && isName(q.dest);
+    }
+}
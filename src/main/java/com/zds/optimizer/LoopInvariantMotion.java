@@ -0,0 +1,131 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 循环不变量外提 (Loop-Invariant Code Motion)
+ * 包级私有类：在 IR.Cfg 的自然循环上，把操作数在循环内不会改变的纯运算提到循环前置块 (preheader) 中，只计算一次。
+ *
+ * 不变运算的结果存入新的保存变量 licm$n（见 HolderVariables），循环内原来的运算改为复制：
+ *   循环内 (imul, a, b, t3) -> 前置块 (imul, a, b, licm$1)，循环内 (:=, licm$1, _, t3)
+ * 保存变量只在前置块中赋值一次，提前计算不会改变任何用户变量，因此即使循环体一次都不执行（while 的条件一开始就不成立）也是安全的；
+ * 循环内的复制随后由块内值编号与死临时变量消除清理（目标是临时变量时整条删除）。
+ *
+ * 不变的判定：操作数是常量、在循环内没有定义的名字，或"循环内只定义一次、在循环头入口不活跃、且定义本身不变"的名字
+ * （循环内对它的每次使用都只能读到这一次定义，值等于外提后的保存变量 / 常量）。
+ * 只移动类型化的纯运算；整数除法只在除数是非零常量时移动（不能把除零提前到原本不执行它的路径上）。
+ *
+ * 循环由内向外处理：内层循环的前置块属于外层循环，内层外提出的计算若对外层也不变，会继续移到外层的前置块。
+ */
+class LoopInvariantMotion {
+    private final IR.Cfg cfg;
+    private final HolderVariables holderVars;
+    private final Set<IR.Operand> holders = new HashSet<>();                       // 本趟分配的保存变量
+    private final Map<IR.Loop, Set<IR.BasicBlock>> inner = new HashMap<>();       // 外层循环 -> 内层循环新建的前置块
+    private final Map<IR.BasicBlock, Integer> position = new HashMap<>();        // 处理顺序：布局位置
+    private Liveness live;
+
+    private LoopInvariantMotion(IR.Cfg cfg) {
+        this.cfg = cfg;
+        this.holderVars = new HolderVariables(cfg, "licm$");
+    }
+
+    /**
+     * 对所有循环做不变量外提
+     * @return 是否有计算被外提
+     */
+    static boolean run(IR.Cfg cfg) {
+        return new LoopInvariantMotion(cfg).transform();
+    }
+
+    private boolean transform() {
+        List<IR.Loop> loops = new ArrayList<>(cfg.loops());
+        if (loops.isEmpty()) return false;
+        live = Liveness.compute(cfg);
+        List<IR.BasicBlock> blocks = cfg.blocks();
+        for (int i = 0; i < blocks.size(); i++) position.put(blocks.get(i), 2 * i);
+        boolean changed = false;
+        for (int i = loops.size() - 1; i >= 0; i--) changed |= hoist(loops.get(i)); // 外层在前，倒序即由内向外
+        return changed;
+    }
+
+    private boolean hoist(IR.Loop loop) {
+        Set<IR.BasicBlock> body = new LinkedHashSet<>(loop.blocks());
+        body.addAll(inner.getOrDefault(loop, Set.of()));
+        List<IR.BasicBlock> order = new ArrayList<>(body);
+        order.sort((x, y) -> Integer.compare(position.get(x), position.get(y)));
+
+        Map<IR.Operand, Integer> defs = new HashMap<>(); // 名字在循环内的定义次数
+        for (IR.BasicBlock b : order) {
+            for (IR.Quad q : b.quads()) {
+                if (Liveness.defines(q)) defs.merge(q.dest, 1, Integer::sum);
+            }
+        }
+
+        Map<IR.Operand, IR.Operand> value = new HashMap<>(); // 名字 -> 它在循环内的不变值（保存变量或常量）
+        List<IR.Quad> hoisted = new ArrayList<>();
+        for (IR.BasicBlock b : order) {
+            List<IR.Quad> quads = b.quads();
+            for (int i = 0; i < quads.size(); i++) {
+                IR.Quad q = quads.get(i);
+                if (!Liveness.defines(q)) continue;
+                IR.Operand left = invariant(q.left, defs, value);
+                IR.Operand right = q.right == IR.Operand.NONE ? q.right : invariant(q.right, defs, value);
+                if (left == null || right == null) continue;
+                boolean single = defs.get(q.dest) == 1 && !live.liveIn(loop.header(), q.dest);
+                if (":=".equals(q.op)) {
+                    if (single) value.put(q.dest, left); // 复制本身不外提，只记录值供后面的运算使用
+                    continue;
+                }
+                if (holders.contains(q.dest)) { // 内层外提的计算：整条移走
+                    hoisted.add(new IR.Quad(q.op, left, right, q.dest));
+                    quads.remove(i--);
+                    value.put(q.dest, q.dest);
+                    continue;
+                }
+                if (!movable(q)) continue;
+                IR.Operand h = holderVars.create(q.op);
+                holders.add(h);
+                hoisted.add(new IR.Quad(q.op, left, right, h));
+                quads.set(i, new IR.Quad(":=", h, IR.Operand.NONE, q.dest));
+                if (single) value.put(q.dest, h);
+            }
+        }
+        if (hoisted.isEmpty()) return false;
+
+        IR.BasicBlock pre = cfg.preheader(loop); // 只有需要外提时才建立前置块
+        position.putIfAbsent(pre, position.get(loop.header()) - 1);
+        int at = pre.terminator() == null ? pre.quads().size() : pre.quads().size() - 1;
+        pre.quads().addAll(at, hoisted);
+        IR.Loop parent = loop.parent();
+        if (parent != null) {
+            Set<IR.BasicBlock> outer = inner.computeIfAbsent(parent, k -> new LinkedHashSet<>());
+            outer.addAll(inner.getOrDefault(loop, Set.of()));
+            if (!parent.contains(pre)) outer.add(pre);
+        }
+        return true;
+    }
+
+    /**
+     * 操作数在循环内的不变值：常量、循环内没有定义的名字原样返回；已知不变值的名字返回该值；否则返回 null
+     */
+    private static IR.Operand invariant(IR.Operand o, Map<IR.Operand, Integer> defs, Map<IR.Operand, IR.Operand> value) {
+        if (o.isConst()) return o;
+        if (!Liveness.isName(o)) return null;
+        if (!defs.containsKey(o)) return o;
+        return value.get(o);
+    }
+
+    private static boolean movable(IR.Quad q) {
+        if (!ValueNumbering.isPure(q.op) || HolderVariables.resultType(q.op) == null) return false;
+        return !"idiv".equals(q.op) || q.right instanceof IR.Operand.IntConst && ((IR.Operand.IntConst) q.right).value != 0;
+    }
+}
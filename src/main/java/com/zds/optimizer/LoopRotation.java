@@ -0,0 +1,126 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 循环旋转 (Loop Rotation)
+ * 包级私有类：把先判断的循环改为先执行、在末尾判断的形式。Generator 生成的 while / for 在每次迭代中要执行
+ * 循环头的条件跳转与循环体末尾的 (j, _, _, 循环头) 两次跳转：
+ *   Lh: (j>=, i, n, Lexit)  body ...  (j, _, _, Lh)  Lexit:
+ * 旋转后原循环头只在进入前判断一次（守卫），循环体末尾复制一份条件并取反，直接跳回循环体开头：
+ *   Lh: (j>=, i, n, Lexit)  Lb: body ...  (j<, i, n, Lb)  Lexit:
+ * 每次迭代只执行一条条件跳转。
+ *
+ * 条件：循环只有一条回边，回边块以无条件跳转结尾且在布局上紧挨循环出口，循环头不超过 MAX_HEADER 条四元式，
+ * 条件可以取反（浮点有序比较遇到 NaN 时不能取反，见 CfgSimplification.invertible）。
+ * 循环头中计算条件的四元式一并复制到末尾，副本中的临时变量换成新编号（TempRenamer）。
+ * 守卫的两侧在进入循环时都是已知常量（如 for 的 i = 0 与常量界）时直接求值，循环至少执行一次的守卫被删除。
+ */
+class LoopRotation {
+    /** 循环头最多复制的四元式数（不含条件跳转） */
+    static final int MAX_HEADER = 8;
+
+    private final IR.Cfg cfg;
+    private final TempRenamer temps;
+    private final Set<IR.BasicBlock> stale = new HashSet<>(); // 只改了四元式、边还没重建的块
+    private final int[] position;                              // 块编号 -> 布局位置（旋转不插入块，位置不变）
+
+    private LoopRotation(IR.Cfg cfg) {
+        this.cfg = cfg;
+        this.temps = new TempRenamer(cfg);
+        List<IR.BasicBlock> blocks = cfg.blocks();
+        this.position = new int[cfg.blockIdBound()];
+        for (int i = 0; i < blocks.size(); i++) position[blocks.get(i).id()] = i;
+    }
+
+    /**
+     * 旋转所有符合条件的循环
+     * @return 是否有循环被旋转
+     */
+    static boolean run(IR.Cfg cfg) {
+        if (cfg.loops().isEmpty()) return false;
+        LoopRotation r = new LoopRotation(cfg);
+        boolean changed = false;
+        for (IR.Loop loop : new ArrayList<>(cfg.loops())) changed |= r.rotate(loop);
+        if (changed) cfg.rebuildEdges();
+        return changed;
+    }
+
+    private boolean rotate(IR.Loop loop) {
+        IR.BasicBlock header = loop.header();
+        if (loop.latches().size() != 1) return false;
+        IR.BasicBlock latch = loop.latches().get(0);
+        IR.Quad test = header.terminator();
+        IR.Quad back = latch.terminator();
+        if (latch == header || test == null || "j".equals(test.op) || back == null || !"j".equals(back.op)) return false;
+        IR.BasicBlock exit = cfg.targetOf(test);
+        if (exit == null || loop.contains(exit) || header.quads().size() - 1 > MAX_HEADER) return false;
+        List<IR.BasicBlock> blocks = cfg.blocks();
+        int h = position[header.id()];
+        int l = position[latch.id()];
+        if (h + 1 >= blocks.size() || l + 1 >= blocks.size() || blocks.get(l + 1) != exit) return false;
+        IR.BasicBlock body = blocks.get(h + 1); // 循环头条件不成立时顺序进入的块
+        String inverse = CfgSimplification.inverse(test.op);
+        if (!loop.contains(body) || inverse == null || !CfgSimplification.invertible(test, header)) return false;
+
+        // 回边块末尾：复制的条件计算 + 取反的条件跳转回循环体开头，不成立时顺序落入出口
+        List<IR.Quad> bottom = temps.copy(header.quads());
+        IR.Quad cond = bottom.remove(bottom.size() - 1);
+        bottom.add(new IR.Quad(inverse, cond.left, cond.right, cfg.labelOf(body)));
+        latch.quads().remove(latch.quads().size() - 1);
+        latch.quads().addAll(bottom);
+        boolean fresh = !stale.contains(header); // 循环头的前驱没有被之前的旋转改变
+        stale.add(header);
+        stale.add(latch);
+        stale.add(body);
+        stale.add(exit);
+
+        if (fresh) foldGuard(header, latch, test);
+        return true;
+    }
+
+    /**
+     * 守卫只有一条比较、两侧在进入时都是常量时直接求值：成立（跳过循环）改为无条件跳转，不成立删除守卫
+     */
+    private void foldGuard(IR.BasicBlock header, IR.BasicBlock latch, IR.Quad test) {
+        if (header.quads().size() != 1) return;
+        IR.BasicBlock from = null;
+        for (IR.BasicBlock p : header.predecessors()) {
+            if (p == latch) continue;
+            if (from != null) return;
+            from = p;
+        }
+        if (from == null) return;
+        IR.Operand a = valueAtEnd(from, test.left);
+        IR.Operand b = valueAtEnd(from, test.right);
+        if (a == null || b == null || !a.isNumeric() || !b.isNumeric()) return;
+        Boolean skip = CfgSimplification.compare(test.op, a, b);
+        if (skip == null) return;
+        header.quads().clear();
+        if (skip) header.quads().add(new IR.Quad("j", IR.Operand.NONE, IR.Operand.NONE, test.dest));
+    }
+
+    /**
+     * 块 b 结束时操作数的常量值：常量原样返回；变量沿唯一前驱回溯找最近的常量赋值（遇到刚改过的块即停止）
+     */
+    private IR.Operand valueAtEnd(IR.BasicBlock b, IR.Operand o) {
+        if (o.isConst()) return o;
+        if (!o.isVar()) return null;
+        for (int hops = 0; b != null && hops < 8; hops++) {
+            List<IR.Quad> quads = b.quads();
+            for (int i = quads.size() - 1; i >= 0; i--) {
+                IR.Quad q = quads.get(i);
+                if (!Liveness.defines(q) || !q.dest.equals(o)) continue;
+                return ":=".equals(q.op) && q.left.isConst() ? q.left : null;
+            }
+            if (stale.contains(b)) return null; // 前驱可能已经变化
+            b = b.predecessors().size() == 1 ? b.predecessors().get(0) : null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,180 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 循环展开 (Loop Unrolling)
+ * 包级私有类：对迭代次数在编译期可知的简单计数循环复制循环体，去掉每次迭代的比较与回跳。
+ *
+ * 简单计数循环：循环头只有一条比较归纳变量与常量界的条件跳转（跳出循环），循环体是以 (j, _, _, 循环头) 结尾的单个块，
+ * 归纳变量在循环体中只有一个 i := i ± c 定义，进入循环时的初值是常量（见 StrengthReduction.initialValue）。
+ * 此时迭代次数 N 可以直接算出：
+ * - N 份循环体总共不超过 MAX_UNROLLED 条四元式时完全展开：比较删除，循环体复制 N 份后跳到循环出口
+ * - 否则按展开因子 F 部分展开：循环体内放 F 份，余下的 N mod F 次迭代复制到前置块中先执行，
+ *   之后剩余次数是 F 的倍数，原来的比较每 F 次迭代检查一次仍然准确
+ * 复制时循环体定义的临时变量换成新编号，保持"临时变量在块内只定义一次"；用户变量照原样复制。
+ * 展开后相邻的副本在同一个块中，常量传播与块内折叠可以把归纳变量的值继续传下去。
+ */
+class LoopUnrolling {
+    /** 默认的部分展开因子 */
+    static final int DEFAULT_FACTOR = 4;
+    /** 展开后循环体（或完全展开的结果）最多的四元式数 */
+    static final int MAX_UNROLLED = 64;
+
+    private final IR.Cfg cfg;
+    private final int factor;
+    private TempRenamer temps;
+    private final Set<IR.BasicBlock> stale = new HashSet<>(); // 完全展开只改四元式，这些块的边在最后一次重建
+
+    private LoopUnrolling(IR.Cfg cfg, int factor) {
+        this.cfg = cfg;
+        this.factor = factor;
+    }
+
+    /**
+     * 展开所有简单计数循环
+     * @param factor 部分展开因子（小于 2 时只做完全展开）
+     * @return 是否有循环被展开
+     */
+    static boolean run(IR.Cfg cfg, int factor) {
+        return new LoopUnrolling(cfg, factor).transform();
+    }
+
+    private boolean transform() {
+        List<IR.Loop> loops = new ArrayList<>(cfg.loops());
+        if (loops.isEmpty()) return false;
+        temps = new TempRenamer(cfg);
+        boolean changed = false;
+        for (IR.Loop loop : loops) changed |= unroll(loop); // 只处理单块循环体，循环之间互不嵌套
+        if (!stale.isEmpty()) cfg.rebuildEdges();
+        return changed;
+    }
+
+    private boolean unroll(IR.Loop loop) {
+        IR.BasicBlock header = loop.header();
+        if (loop.blocks().size() != 2 || header.quads().size() != 1) return false;
+        IR.BasicBlock body = null;
+        for (IR.BasicBlock b : loop.blocks()) {
+            if (b != header) body = b;
+        }
+        IR.Quad test = header.terminator();
+        IR.Quad back = body.terminator();
+        if (test == null || "j".equals(test.op) || back == null || !"j".equals(back.op) || cfg.targetOf(back) != header) return false;
+        IR.BasicBlock exit = cfg.targetOf(test);
+        if (exit == null || loop.contains(exit)) return false; // 循环体是循环头的顺序后继
+
+        // 比较统一成 i op bound，取"继续循环"的条件
+        IR.Operand iv;
+        IR.Operand bound;
+        String stay;
+        if (test.right instanceof IR.Operand.IntConst) {
+            iv = test.left;
+            bound = test.right;
+            stay = CfgSimplification.inverse(test.op);
+        } else if (test.left instanceof IR.Operand.IntConst) {
+            iv = test.right;
+            bound = test.left;
+            stay = CfgSimplification.inverse(StrengthReduction.swap(test.op));
+        } else {
+            return false;
+        }
+        if (!iv.isVar() || stay == null) return false;
+
+        List<IR.Quad> code = body.quads().subList(0, body.quads().size() - 1);
+        Integer step = null;
+        for (IR.Quad q : code) {
+            if (!Liveness.defines(q) || !q.dest.equals(iv)) continue;
+            if (step != null) return false;
+            step = StrengthReduction.step(q);
+            if (step == null) return false;
+        }
+        if (step == null) return false;
+
+        for (IR.BasicBlock p : header.predecessors()) {
+            if (!stale.contains(p)) continue;
+            cfg.rebuildEdges(); // 紧接在刚展开的循环之后：前驱需要准确
+            stale.clear();
+            break;
+        }
+        IR.BasicBlock outside = null;
+        for (IR.BasicBlock p : header.predecessors()) {
+            if (p == body) continue;
+            if (outside != null) return false;
+            outside = p;
+        }
+        Long start = outside == null ? null : StrengthReduction.initialValue(outside, iv);
+        if (start == null) return false;
+        Long trips = tripCount(start, ((IR.Operand.IntConst) bound).value, step, stay);
+        if (trips == null) return false;
+
+        int n = trips.intValue();
+        List<IR.Quad> original = new ArrayList<>(code);
+        if ((long) n * original.size() <= MAX_UNROLLED) {
+            List<IR.Quad> unrolled = new ArrayList<>();
+            for (int i = 0; i < n; i++) unrolled.addAll(copy(original, i));
+            unrolled.add(new IR.Quad("j", IR.Operand.NONE, IR.Operand.NONE, cfg.labelOf(exit)));
+            header.quads().clear();
+            if (n == 0) header.quads().add(new IR.Quad("j", IR.Operand.NONE, IR.Operand.NONE, cfg.labelOf(exit)));
+            body.quads().clear();
+            body.quads().addAll(unrolled);
+            stale.add(header);
+            stale.add(body);
+            return true;
+        }
+        if (factor < 2 || n < factor || (long) factor * original.size() > MAX_UNROLLED) return false;
+
+        IR.BasicBlock pre = cfg.preheader(loop);
+        List<IR.Quad> remainder = new ArrayList<>();
+        for (int i = 0; i < n % factor; i++) remainder.addAll(copy(original, i + 1));
+        int at = pre.terminator() == null ? pre.quads().size() : pre.quads().size() - 1;
+        pre.quads().addAll(at, remainder);
+        List<IR.Quad> unrolled = new ArrayList<>();
+        for (int i = 0; i < factor; i++) unrolled.addAll(copy(original, i));
+        unrolled.add(back);
+        body.quads().clear();
+        body.quads().addAll(unrolled);
+        return true;
+    }
+
+    /**
+     * 初值 start 的归纳变量以步长 step 前进、在 stay 条件下继续循环时的迭代次数；
+     * 条件永远成立、方向与步长不符或归纳变量会溢出时返回 null
+     */
+    static Long tripCount(long start, long bound, long step, String stay) {
+        long trips;
+        switch (stay) {
+            case "j<":
+                if (step <= 0) return null;
+                trips = start < bound ? (bound - start + step - 1) / step : 0;
+                break;
+            case "j<=":
+                if (step <= 0) return null;
+                trips = start <= bound ? (bound - start) / step + 1 : 0;
+                break;
+            case "j>":
+                if (step >= 0) return null;
+                trips = start > bound ? (start - bound - step - 1) / -step : 0;
+                break;
+            case "j>=":
+                if (step >= 0) return null;
+                trips = start >= bound ? (start - bound) / -step + 1 : 0;
+                break;
+            default:
+                return null;
+        }
+        long last = start + trips * step;
+        return last < Integer.MIN_VALUE || last > Integer.MAX_VALUE ? null : trips;
+    }
+
+    /**
+     * 循环体的一份副本：第 0 份原样复用，其余副本中循环体定义的临时变量换成新编号
+     */
+    private List<IR.Quad> copy(List<IR.Quad> code, int index) {
+        return index == 0 ? code : temps.copy(code);
+    }
+}
@@ -3,6 +3,7 @@ package com.zds.optimizer;
 import com.zds.IR.IR;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -14,89 +15,76 @@ import java.util.Set;
 class OptimizationPass {
 
     /**
-     * 执行单遍优化
-     * 遍历四元式列表，将基本块（basic block）分组并进行优化
-     * 基本块以标签开始，以跳转指令结束
+     * 优化单个基本块直到不再变化，原地修改（供 BlockParallelism、BlockCache 与流式的 BlockSink 调用）
+     * 每一轮依次做值编号、简化、消除死临时变量；没有变化的四元式对象原样保留，不做复制。
+     * 基本块划分沿用 IR.Cfg（标签开始新块，跳转指令结束当前块）。只读写 block 本身，不同的块可以在不同线程上同时优化。
+     * @param block 基本块内的四元式
+     * @return 是否发生变化
      */
-    static List<IR.Quad> run(List<IR.Quad> quads) {
-        List<IR.Quad> output = new ArrayList<>(); // 存储优化后的四元式
-        List<IR.Quad> block = new ArrayList<>(); // 存储当前基本块的四元式
-        
-        for (IR.Quad quad : quads) {
-            if (isLabel(quad)) {
-                // 遇到标签时，先处理当前块，然后将标签添加到输出
-                flushBlock(output, block);
-                output.add(copyQuad(quad));
-                continue;
-            }
-            // 将当前四元式添加到当前基本块
-            block.add(copyQuad(quad));
-            if (isJump(quad)) {
-                // 遇到跳转指令时，处理当前块
-                flushBlock(output, block);
-            }
-        }
-        // 处理最后一个基本块
-        flushBlock(output, block);
-        return output;
-    }
-
-    /**
-     * 处理当前基本块，执行简化和死代码消除优化
-     */
-    private static void flushBlock(List<IR.Quad> output, List<IR.Quad> block) {
-        if (block.isEmpty()) {
-            return;
+    static boolean optimizeInPlace(List<IR.Quad> block) {
+        boolean any = false;
+        boolean changed = true;
+        while (changed && !block.isEmpty()) {
+            changed = ValueNumbering.run(block);
+            changed |= simplify(block);
+            changed |= eliminateDeadTemps(block);
+            any |= changed;
         }
-        // 先执行简化优化
-        List<IR.Quad> simplified = simplify(block);
-        // 再执行死代码消除
-        List<IR.Quad> dce = eliminateDeadTemps(simplified);
-        output.addAll(dce);
-        block.clear();
+        return any;
     }
 
     /**
-     * 对基本块中的每个四元式进行简化
+     * 对基本块中的每个四元式进行简化（原地替换发生变化的四元式）
+     * @return 是否有四元式被替换
      */
-    private static List<IR.Quad> simplify(List<IR.Quad> quads) {
-        List<IR.Quad> out = new ArrayList<>();
-        for (IR.Quad q : quads) {
+    private static boolean simplify(List<IR.Quad> quads) {
+        boolean changed = false;
+        for (int i = 0; i < quads.size(); i++) {
+            IR.Quad q = quads.get(i);
             IR.Quad simplified = simplifyQuad(q);
-            out.add(simplified);
+            if (simplified != q) {
+                quads.set(i, simplified);
+                changed = true;
+            }
         }
-        return out;
+        return changed;
     }
 
     /**
-     * 简化单个四元式，包括常量折叠和代数简化
+     * 简化单个四元式，包括常量折叠和代数简化（ConstantPropagation 也用它求值）
+     * @return 简化后的四元式；无法简化时返回 q 本身
      */
-    private static IR.Quad simplifyQuad(IR.Quad q) {
+    static IR.Quad simplifyQuad(IR.Quad q) {
         if (q == null) return q;
         String op = q.op;
         if (isBinaryOp(op)) {
-            String a = q.arg1;
-            String b = q.arg2;
+            IR.Operand a = q.left;
+            IR.Operand b = q.right;
             // 常量折叠：如果两个操作数都是数字字面量，直接计算结果
-            if (isNumericLiteral(a) && isNumericLiteral(b)) {
-                String folded = foldNumeric(op, a, b);
+            if (a.isNumeric() && b.isNumeric()) {
+                IR.Operand folded = foldNumeric(op, a, b);
                 if (folded != null) {
-                    return new IR.Quad(":=", folded, "_", q.result);
+                    return new IR.Quad(":=", folded, IR.Operand.NONE, q.dest);
                 }
             }
             // 代数简化：如 x + 0 = x, x * 1 = x 等
-            IR.Quad algebra = simplifyAlgebra(op, a, b, q.result);
+            IR.Quad algebra = simplifyAlgebra(op, a, b, q.dest);
             if (algebra != null) {
                 return algebra;
             }
             return q;
         }
-        // 处理负数操作
-        if ("neg".equals(op)) {
-            if (isNumericLiteral(q.arg1)) {
-                String value = foldNumeric("neg", q.arg1, null);
+        // 两个字符串常量的拼接
+        if ("concat".equals(op) && q.left instanceof IR.Operand.StringConst && q.right instanceof IR.Operand.StringConst) {
+            String joined = ((IR.Operand.StringConst) q.left).value + ((IR.Operand.StringConst) q.right).value;
+            return new IR.Quad(":=", IR.Operand.ofString(joined), IR.Operand.NONE, q.dest);
+        }
+        // 处理负数操作与 int -> double 转换
+        if ("neg".equals(op) || "ineg".equals(op) || "dneg".equals(op) || "i2d".equals(op)) {
+            if (q.left.isNumeric()) {
+                IR.Operand value = foldNumeric(op, q.left, null);
                 if (value != null) {
-                    return new IR.Quad(":=", value, "_", q.result);
+                    return new IR.Quad(":=", value, IR.Operand.NONE, q.dest);
                 }
             }
             return q;
@@ -107,31 +95,41 @@ class OptimizationPass {
     /**
      * 执行代数简化，如加零、乘一等
      */
-    private static IR.Quad simplifyAlgebra(String op, String a, String b, String result) {
+    private static IR.Quad simplifyAlgebra(String typedOp, IR.Operand a, IR.Operand b, IR.Operand result) {
+        String op = baseOp(typedOp);
         if ("+".equals(op)) {
-            if (isZero(b)) return new IR.Quad(":=", a, "_", result); // x + 0 = x
-            if (isZero(a)) return new IR.Quad(":=", b, "_", result); // 0 + x = x
+            if (isZero(b)) return copyOf(a, result); // x + 0 = x
+            if (isZero(a)) return copyOf(b, result); // 0 + x = x
         }
         if ("-".equals(op)) {
-            if (isZero(b)) return new IR.Quad(":=", a, "_", result); // x - 0 = x
+            if (isZero(b)) return copyOf(a, result); // x - 0 = x
         }
         if ("*".equals(op)) {
-            if (isOne(a)) return new IR.Quad(":=", b, "_", result); // x * 1 = x
-            if (isOne(b)) return new IR.Quad(":=", a, "_", result); // x * 1 = x
-            if (isZero(a) || isZero(b)) return new IR.Quad(":=", "0", "_", result); // x * 0 = 0
+            if (isOne(a)) return copyOf(b, result); // x * 1 = x
+            if (isOne(b)) return copyOf(a, result); // x * 1 = x
+            // x * 0 = 0（浮点乘法不化简：NaN * 0 与 Infinity * 0 都不是 0）
+            if (!typedOp.startsWith("d") && (isZero(a) || isZero(b))) return copyOf(IR.Operand.ofInt(0), result);
         }
         if ("/".equals(op)) {
-            if (isOne(b)) return new IR.Quad(":=", a, "_", result); // x / 1 = x
+            if (isOne(b)) return copyOf(a, result); // x / 1 = x
         }
         return null;
     }
 
     /**
-     * 消除死临时变量 - 使用反向遍历找出未被使用的临时变量并删除其定义
+     * 构造复制四元式 (:=, src, _, dest)
      */
-    private static List<IR.Quad> eliminateDeadTemps(List<IR.Quad> quads) {
+    private static IR.Quad copyOf(IR.Operand src, IR.Operand dest) {
+        return new IR.Quad(":=", src, IR.Operand.NONE, dest);
+    }
+
+    /**
+     * 消除死临时变量 - 使用反向遍历找出未被使用的临时变量并删除其定义（原地修改）
+     * @return 是否删除了四元式
+     */
+    private static boolean eliminateDeadTemps(List<IR.Quad> quads) {
         List<IR.Quad> out = new ArrayList<>();
-        Set<String> used = new HashSet<>(); // 存储被使用的临时变量
+        Set<IR.Operand> used = new HashSet<>(); // 存储被使用的临时变量
 
         // 从后往前遍历，找出被使用的临时变量
         for (int i = quads.size() - 1; i >= 0; i--) {
@@ -139,34 +137,40 @@ class OptimizationPass {
             if (q == null) continue;
             if (isLabel(q) || isJump(q)) {
                 // 标签和跳转指令的参数总是被使用的
-                markUsed(used, q.arg1);
-                markUsed(used, q.arg2);
-                out.add(0, q);
+                markUsed(used, q.left);
+                markUsed(used, q.right);
+                out.add(q);
                 continue;
             }
-            String def = q.result;
-            boolean definesTemp = isTemp(def);
+            IR.Operand def = q.dest;
+            boolean definesTemp = def.isTemp();
             // 如果定义的是临时变量且未被使用，则跳过（即删除该四元式）
             if (definesTemp && !used.contains(def)) {
                 continue;
             }
             // 标记操作数为已使用
-            markUsed(used, q.arg1);
-            markUsed(used, q.arg2);
+            markUsed(used, q.left);
+            markUsed(used, q.right);
             if (definesTemp) {
                 // 如果是临时变量定义，使用后从集合中移除
                 used.remove(def);
             }
-            out.add(0, q);
+            out.add(q);
+        }
+        if (out.size() == quads.size()) {
+            return false; // 没有死定义，保持原列表不动
         }
-        return out;
+        Collections.reverse(out);
+        quads.clear();
+        quads.addAll(out);
+        return true;
     }
 
     /**
      * 如果值是临时变量，则标记为已使用
      */
-    private static void markUsed(Set<String> used, String value) {
-        if (isTemp(value)) {
+    private static void markUsed(Set<IR.Operand> used, IR.Operand value) {
+        if (value.isTemp()) {
             used.add(value);
         }
     }
@@ -174,10 +178,24 @@ class OptimizationPass {
     // 辅助方法
 
     /**
-     * 判断操作符是否为二元运算符
+     * 判断操作符是否为二元算术运算符（无类型的 + - * / 与类型化的 iadd / dadd ...，不含 concat）
      */
     private static boolean isBinaryOp(String op) {
-        return "+".equals(op) || "-".equals(op) || "*".equals(op) || "/".equals(op);
+        return baseOp(op) != null;
+    }
+
+    /**
+     * 算术操作码对应的运算符：iadd / dadd / + 都是 "+"；非算术操作码返回 null
+     */
+    private static String baseOp(String op) {
+        if (op == null) return null;
+        switch (op) {
+            case "+": case "iadd": case "dadd": return "+";
+            case "-": case "isub": case "dsub": return "-";
+            case "*": case "imul": case "dmul": return "*";
+            case "/": case "idiv": case "ddiv": return "/";
+            default: return null;
+        }
     }
 
     /**
@@ -196,81 +214,90 @@ class OptimizationPass {
         return q.op.startsWith("j") && q.op.length() > 1;
     }
 
-    /**
-     * 判断值是否为临时变量（以t开头）
-     */
-    private static boolean isTemp(String value) {
-        return value != null && value.startsWith("t");
-    }
-
     /**
      * 判断值是否为零
      */
-    private static boolean isZero(String value) {
-        return "0".equals(value) || "0.0".equals(value);
+    private static boolean isZero(IR.Operand value) {
+        return value.isNumeric() && value.numericValue() == 0.0;
     }
 
     /**
      * 判断值是否为一
      */
-    private static boolean isOne(String value) {
-        return "1".equals(value) || "1.0".equals(value);
-    }
-
-    /**
-     * 判断值是否为数字字面量
-     */
-    private static boolean isNumericLiteral(String value) {
-        if (value == null || value.isBlank()) return false;
-        if (value.startsWith("\"") && value.endsWith("\"")) return false; // 排除字符串
-        try {
-            Double.parseDouble(value);
-            return true;
-        } catch (NumberFormatException ex) {
-            return false;
-        }
+    private static boolean isOne(IR.Operand value) {
+        return value.isNumeric() && value.numericValue() == 1.0;
     }
 
     /**
      * 执行数值计算，实现常量折叠
+     * 类型化操作码按各自类型折叠：int 运算按 32 位整数（截断除法、溢出回绕），double 运算结果保持为浮点常量；
+     * 无类型操作码沿用按 double 计算的旧规则。
      */
-    private static String foldNumeric(String op, String a, String b) {
-        try {
-            double left = Double.parseDouble(a);
-            double right = b == null ? 0.0 : Double.parseDouble(b);
-            double result;
-            switch (op) {
-                case "+" -> result = left + right;
-                case "-" -> result = left - right;
-                case "*" -> result = left * right;
-                case "/" -> {
-                    if (right == 0.0) return null; // 避免除零错误
-                    result = left / right;
-                }
-                case "neg" -> result = -left;
-                default -> { return null; }
+    private static IR.Operand foldNumeric(String op, IR.Operand a, IR.Operand b) {
+        if (op.startsWith("i") && !"i2d".equals(op)) {
+            return foldInt(op, a, b);
+        }
+        if (op.startsWith("d") || "i2d".equals(op)) {
+            return foldDouble(op, a, b);
+        }
+        double left = a.numericValue();
+        double right = b == null ? 0.0 : b.numericValue();
+        double result;
+        switch (op) {
+            case "+" -> result = left + right;
+            case "-" -> result = left - right;
+            case "*" -> result = left * right;
+            case "/" -> {
+                if (right == 0.0) return null; // 避免除零错误
+                result = left / right;
             }
-            return formatNumber(result);
-        } catch (NumberFormatException ex) {
-            return null;
+            case "neg" -> result = -left;
+            default -> { return null; }
         }
+        return IR.Operand.ofNumber(result);
     }
 
     /**
-     * 格式化数字，整数以整数形式输出，小数以小数形式输出
+     * 折叠 int 运算（两侧必须都是整数常量）
      */
-    private static String formatNumber(double value) {
-        if (Math.rint(value) == value) {
-            return Long.toString((long) value);
+    private static IR.Operand foldInt(String op, IR.Operand a, IR.Operand b) {
+        if (!(a instanceof IR.Operand.IntConst) || (b != null && !(b instanceof IR.Operand.IntConst))) return null;
+        int left = (int) ((IR.Operand.IntConst) a).value;
+        int right = b == null ? 0 : (int) ((IR.Operand.IntConst) b).value;
+        int result;
+        switch (op) {
+            case "iadd" -> result = left + right;
+            case "isub" -> result = left - right;
+            case "imul" -> result = left * right;
+            case "idiv" -> {
+                if (right == 0) return null; // 运行时错误留给运行时
+                result = left / right;
+            }
+            case "ineg" -> result = -left;
+            default -> { return null; }
         }
-        return Double.toString(value);
+        return IR.Operand.ofInt(result);
     }
 
     /**
-     * 复制四元式
+     * 折叠 double 运算与 i2d 转换，结果总是浮点常量
      */
-    static IR.Quad copyQuad(IR.Quad q) {
-        if (q == null) return null;
-        return new IR.Quad(q.op, q.arg1, q.arg2, q.result);
+    private static IR.Operand foldDouble(String op, IR.Operand a, IR.Operand b) {
+        double left = a.numericValue();
+        double right = b == null ? 0.0 : b.numericValue();
+        double result;
+        switch (op) {
+            case "dadd" -> result = left + right;
+            case "dsub" -> result = left - right;
+            case "dmul" -> result = left * right;
+            case "ddiv" -> {
+                if (right == 0.0) return null; // 避免除零错误
+                result = left / right;
+            }
+            case "dneg" -> result = -left;
+            case "i2d" -> result = left;
+            default -> { return null; }
+        }
+        return IR.Operand.ofDouble(result);
     }
 }
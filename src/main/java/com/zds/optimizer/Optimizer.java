@@ -3,105 +3,396 @@ package com.zds.optimizer;
 import com.zds.IR.IR;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * 优化器 (Optimizer)
- * 门面类 (Facade)：对外提供统一的代码优化接口。
+ * 门面类 (Facade)：对外提供统一的代码优化接口，是本包唯一的公共类；
+ * 流水线 PassManager 及其结果 Result、统计 PassStats、出口处可观察的变量 ExitObservable 作为嵌套类型对外提供。
  *
  * 输入：四元式列表 (List<IR.Quad>)
  * 输出：优化后的四元式列表 (List<IR.Quad>)
  */
 public class Optimizer {
-    private static final int MAX_PASSES = 5;
+
+    /** 优化器版本：同一流水线的优化结果会因实现改动而不同时递增（预编译单元缓存以它区分） */
+    public static final int VERSION = 1;
 
     /**
-     * 优化四元式列表（使用默认最大遍数）
+     * 优化四元式列表（O3，见 PassManager.level）
+     * 先在 SSA 形式上做跨基本块的稀疏条件常量传播，再以基本块为单位做折叠与化简，每个块反复改写直到不再变化（不动点）；
+     * 随后折叠常量条件跳转并删除不可达块，展开迭代次数已知的小循环（有循环被展开时重新传播常量）；之后做复制传播，并再次清理被它改写的块；把循环旋转为末尾判断的形式；再做部分冗余消除（惰性代码移动），把跨块重复的计算合并到一处；
+     * 接着把循环内不变的计算外提到循环前置块，并把归纳变量的乘法削减为加法；再按全局活跃信息删除死定义（包括从未被读取的用户变量）；最后化简控制流，清理多余的跳转、空块与标签。
+     * 输入列表不会被修改；四元式本身不可变，未改写的四元式对象直接复用，不做深拷贝。
+     * 每次调用使用新的流水线（块缓存只在本次优化中有效）；多次编译之间复用缓存请持有同一个 PassManager。
      * @param input 原始四元式列表
      * @return 优化后的四元式列表
      */
     public static List<IR.Quad> optimize(List<IR.Quad> input) {
-        return optimize(input, MAX_PASSES);
+        return PassManager.level(3).run(input).quads();
     }
 
     /**
-     * 优化四元式列表
-     * 通过多次迭代应用优化，直到达到最大迭代次数或优化不再产生变化
-     * @param input 原始四元式列表
-     * @param maxPasses 最大优化迭代遍数
-     * @return 优化后的四元式列表
+     * 按指定的流水线优化，同时返回每个 pass 的统计
+     * @param passes 优化级别或自定义流水线（PassManager.level / PassManager.parse）
      */
-    public static List<IR.Quad> optimize(List<IR.Quad> input, int maxPasses) {
-        List<IR.Quad> current = copy(input); // 创建输入的副本，避免修改原始数据
-        for (int i = 0; i < maxPasses; i++) {
-            List<IR.Quad> optimized = OptimizationPass.run(current); // 执行一次优化遍
-            if (equalsQuads(current, optimized)) { // 如果优化后没有变化，则提前结束
-                return optimized;
-            }
-            current = optimized; // 更新当前四元式列表为优化后的版本
-        }
-        return current; // 返回最后一次优化的结果
+    public static Result optimize(List<IR.Quad> input, PassManager passes) {
+        return passes.run(input);
+    }
+
+    /**
+     * 创建按基本块优化的流式 sink
+     * 缓存当前基本块，遇到标签或跳转（块边界）时执行块内优化（常量折叠、代数化简、死临时变量消除）后交给下游。
+     * 只做块内优化；跨块的优化需要完整的四元式列表，请使用 optimize。同一个 sink 中相同的块共用一份优化结果（块缓存随 sink 回收）。
+     * @param downstream 下游 sink（如 CodeGen.sink）
+     * @return 可直接交给 IR.generate 的 sink
+     */
+    public static IR.QuadSink blockSink(IR.QuadSink downstream) {
+        return new BlockSink(downstream, new BlockCache(BlockCache.DEFAULT_CAPACITY));
     }
 
     // ==========================================
-    // Utils
+    // Pass Manager
     // ==========================================
 
     /**
-     * 深拷贝四元式列表
-     * @param input 待拷贝的四元式列表
-     * @return 拷贝后的四元式列表
+     * 优化流水线 (Pass Manager)
+     * 按名字组装优化 pass，在同一个 IR.Cfg 上依次执行，并记录每个 pass 的四元式变化与耗时。
+     *
+     * 流水线用字符串描述，pass 之间以逗号分隔；"a+b+c" 表示先运行 a，a 有变化时才运行 b、c（清理 pass 只在需要时运行）：
+     *   "cp,local,simplify-cfg,copy+local,dce"
+     * 也可以直接使用预定义的优化级别 O0 ~ O3（见 level）。可用的 pass 名见 passNames()。
+     * PassManager 的设置不可变，可以在多次编译之间（包括多个线程）共享。每个 parse / level 得到的流水线有自己的块缓存，
+     * 由它派生（with* 方法）的流水线共用这个缓存：持有同一个 PassManager 重复编译时，没有改动的块直接套用上次的结果；
+     * 缓存随 PassManager 一起回收，不会跨越不相关的编译保留旧的四元式。
      */
-    private static List<IR.Quad> copy(List<IR.Quad> input) {
-        List<IR.Quad> out = new ArrayList<>();
-        if (input != null) {
-            for (IR.Quad q : input) {
-                out.add(OptimizationPass.copyQuad(q)); // 使用优化过程中的拷贝方法
+    public static final class PassManager {
+        private static final Map<String, Function<PassManager, Pass>> REGISTRY = new LinkedHashMap<>();
+        // 顺序上的考虑：
+        // - 开头用 sccp：SSA 上只有可执行分支的值参与汇合；unroll 的副本在同一个块中，其后用较轻的 cp 即可
+        // - simplify-cfg 紧跟常量传播：条件变为常量的跳转先折叠，后面的分析不再看到不可达的分支
+        // - unroll 之后重新传播常量：副本在同一个块中，归纳变量的初值可以一路折叠下去
+        // - copy 放在块内化简之后：代数化简会产生新的复制（x + 0 -> x）
+        // - rotate 在 pre 之前：旋转后从守卫进入循环体，PRE 可以把循环内的计算放到守卫之后的边上
+        // - sr 在 licm 之后：不变的乘数与循环界已经是循环外的名字；在 unroll 之后：展开后的多个自增按总步长替换比较
+        // - pre / licm / sr 留下的 x := pre$n 等复制由 local 收尾
+        private static final String[] LEVELS = {
+                "",
+                "local,simplify-cfg,copy+local,dce,simplify-cfg",
+                "sccp,local,simplify-cfg+local,copy+local,rotate,pre+local,licm+local,dce,simplify-cfg",
+                "sccp,local,simplify-cfg+local,unroll+cp+local+simplify-cfg+local,copy+local,rotate,pre+local,licm+local,sr+local,dce,simplify-cfg",
+        };
+
+        static {
+            REGISTRY.put("cp", m -> ConstantPropagation::run);                                   // 全局常量传播
+            REGISTRY.put("sccp", m -> SparseConstantPropagation::run);                           // 稀疏条件常量传播（SSA 形式）
+            REGISTRY.put("local", m -> cfg -> BlockParallelism.run(cfg, m.parallelThreshold, m.blockCache)); // 块内改写
+            REGISTRY.put("simplify-cfg", m -> CfgSimplification::run);                           // 控制流化简
+            REGISTRY.put("copy", m -> CopyPropagation::run);                                     // 复制传播
+            REGISTRY.put("pre", m -> PartialRedundancy::run);                                    // 部分冗余消除
+            REGISTRY.put("licm", m -> LoopInvariantMotion::run);                                 // 循环不变量外提
+            REGISTRY.put("sr", m -> cfg -> StrengthReduction.run(cfg, m.observable));            // 强度削减
+            REGISTRY.put("unroll", m -> cfg -> LoopUnrolling.run(cfg, m.unrollFactor));          // 循环展开
+            REGISTRY.put("rotate", m -> LoopRotation::run);                                      // 循环旋转
+            REGISTRY.put("dce", m -> cfg -> DeadCodeElimination.run(cfg, m.observable));         // 全局死代码 / 死存储消除
+        }
+
+        private final List<List<String>> groups; // 每组第一个 pass 无条件运行，其余在它有变化时运行
+        private final int unrollFactor;
+        private final int parallelThreshold;
+        private final BlockCache blockCache;
+        private final ExitObservable observable;
+
+        private PassManager(List<List<String>> groups, int unrollFactor, int parallelThreshold, BlockCache blockCache,
+                            ExitObservable observable) {
+            this.groups = groups;
+            this.unrollFactor = unrollFactor;
+            this.parallelThreshold = parallelThreshold;
+            this.blockCache = blockCache;
+            this.observable = observable;
+        }
+
+        /**
+         * 预定义的优化级别
+         * - O0：不优化
+         * - O1：块内改写、复制传播、全局死代码消除与控制流化简（不做跨块的数据流传播，编译最快）
+         * - O2：O1 + 稀疏条件常量传播（SSA）、循环旋转、部分冗余消除、循环不变量外提
+         * - O3：O2 + 循环展开、强度削减（Optimizer.optimize 的默认流水线）
+         */
+        public static PassManager level(int level) {
+            if (level < 0 || level >= LEVELS.length) throw new IllegalArgumentException("优化级别应为 0 ~ 3: " + level);
+            return parse(LEVELS[level]);
+        }
+
+        /**
+         * 解析流水线描述：O0 ~ O3，或以逗号分隔的 pass 名（见类注释）
+         * @throws IllegalArgumentException 未知的 pass 名
+         */
+        public static PassManager parse(String spec) {
+            String s = spec == null ? "" : spec.trim();
+            if (s.matches("[Oo][0-3]")) return level(s.charAt(1) - '0');
+            List<List<String>> groups = new ArrayList<>();
+            for (String token : s.split("[,\\s]+")) {
+                if (token.isEmpty()) continue;
+                List<String> group = new ArrayList<>();
+                for (String name : token.split("\\+")) {
+                    if (!REGISTRY.containsKey(name)) throw new IllegalArgumentException("未知的优化 pass: " + name + "（可用: " + passNames() + "）");
+                    group.add(name);
+                }
+                groups.add(List.copyOf(group));
             }
+            return new PassManager(List.copyOf(groups), LoopUnrolling.DEFAULT_FACTOR, BlockParallelism.DEFAULT_THRESHOLD,
+                    new BlockCache(BlockCache.DEFAULT_CAPACITY), ExitObservable.GLOBALS);
+        }
+
+        /** 可用的 pass 名 */
+        public static Set<String> passNames() {
+            return Collections.unmodifiableSet(REGISTRY.keySet());
+        }
+
+        /**
+         * 同一流水线，使用指定的循环展开因子（小于 2 时只完全展开很小的循环）
+         */
+        public PassManager withUnrollFactor(int factor) {
+            return new PassManager(groups, factor, parallelThreshold, blockCache, observable);
+        }
+
+        /**
+         * 同一流水线，四元式总数达到 quads 时块内改写（local）在 ForkJoinPool 上并行执行；
+         * Integer.MAX_VALUE 表示总是顺序执行。结果与顺序执行相同。
+         */
+        public PassManager withParallelThreshold(int quads) {
+            return new PassManager(groups, unrollFactor, quads, blockCache, observable);
+        }
+
+        /**
+         * 同一流水线，块内改写使用一个新的、最多保存 capacity 个块的结果缓存（默认 32768）；0 表示不缓存
+         */
+        public PassManager withBlockCache(int capacity) {
+            if (capacity < 0) throw new IllegalArgumentException("缓存容量不能为负数: " + capacity);
+            return new PassManager(groups, unrollFactor, parallelThreshold, capacity == 0 ? null : new BlockCache(capacity), observable);
+        }
+
+        /** 块缓存的命中次数（不缓存时为 0） */
+        public long cacheHits() { return blockCache == null ? 0 : blockCache.hits(); }
+
+        /** 块缓存的未命中次数（不缓存时为 0） */
+        public long cacheMisses() { return blockCache == null ? 0 : blockCache.misses(); }
+
+        /** 块缓存当前保存的块数（不缓存时为 0） */
+        public int cacheSize() { return blockCache == null ? 0 : blockCache.size(); }
+
+        /**
+         * 同一流水线，程序出口处可观察的变量按 observable 判断（默认 ExitObservable.GLOBALS）：
+         * 死存储消除（dce）保留它们的最后一次赋值，强度削减（sr）不去掉它们的最终值
+         */
+        public PassManager withExitObservable(ExitObservable observable) {
+            return new PassManager(groups, unrollFactor, parallelThreshold, blockCache,
+                    observable == null ? ExitObservable.GLOBALS : observable);
+        }
+
+        /** 流水线描述（可以再次交给 parse） */
+        @Override
+        public String toString() {
+            List<String> tokens = new ArrayList<>();
+            for (List<String> g : groups) tokens.add(String.join("+", g));
+            return String.join(",", tokens);
+        }
+
+        /**
+         * 流水线描述加上影响优化结果的设置（展开因子、出口处可观察的变量），可作为优化结果的缓存键；
+         * 并行阈值与块缓存不改变结果，不包含在内
+         */
+        public String cacheKey() {
+            return this + " unroll=" + unrollFactor + " observable=" + observable;
+        }
+
+        /**
+         * 优化四元式列表；输入列表不会被修改
+         */
+        public Result run(List<IR.Quad> input) {
+            List<IR.Quad> quads = input == null ? List.of() : input;
+            long start = System.nanoTime();
+            if (groups.isEmpty()) return new Result(new ArrayList<>(quads), List.of(), System.nanoTime() - start);
+            IR.Cfg cfg = IR.Cfg.build(quads);
+            List<PassStats> stats = new ArrayList<>();
+            for (List<String> group : groups) {
+                if (!runPass(group.get(0), cfg, stats)) continue;
+                for (int i = 1; i < group.size(); i++) runPass(group.get(i), cfg, stats);
+            }
+            return new Result(cfg.toQuads(), stats, System.nanoTime() - start);
+        }
+
+        private boolean runPass(String name, IR.Cfg cfg, List<PassStats> stats) {
+            // 按块记下运行前的四元式；多数 pass 只改少数块，未变的块逐个位置比较即可
+            IR.Quad[][] before = new IR.Quad[cfg.blockIdBound()][];
+            int quadsBefore = 0;
+            for (IR.BasicBlock b : cfg.blocks()) {
+                before[b.id()] = b.quads().toArray(new IR.Quad[0]);
+                quadsBefore += before[b.id()].length;
+            }
+            Pass pass = REGISTRY.get(name).apply(this);
+            long t = System.nanoTime();
+            boolean changed = pass.run(cfg);
+            long nanos = System.nanoTime() - t;
+
+            // 只在变化的块（含新建与删除的块）之间按对象比较：不在运行后出现的是删除的，运行前没有的是新插入或改写的；
+            // 在块之间移动的四元式两者都不算
+            Set<IR.Quad> old = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<IR.Quad> now = new ArrayList<>();
+            boolean[] present = new boolean[before.length];
+            int quadsAfter = 0;
+            for (IR.BasicBlock b : cfg.blocks()) {
+                List<IR.Quad> quads = b.quads();
+                quadsAfter += quads.size();
+                IR.Quad[] prev = b.id() < before.length ? before[b.id()] : null;
+                if (prev != null) present[b.id()] = true;
+                if (same(prev, quads)) continue;
+                if (prev != null) Collections.addAll(old, prev);
+                now.addAll(quads);
+            }
+            for (int id = 0; id < before.length; id++) {
+                if (before[id] != null && !present[id]) Collections.addAll(old, before[id]); // 被删除的块
+            }
+            int rewritten = 0;
+            for (IR.Quad q : now) {
+                if (!old.remove(q)) rewritten++;
+            }
+            stats.add(new PassStats(name, quadsBefore, quadsAfter, old.size(), rewritten, nanos, changed));
+            return changed;
+        }
+
+        private static boolean same(IR.Quad[] old, List<IR.Quad> now) {
+            if (old == null || old.length != now.size()) return false;
+            for (int i = 0; i < old.length; i++) {
+                if (old[i] != now.get(i)) return false;
+            }
+            return true;
         }
-        return out;
     }
 
+    // ==========================================
+    // Exit Observable
+    // ==========================================
+
     /**
-     * 比较两个四元式列表是否相等
-     * @param a 第一个四元式列表
-     * @param b 第二个四元式列表
-     * @return 如果两个列表相等则返回true，否则返回false
+     * 程序出口处可观察的变量 (Exit Observable)
+     * 语言没有输入输出，程序的可观察结果就是结束时某些变量的值：这些变量在程序出口处视为活跃，
+     * 对它们的最后一次赋值不会被死代码消除删除，强度削减也不会去掉它们的最终值。其余变量的赋值
+     * 只要在被读取之前就被覆盖（或者从未被读取），就是死存储。
+     *
+     * 默认 GLOBALS：全局变量（作用域深度 0）可观察，局部变量离开作用域后不可能再被读取。
+     * 优化器生成的保存变量（名字含 $，见 HolderVariables）在任何设置下都不可观察。
      */
-    private static boolean equalsQuads(List<IR.Quad> a, List<IR.Quad> b) {
-        if (a == null || b == null) return a == b; // 如果任一列表为null，只有都为null时才相等
-        if (a.size() != b.size()) return false; // 大小不等则不相等
-        for (int i = 0; i < a.size(); i++) {
-            IR.Quad qa = a.get(i);
-            IR.Quad qb = b.get(i);
-            if (!quadEquals(qa, qb)) return false; // 逐个比较四元式
-        }
-        return true;
+    public static final class ExitObservable {
+        /** 全局变量（没有符号信息的变量保守地视为全局） */
+        public static final ExitObservable GLOBALS = new ExitObservable("globals",
+                v -> v.symbol == null || v.symbol.depth == 0);
+        /** 所有用户变量，包括局部变量（调试时保留每个变量的最终值） */
+        public static final ExitObservable ALL = new ExitObservable("all", v -> true);
+
+        private final String description;
+        private final Predicate<IR.Operand.Var> rule;
+
+        private ExitObservable(String description, Predicate<IR.Operand.Var> rule) {
+            this.description = description;
+            this.rule = rule;
+        }
+
+        /**
+         * 只有列出的变量可观察；名字可以是源程序中的名字，也可以是 IR 中 alpha 重命名后的名字
+         * （同名的局部变量按源程序名字匹配时一并可观察）。空集合表示没有可观察的变量。
+         */
+        public static ExitObservable only(Collection<String> names) {
+            Set<String> set = Set.copyOf(names);
+            return new ExitObservable("only " + new TreeSet<>(set), v -> set.contains(v.text) || v.symbol != null && set.contains(v.symbol.name));
+        }
+
+        /**
+         * 名字在程序出口处是否可观察
+         */
+        boolean test(IR.Operand name) {
+            if (!name.isVar() || name.text.indexOf('$') >= 0) return false;
+            return rule.test((IR.Operand.Var) name);
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
     }
 
+    // ==========================================
+    // Results
+    // ==========================================
+
     /**
-     * 比较两个四元式是否相等
-     * @param a 第一个四元式
-     * @param b 第二个四元式
-     * @return 如果两个四元式相等则返回true，否则返回false
+     * 流水线的运行结果：优化后的四元式与每个 pass 的统计（按执行顺序，未运行的清理 pass 不出现）
      */
-    private static boolean quadEquals(IR.Quad a, IR.Quad b) {
-        if (a == null || b == null) return a == b; // 如果任一四元式为null，只有都为null时才相等
-        // 比较四元式的四个组成部分
-        return equalsStr(a.op, b.op)
-                && equalsStr(a.arg1, b.arg1)
-                && equalsStr(a.arg2, b.arg2)
-                && equalsStr(a.result, b.result);
+    public static final class Result {
+        private final List<IR.Quad> quads;
+        private final List<PassStats> stats;
+        private final long nanos;
+
+        Result(List<IR.Quad> quads, List<PassStats> stats, long nanos) {
+            this.quads = quads;
+            this.stats = List.copyOf(stats);
+            this.nanos = nanos;
+        }
+
+        public List<IR.Quad> quads() { return quads; }
+        public List<PassStats> stats() { return stats; }
+
+        /** 整个流水线的耗时（含 CFG 的构建与还原） */
+        public long nanos() { return nanos; }
     }
 
     /**
-     * 比较两个字符串是否相等
-     * @param a 第一个字符串
-     * @param b 第二个字符串
-     * @return 如果两个字符串相等则返回true，否则返回false
+     * 单个 pass 的统计
+     * 四元式按对象计数：removed 是运行后不再出现的四元式，rewritten 是运行后新出现的四元式（插入或改写），
+     * 在块之间移动的四元式两者都不算。delta 是四元式总数的净变化（循环展开、强度削减等会使它为正）。
      */
-    private static boolean equalsStr(String a, String b) {
-        if (a == null) return b == null; // 如果a为null，只有b也为null时才相等
-        return a.equals(b); // 使用String的equals方法比较
+    public static final class PassStats {
+        private final String name;
+        private final int quadsBefore;
+        private final int quadsAfter;
+        private final int removed;
+        private final int rewritten;
+        private final long nanos;
+        private final boolean changed;
+
+        PassStats(String name, int quadsBefore, int quadsAfter, int removed, int rewritten, long nanos, boolean changed) {
+            this.name = name;
+            this.quadsBefore = quadsBefore;
+            this.quadsAfter = quadsAfter;
+            this.removed = removed;
+            this.rewritten = rewritten;
+            this.nanos = nanos;
+            this.changed = changed;
+        }
+
+        public String name() { return name; }
+        public int quadsBefore() { return quadsBefore; }
+        public int quadsAfter() { return quadsAfter; }
+        public int removed() { return removed; }
+        public int rewritten() { return rewritten; }
+        public int delta() { return quadsAfter - quadsBefore; }
+        public long nanos() { return nanos; }
+        public boolean changed() { return changed; }
+
+        @Override
+        public String toString() {
+            return String.format("%-12s %6d -> %6d  removed %6d  rewritten %6d  %8.2f ms",
+                    name, quadsBefore, quadsAfter, removed, rewritten, nanos / 1e6);
+        }
     }
 }
@@ -0,0 +1,426 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 部分冗余消除 (Partial Redundancy Elimination, Lazy Code Motion)
+ * 包级私有类：按 Knoop / Rüthing / Steffen 的惰性代码移动，在 CFG 的边上插入计算，
+ * 删除完全冗余与部分冗余的计算；插入点尽量靠后，不会让任何路径上的计算次数增加。
+ *
+ * 表达式按字面比较 (操作码, 左操作数, 右操作数)，可交换运算的操作数先排序。
+ * 只考虑操作数是用户变量 / 常量的类型化纯运算（临时变量只在块内活跃，不会跨块冗余），
+ * 整数除法只在除数是非零常量时参与（避免把除零提前到别的路径上）；
+ * 只出现一次且不在循环中的表达式不可能冗余，不进入全集。
+ *
+ * 每个被移动的表达式 e 分配一个保存其值的变量 pre$n（见 HolderVariables）：
+ *   插入点：pre$n := e
+ *   块内向下暴露（块尾仍有效）的计算：x := e 改为 pre$n := e; x := pre$n
+ *   被删除的向上暴露计算：x := e 改为 x := pre$n
+ * 多出来的复制由后续的块内改写清理。
+ *
+ * 数据流（位集合，按表达式编号索引）：
+ *   AVAIL   前向，交：AvailOut = DE ∪ (AvailIn − Kill)
+ *   ANT     后向，交：AntIn = UE ∪ (AntOut − Kill)
+ *   EARLIEST(i,j) = AntIn(j) − AvailOut(i) ∩ (Kill(i) ∪ ¬AntOut(i))，i 为入口块时不取后一项
+ *   LATER   前向，交：LaterIn(j) = ∩ Later(i,j)，Later(i,j) = Earliest(i,j) ∪ (LaterIn(i) − UE(i))
+ *   INSERT(i,j) = Later(i,j) − LaterIn(j)；DELETE(k) = UE(k) − LaterIn(k)
+ */
+class PartialRedundancy {
+    private final IR.Cfg cfg;
+    private final List<Expr> exprs = new ArrayList<>();
+    private final Map<Expr, Integer> index = new HashMap<>();
+    private final Map<IR.Operand, BitSet> usedBy = new HashMap<>(); // 名字 -> 以它为操作数的表达式
+    private final Map<Integer, IR.Operand> holders = new HashMap<>();
+    private HolderVariables holderVars;
+
+    private List<IR.BasicBlock> rpo;
+    private boolean[] reachable; // 按块编号
+    private int[] order;         // 块编号 -> 逆后序位置
+    private BitSet[] ue, de, kill, availOut, antIn, antOut, laterIn;
+    private final BitSet scratch = new BitSet();
+
+    private PartialRedundancy(IR.Cfg cfg) {
+        this.cfg = cfg;
+    }
+
+    /**
+     * 对整个 CFG 做惰性代码移动
+     * @return 是否有计算被插入或删除
+     */
+    static boolean run(IR.Cfg cfg) {
+        return new PartialRedundancy(cfg).transform();
+    }
+
+    private boolean transform() {
+        // 插入只发生在边上：入口块有前驱（循环回到入口）时先补一个空入口块
+        if (!cfg.entry().predecessors().isEmpty()) cfg.insertBlockAfter(null, null);
+        rpo = cfg.reversePostorder();
+        reachable = new boolean[cfg.blockIdBound()];
+        order = new int[cfg.blockIdBound()];
+        for (int i = 0; i < rpo.size(); i++) {
+            reachable[rpo.get(i).id()] = true;
+            order[rpo.get(i).id()] = i;
+        }
+        collect();
+        if (exprs.isEmpty()) return false;
+        local();
+        available();
+        anticipated();
+        later();
+
+        // 求出各边的插入集合与各块的删除集合（先全部算完再改图）
+        int n = exprs.size();
+        BitSet moved = new BitSet(n);
+        Map<IR.BasicBlock, BitSet> deletes = new HashMap<>();
+        Map<IR.BasicBlock, Map<IR.BasicBlock, BitSet>> inserts = new LinkedHashMap<>();
+        for (IR.BasicBlock j : rpo) {
+            if (j != cfg.entry()) {
+                BitSet del = (BitSet) ue[j.id()].clone();
+                del.andNot(laterIn[j.id()]);
+                if (!del.isEmpty()) {
+                    deletes.put(j, del);
+                    moved.or(del);
+                }
+            }
+            for (IR.BasicBlock i : j.predecessors()) {
+                if (!reachable[i.id()]) continue;
+                BitSet ins = later(i, j);
+                ins.andNot(laterIn[j.id()]);
+                if (!ins.isEmpty()) {
+                    inserts.computeIfAbsent(i, k -> new LinkedHashMap<>()).put(j, ins);
+                    moved.or(ins);
+                }
+            }
+        }
+        if (moved.isEmpty()) return false;
+
+        for (IR.BasicBlock b : rpo) rewriteBlock(b, moved, deletes.get(b));
+        for (Map.Entry<IR.BasicBlock, Map<IR.BasicBlock, BitSet>> e : inserts.entrySet()) {
+            for (Map.Entry<IR.BasicBlock, BitSet> edge : e.getValue().entrySet()) {
+                insertOnEdge(e.getKey(), edge.getKey(), edge.getValue());
+            }
+        }
+        return true;
+    }
+
+    // -------- universe & local sets --------
+
+    /**
+     * 收集表达式全集：出现至少两次，或出现在循环中
+     */
+    private void collect() {
+        Map<Expr, Integer> seen = new LinkedHashMap<>();
+        Set<Expr> inLoop = new HashSet<>();
+        for (IR.BasicBlock b : rpo) {
+            boolean loop = cfg.loopOf(b) != null;
+            for (IR.Quad q : b.quads()) {
+                Expr e = exprOf(q);
+                if (e == null) continue;
+                seen.merge(e, 1, Integer::sum);
+                if (loop) inLoop.add(e);
+            }
+        }
+        for (Map.Entry<Expr, Integer> s : seen.entrySet()) {
+            Expr e = s.getKey();
+            if (s.getValue() < 2 && !inLoop.contains(e)) continue;
+            int id = exprs.size();
+            exprs.add(e);
+            index.put(e, id);
+            if (e.left.isVar()) usedBy.computeIfAbsent(e.left, k -> new BitSet()).set(id);
+            if (e.right.isVar()) usedBy.computeIfAbsent(e.right, k -> new BitSet()).set(id);
+        }
+        holderVars = new HolderVariables(cfg, "pre$");
+    }
+
+    /**
+     * 块内集合：UE（向上暴露）、DE（向下暴露）、Kill（操作数在块内被重新定义）
+     */
+    private void local() {
+        int size = cfg.blockIdBound();
+        ue = new BitSet[size];
+        de = new BitSet[size];
+        kill = new BitSet[size];
+        for (IR.BasicBlock b : rpo) {
+            BitSet u = new BitSet(), d = new BitSet(), k = new BitSet();
+            for (IR.Quad q : b.quads()) {
+                Integer e = indexOf(q);
+                if (e != null) {
+                    if (!k.get(e)) u.set(e);
+                    d.set(e);
+                }
+                if (Liveness.defines(q)) {
+                    BitSet killed = usedBy.get(q.dest);
+                    if (killed != null) {
+                        k.or(killed);
+                        d.andNot(killed);
+                    }
+                }
+            }
+            ue[b.id()] = u;
+            de[b.id()] = d;
+            kill[b.id()] = k;
+        }
+    }
+
+    // -------- dataflow --------
+
+    /*
+     * 三个求解都按逆后序（ANT 为其逆序）扫描被标记的块：块的结果变化时标记受影响的邻块，
+     * 邻块若已在本轮扫描中处理过（沿回边）才需要下一轮，无回边时一轮即收敛。
+     */
+
+    private void available() {
+        availOut = new BitSet[cfg.blockIdBound()];
+        boolean[] dirty = new boolean[cfg.blockIdBound()];
+        for (IR.BasicBlock b : rpo) {
+            BitSet all = new BitSet();
+            if (b != cfg.entry()) all.set(0, exprs.size());
+            availOut[b.id()] = all;
+            dirty[b.id()] = true;
+        }
+        boolean again = true;
+        while (again) {
+            again = false;
+            for (IR.BasicBlock b : rpo) {
+                if (!dirty[b.id()]) continue;
+                dirty[b.id()] = false;
+                BitSet in = new BitSet();
+                if (b != cfg.entry()) {
+                    in.set(0, exprs.size());
+                    for (IR.BasicBlock p : b.predecessors()) {
+                        if (reachable[p.id()]) in.and(availOut[p.id()]);
+                    }
+                }
+                in.andNot(kill[b.id()]);
+                in.or(de[b.id()]);
+                if (in.equals(availOut[b.id()])) continue;
+                availOut[b.id()] = in;
+                for (IR.BasicBlock s : b.successors()) {
+                    dirty[s.id()] = true;
+                    again |= order[s.id()] <= order[b.id()];
+                }
+            }
+        }
+    }
+
+    private void anticipated() {
+        antIn = new BitSet[cfg.blockIdBound()];
+        antOut = new BitSet[cfg.blockIdBound()];
+        boolean[] dirty = new boolean[cfg.blockIdBound()];
+        for (IR.BasicBlock b : rpo) {
+            BitSet all = new BitSet();
+            all.set(0, exprs.size());
+            antIn[b.id()] = all;
+            antOut[b.id()] = new BitSet();
+            dirty[b.id()] = true;
+        }
+        boolean again = true;
+        while (again) {
+            again = false;
+            for (int k = rpo.size() - 1; k >= 0; k--) {
+                IR.BasicBlock b = rpo.get(k);
+                if (!dirty[b.id()]) continue;
+                dirty[b.id()] = false;
+                BitSet out = new BitSet();
+                if (!cfg.isExit(b)) { // 出口处没有预期会计算的表达式
+                    out.set(0, exprs.size());
+                    for (IR.BasicBlock s : b.successors()) out.and(antIn[s.id()]);
+                }
+                antOut[b.id()] = out;
+                BitSet in = (BitSet) out.clone();
+                in.andNot(kill[b.id()]);
+                in.or(ue[b.id()]);
+                if (in.equals(antIn[b.id()])) continue;
+                antIn[b.id()] = in;
+                for (IR.BasicBlock p : b.predecessors()) {
+                    if (!reachable[p.id()]) continue;
+                    dirty[p.id()] = true;
+                    again |= order[p.id()] >= order[b.id()];
+                }
+            }
+        }
+    }
+
+    private void later() {
+        laterIn = new BitSet[cfg.blockIdBound()];
+        boolean[] dirty = new boolean[cfg.blockIdBound()];
+        for (IR.BasicBlock b : rpo) {
+            BitSet all = new BitSet();
+            if (b != cfg.entry()) all.set(0, exprs.size());
+            laterIn[b.id()] = all;
+            dirty[b.id()] = b != cfg.entry();
+        }
+        boolean again = true;
+        while (again) {
+            again = false;
+            for (IR.BasicBlock j : rpo) {
+                if (!dirty[j.id()]) continue;
+                dirty[j.id()] = false;
+                BitSet in = new BitSet();
+                in.set(0, exprs.size());
+                for (IR.BasicBlock i : j.predecessors()) {
+                    if (reachable[i.id()]) in.and(later(i, j));
+                }
+                if (in.equals(laterIn[j.id()])) continue;
+                laterIn[j.id()] = in;
+                for (IR.BasicBlock s : j.successors()) {
+                    if (s == cfg.entry()) continue;
+                    dirty[s.id()] = true;
+                    again |= order[s.id()] <= order[j.id()];
+                }
+            }
+        }
+    }
+
+    /**
+     * Later(i,j) = Earliest(i,j) ∪ (LaterIn(i) − UE(i))
+     */
+    private BitSet later(IR.BasicBlock i, IR.BasicBlock j) {
+        BitSet later = (BitSet) antIn[j.id()].clone();
+        later.andNot(availOut[i.id()]);
+        if (i != cfg.entry()) { // 入口块之前没有更早的位置：去掉 AntOut(i) − Kill(i)
+            scratch.clear();
+            scratch.or(antOut[i.id()]);
+            scratch.andNot(kill[i.id()]);
+            later.andNot(scratch);
+        }
+        scratch.clear();
+        scratch.or(laterIn[i.id()]);
+        scratch.andNot(ue[i.id()]);
+        later.or(scratch);
+        return later;
+    }
+
+    // -------- rewrite --------
+
+    /**
+     * 改写块内的计算：被删除的向上暴露计算改为复制；被移动表达式的向下暴露计算同时写入保存变量
+     */
+    private void rewriteBlock(IR.BasicBlock b, BitSet moved, BitSet delete) {
+        List<IR.Quad> quads = b.quads();
+        Map<Integer, Integer> first = new HashMap<>(); // 表达式 -> 向上暴露计算的位置
+        Map<Integer, Integer> last = new HashMap<>();  // 表达式 -> 向下暴露计算的位置
+        BitSet killed = new BitSet();
+        for (int i = 0; i < quads.size(); i++) {
+            IR.Quad q = quads.get(i);
+            Integer e = indexOf(q);
+            if (e != null && moved.get(e)) {
+                if (!killed.get(e)) first.putIfAbsent(e, i);
+                last.put(e, i);
+            }
+            if (Liveness.defines(q)) {
+                BitSet k = usedBy.get(q.dest);
+                if (k != null) {
+                    killed.or(k);
+                    for (int x = k.nextSetBit(0); x >= 0; x = k.nextSetBit(x + 1)) last.remove(x);
+                }
+            }
+        }
+        // 从后往前改写，插入不影响前面的下标
+        for (int i = quads.size() - 1; i >= 0; i--) {
+            IR.Quad q = quads.get(i);
+            Integer e = indexOf(q);
+            if (e == null || !moved.get(e)) continue;
+            boolean deleted = delete != null && delete.get(e) && first.get(e) == i;
+            boolean exposed = Objects.equals(last.get(e), i);
+            if (deleted) {
+                quads.set(i, new IR.Quad(":=", holder(e), IR.Operand.NONE, q.dest));
+            } else if (exposed) {
+                quads.set(i, new IR.Quad(":=", holder(e), IR.Operand.NONE, q.dest));
+                quads.add(i, compute(e));
+            }
+        }
+    }
+
+    /**
+     * 在边 i -> j 上插入计算：j 只有一个前驱时放在 j 开头；i 只有一个后继时放在 i 末尾（跳转之前）；否则拆分这条边
+     */
+    private void insertOnEdge(IR.BasicBlock i, IR.BasicBlock j, BitSet ins) {
+        List<IR.Quad> code = new ArrayList<>();
+        for (int e = ins.nextSetBit(0); e >= 0; e = ins.nextSetBit(e + 1)) code.add(compute(e));
+        if (j.predecessors().size() == 1) {
+            j.quads().addAll(0, code);
+        } else if (i.successors().size() == 1) {
+            int at = i.terminator() == null ? i.quads().size() : i.quads().size() - 1;
+            i.quads().addAll(at, code);
+        } else {
+            cfg.splitEdge(i, j).quads().addAll(0, code);
+        }
+    }
+
+    private IR.Quad compute(int e) {
+        Expr x = exprs.get(e);
+        return new IR.Quad(x.op, x.left, x.right, holder(e));
+    }
+
+    private IR.Operand holder(int e) {
+        return holders.computeIfAbsent(e, k -> holderVars.create(exprs.get(k).op));
+    }
+
+    // -------- expressions --------
+
+    private Integer indexOf(IR.Quad q) {
+        Expr e = exprOf(q);
+        return e == null ? null : index.get(e);
+    }
+
+    /**
+     * 四元式计算的表达式；不参与 PRE 时返回 null
+     */
+    private static Expr exprOf(IR.Quad q) {
+        if (!Liveness.defines(q) || !ValueNumbering.isPure(q.op) || HolderVariables.resultType(q.op) == null) return null;
+        IR.Operand a = q.left, b = q.right;
+        if (!operand(a) || !(b == IR.Operand.NONE || operand(b))) return null;
+        if (!a.isVar() && !b.isVar()) return null;
+        if ("idiv".equals(q.op) && !(b instanceof IR.Operand.IntConst && ((IR.Operand.IntConst) b).value != 0)) return null;
+        if (ValueNumbering.isCommutative(q.op) && compare(a, b) > 0) {
+            IR.Operand t = a;
+            a = b;
+            b = t;
+        }
+        return new Expr(q.op, a, b);
+    }
+
+    private static boolean operand(IR.Operand o) {
+        return o.isVar() || o.isConst();
+    }
+
+    private static int compare(IR.Operand a, IR.Operand b) {
+        int c = Integer.compare(a.kind.ordinal(), b.kind.ordinal());
+        return c != 0 ? c : a.text.compareTo(b.text);
+    }
+
+    private static final class Expr {
+        final String op;
+        final IR.Operand left;
+        final IR.Operand right;
+
+        Expr(String op, IR.Operand left, IR.Operand right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Expr)) return false;
+            Expr e = (Expr) o;
+            return op.equals(e.op) && left.equals(e.left) && right.equals(e.right);
+        }
+
+        @Override
+        public int hashCode() {
+            return (op.hashCode() * 31 + left.hashCode()) * 31 + right.hashCode();
+        }
+    }
+}
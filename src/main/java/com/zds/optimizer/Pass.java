@@ -0,0 +1,17 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+/**
+ * 优化 pass
+ * 包级私有接口：在 IR.Cfg 上原地变换。各优化类的 static run 方法按这个形状实现，
+ * 由 PassManager 按名字登记、组装成流水线。
+ */
+@FunctionalInterface
+interface Pass {
+    /**
+     * 变换 cfg
+     * @return 是否有变化（流水线据此决定是否运行依赖它的清理 pass）
+     */
+    boolean run(IR.Cfg cfg);
+}
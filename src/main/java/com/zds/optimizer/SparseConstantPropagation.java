@@ -0,0 +1,185 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 稀疏条件常量传播 (Sparse Conditional Constant Propagation, Wegman-Zadeck)
+ * 包级私有类：在 SSA 形式（IR.toSsa）上求值，每个版本名只有一个定义，值沿定义-使用链传播，
+ * 不在每个块维护整张状态表；分析结束后把常量版本的使用替换为字面量，再退出 SSA（IR.fromSsa）。
+ *
+ * 格 (Lattice)：版本名取 未定义(TOP) > 常量 c > 非常量(NAC)。表中没有即为 TOP，入口值 x.0 为 NAC。
+ * - 两个工作表：可执行的 CFG 边、值下降过的版本名；只求值可执行块中的四元式
+ * - phi 只交汇来自可执行边的参数，条件两侧都是常量的跳转只让一条出边可执行
+ * 因此"if (false) 分支中的赋值"不会让汇合点变为 NAC，这是 ConstantPropagation（逐块状态表）做不到的。
+ * 条件跳转本身只替换操作数，折叠与删除不可达块留给随后的 simplify-cfg。
+ *
+ * 先在 CFG 的副本上分析：没有可替换的操作数时原 CFG 保持不变（不做 SSA 往返）。
+ */
+class SparseConstantPropagation {
+    private static final IR.Operand NAC = IR.Operand.NONE; // 表中的 NONE 表示非常量
+
+    private final IR.Ssa ssa;
+    private final Map<IR.Operand, IR.Operand> values = new HashMap<>();
+    private final Map<IR.BasicBlock, Set<IR.BasicBlock>> executedEdges = new HashMap<>();
+    private final Set<IR.BasicBlock> executable = new HashSet<>();
+    private final Map<IR.Quad, IR.BasicBlock> quadBlock = new IdentityHashMap<>();
+    private final Map<IR.Phi, IR.BasicBlock> phiBlock = new IdentityHashMap<>();
+    private final Deque<IR.BasicBlock[]> flowWork = new ArrayDeque<>(); // (前驱, 块)，入口的前驱为 null
+    private final Deque<IR.Operand> ssaWork = new ArrayDeque<>();
+
+    private SparseConstantPropagation(IR.Ssa ssa) {
+        this.ssa = ssa;
+        for (IR.BasicBlock b : ssa.cfg().blocks()) {
+            for (IR.Quad q : b.quads()) quadBlock.put(q, b);
+            for (IR.Phi phi : b.phis()) phiBlock.put(phi, b);
+        }
+    }
+
+    /**
+     * 分析并改写整个 CFG
+     * @return 是否有操作数被替换为常量
+     */
+    static boolean run(IR.Cfg cfg) {
+        SparseConstantPropagation trial = new SparseConstantPropagation(IR.toSsa(IR.Cfg.build(cfg.toQuads())));
+        trial.solve();
+        if (trial.rewrite(false) == 0) return false;
+
+        IR.Ssa ssa = IR.toSsa(cfg);
+        SparseConstantPropagation sccp = new SparseConstantPropagation(ssa);
+        sccp.solve();
+        sccp.rewrite(true);
+        IR.fromSsa(ssa);
+        return true;
+    }
+
+    private void solve() {
+        flowWork.add(new IR.BasicBlock[]{null, ssa.cfg().entry()});
+        while (!flowWork.isEmpty() || !ssaWork.isEmpty()) {
+            while (!flowWork.isEmpty()) {
+                IR.BasicBlock[] edge = flowWork.poll();
+                IR.BasicBlock b = edge[1];
+                if (edge[0] != null && !executedEdges.computeIfAbsent(edge[0], k -> new HashSet<>()).add(b)) continue;
+                for (IR.Phi phi : b.phis()) visit(phi, b);
+                if (!executable.add(b)) continue;
+                for (IR.Quad q : b.quads()) visit(q, b);
+                if (b.terminator() == null) follow(b, ssa.cfg().next(b));
+            }
+            while (!ssaWork.isEmpty() && flowWork.isEmpty()) {
+                IR.Operand v = ssaWork.poll();
+                for (IR.Phi phi : ssa.usePhis(v)) {
+                    IR.BasicBlock b = phiBlock.get(phi);
+                    if (executable.contains(b)) visit(phi, b);
+                }
+                for (IR.Quad q : ssa.useQuads(v)) {
+                    IR.BasicBlock b = quadBlock.get(q);
+                    if (executable.contains(b)) visit(q, b);
+                }
+            }
+        }
+    }
+
+    private void follow(IR.BasicBlock from, IR.BasicBlock to) {
+        if (to != null) flowWork.add(new IR.BasicBlock[]{from, to});
+    }
+
+    /**
+     * phi：只交汇来自可执行边的参数
+     */
+    private void visit(IR.Phi phi, IR.BasicBlock b) {
+        IR.Operand result = null;
+        for (IR.BasicBlock p : b.predecessors()) {
+            if (!executedEdges.getOrDefault(p, Set.of()).contains(b)) continue;
+            IR.Operand arg = phi.argFrom(p);
+            IR.Operand v = arg == null ? NAC : value(arg);
+            if (v == null) continue;
+            result = result == null || result.equals(v) ? v : NAC;
+        }
+        if (result != null) lower(phi.dest(), result);
+    }
+
+    private void visit(IR.Quad q, IR.BasicBlock b) {
+        if ("j".equals(q.op)) {
+            follow(b, ssa.cfg().targetOf(q));
+        } else if (q.op.startsWith("j")) {
+            IR.Operand a = value(q.left);
+            IR.Operand c = value(q.right);
+            if (a == null || c == null) return; // 还不知道走哪边
+            Boolean taken = a.isNumeric() && c.isNumeric() ? CfgSimplification.compare(q.op, a, c) : null;
+            if (taken == null || taken) follow(b, ssa.cfg().targetOf(q));
+            if (taken == null || !taken) follow(b, ssa.cfg().next(b));
+        } else if (Liveness.defines(q) && !ssa.isExitCopy(q)) {
+            IR.Operand v = evaluate(q);
+            if (v != null) lower(q.dest, v);
+        }
+    }
+
+    /**
+     * 定义点的值：有 TOP 操作数时仍为 TOP（返回 null）；替换常量后能化简为常量复制即为常量，否则为 NAC
+     */
+    private IR.Operand evaluate(IR.Quad q) {
+        IR.Operand left = value(q.left);
+        IR.Operand right = value(q.right);
+        if (left == null || right == null) return null;
+        if (":=".equals(q.op)) return left;
+        IR.Quad folded = OptimizationPass.simplifyQuad(new IR.Quad(q.op, left == NAC ? q.left : left, right == NAC ? q.right : right, q.dest));
+        return ":=".equals(folded.op) && folded.left.isConst() ? folded.left : NAC;
+    }
+
+    /** 操作数的格值：常量与非名字原样返回，TOP 返回 null，没有定义的入口值为 NAC */
+    private IR.Operand value(IR.Operand o) {
+        if (!Liveness.isName(o)) return o;
+        IR.Operand v = values.get(o);
+        if (v != null) return v;
+        return ssa.defBlock(o) == null ? NAC : null;
+    }
+
+    /** 格值只降不升：常量遇到不同的常量变为 NAC */
+    private void lower(IR.Operand name, IR.Operand v) {
+        IR.Operand old = values.get(name);
+        IR.Operand next = old == null || old.equals(v) ? v : NAC;
+        if (next.equals(old)) return;
+        values.put(name, next);
+        ssaWork.add(name);
+    }
+
+    /**
+     * 把常量版本的使用替换为字面量
+     * phi 参数不替换（phi 的结果若为常量，它的使用同样被替换）；出口处写回原名的复制不替换，退出 SSA 时版本合并回原名。
+     * @param apply false 时只计数
+     * @return 替换的操作数个数
+     */
+    private int rewrite(boolean apply) {
+        int replaced = 0;
+        for (IR.BasicBlock b : ssa.cfg().blocks()) {
+            if (!executable.contains(b)) continue;
+            List<IR.Quad> quads = b.quads();
+            for (int i = 0; i < quads.size(); i++) {
+                IR.Quad q = quads.get(i);
+                if (ssa.isExitCopy(q)) continue;
+                IR.Operand left = constant(q.left);
+                IR.Operand right = constant(q.right);
+                if (left == q.left && right == q.right) continue;
+                replaced += (left != q.left ? 1 : 0) + (right != q.right ? 1 : 0);
+                if (!apply) continue;
+                quads.set(i, new IR.Quad(q.op, left, right, q.dest));
+            }
+        }
+        if (apply) ssa.refresh();
+        return replaced;
+    }
+
+    private IR.Operand constant(IR.Operand o) {
+        if (!Liveness.isName(o)) return o;
+        IR.Operand v = values.get(o);
+        return v != null && v != NAC ? v : o;
+    }
+}
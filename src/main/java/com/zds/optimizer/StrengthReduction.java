@@ -0,0 +1,399 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 归纳变量与强度削减 (Induction Variables, Strength Reduction)
+ * 包级私有类：在 IR.Cfg 的自然循环上识别归纳变量，把循环内对它的乘法改为每次迭代的加法。
+ *
+ * - 基本归纳变量：循环内的每个定义都形如 i := i + c / i := i - c（c 为整数常量）的用户变量
+ * - 导出归纳变量：j := i * k（k 为常量或循环内没有定义的名字），值恒为 i * k
+ * 每个 (i, k) 分配一个保存变量 sr$n：前置块中 sr$n := i * k，循环内 i 的每个定义之后补 sr$n := sr$n + c * k，
+ * 原来的乘法改为复制 j := sr$n。int 运算按 32 位回绕，(i + c) * k 与 i * k + c * k 在回绕下仍然相等。
+ *
+ * 冗余归纳变量消除 (Linear Function Test Replacement)：基本归纳变量在循环内只剩自增与出口比较（循环头，旋转后在回边块）、循环出口处不活跃时，
+ * 比较改为 sr$n 与 bound * k 比较（k 为正常数），自增随之删除。展开后同一次迭代里的多个自增按总步长计算。
+ * 只有 i * k 与 bound * k 不会溢出时才改写：初值、各步长是常量且步长为正，i 只在出口比较 i < bound / i <= bound 成立时才会继续自增。
+ * - 界是常量：编译期检查，bound * k 直接算出
+ * - 界是循环内不变的名字：前置块中计算 bound * k；不能保证不溢出时做循环版本化，运行时 bound 超出范围进入保留 i 的副本
+ */
+class StrengthReduction {
+    private final IR.Cfg cfg;
+    private final HolderVariables holderVars;
+    private final Optimizer.ExitObservable observable;
+    private final TempRenamer temps;
+    private final List<IR.BasicBlock> added = new ArrayList<>(); // 当前循环版本化新建的块（副本与检查块）
+    private final Map<IR.Loop, Set<IR.BasicBlock>> inner = new HashMap<>(); // 外层循环 -> 内层循环新建的前置块
+    private Liveness live;
+    private int liveBound; // 活跃信息覆盖的块编号上界，之后新建的块没有活跃信息
+
+    private StrengthReduction(IR.Cfg cfg, Optimizer.ExitObservable observable) {
+        this.cfg = cfg;
+        this.holderVars = new HolderVariables(cfg, "sr$");
+        this.observable = observable;
+        this.temps = new TempRenamer(cfg);
+    }
+
+    /** 导出归纳变量 i * k 及其保存变量 */
+    private static final class Derived {
+        final IR.Operand iv;
+        final IR.Operand factor;
+        final IR.Operand holder;
+
+        Derived(IR.Operand iv, IR.Operand factor, IR.Operand holder) {
+            this.iv = iv;
+            this.factor = factor;
+            this.holder = holder;
+        }
+    }
+
+    /**
+     * 对所有循环做强度削减
+     * @return 是否有乘法被改写
+     */
+    static boolean run(IR.Cfg cfg) {
+        return run(cfg, Optimizer.ExitObservable.GLOBALS);
+    }
+
+    /**
+     * @param observable 程序出口处可观察的变量：比较替换后归纳变量不再更新，只对出口处不活跃的归纳变量进行
+     */
+    static boolean run(IR.Cfg cfg, Optimizer.ExitObservable observable) {
+        return new StrengthReduction(cfg, observable).transform();
+    }
+
+    private boolean transform() {
+        List<IR.Loop> loops = new ArrayList<>(cfg.loops());
+        if (loops.isEmpty()) return false;
+        live = Liveness.compute(cfg, observable);
+        liveBound = cfg.blockIdBound();
+        boolean changed = false;
+        for (int i = loops.size() - 1; i >= 0; i--) changed |= reduce(loops.get(i)); // 由内向外
+        return changed;
+    }
+
+    private boolean reduce(IR.Loop loop) {
+        Set<IR.BasicBlock> body = new LinkedHashSet<>(loop.blocks());
+        body.addAll(inner.getOrDefault(loop, Set.of()));
+
+        // 基本归纳变量：名字 -> 各定义的步长；出现不符合形式的定义即排除（值为 null）
+        Map<IR.Operand, List<Integer>> steps = new HashMap<>();
+        Set<IR.Operand> defined = new LinkedHashSet<>();
+        for (IR.BasicBlock b : body) {
+            for (IR.Quad q : b.quads()) {
+                if (!Liveness.defines(q)) continue;
+                defined.add(q.dest);
+                Integer c = step(q);
+                if (c == null || !q.dest.isVar()) {
+                    steps.put(q.dest, null);
+                } else if (!steps.containsKey(q.dest) || steps.get(q.dest) != null) {
+                    steps.computeIfAbsent(q.dest, k -> new ArrayList<>()).add(c);
+                }
+            }
+        }
+        steps.values().removeIf(Objects::isNull);
+        if (steps.isEmpty()) return false;
+
+        // 导出归纳变量：i * k，k 是常量或循环内没有定义的名字
+        Map<List<IR.Operand>, Derived> derived = new LinkedHashMap<>();
+        for (IR.BasicBlock b : body) {
+            for (IR.Quad q : b.quads()) {
+                if (!"imul".equals(q.op)) continue;
+                IR.Operand iv = steps.containsKey(q.left) ? q.left : steps.containsKey(q.right) ? q.right : null;
+                if (iv == null) continue;
+                IR.Operand k = iv == q.left ? q.right : q.left;
+                if (!k.isConst() && (!Liveness.isName(k) || defined.contains(k))) continue;
+                derived.computeIfAbsent(List.of(iv, k), key -> new Derived(iv, k, holderVars.create("imul")));
+            }
+        }
+        if (derived.isEmpty()) return false;
+
+        IR.BasicBlock pre = cfg.preheader(loop);
+        List<IR.Quad> init = new ArrayList<>();
+        Map<List<Object>, IR.Operand> increments = new HashMap<>(); // (k, c) -> c * k
+        for (Derived d : derived.values()) init.add(new IR.Quad("imul", d.iv, d.factor, d.holder));
+
+        // 乘法改为复制；基本归纳变量的每个定义之后更新对应的保存变量
+        for (IR.BasicBlock b : body) {
+            List<IR.Quad> quads = b.quads();
+            List<IR.Quad> out = new ArrayList<>(quads.size());
+            boolean touched = false;
+            for (IR.Quad q : quads) {
+                Derived d = "imul".equals(q.op) ? match(q, derived) : null;
+                if (d != null) {
+                    out.add(new IR.Quad(":=", d.holder, IR.Operand.NONE, q.dest));
+                    touched = true;
+                    continue;
+                }
+                out.add(q);
+                if (!Liveness.defines(q) || !steps.containsKey(q.dest)) continue;
+                int c = step(q);
+                for (Derived x : derived.values()) {
+                    if (!x.iv.equals(q.dest)) continue;
+                    IR.Operand inc = increments.computeIfAbsent(List.of(x.factor, c), key -> increment(x.factor, c, init));
+                    out.add(new IR.Quad("iadd", x.holder, inc, x.holder));
+                    touched = true;
+                }
+            }
+            if (touched) {
+                quads.clear();
+                quads.addAll(out);
+            }
+        }
+        int at = pre.terminator() == null ? pre.quads().size() : pre.quads().size() - 1;
+        pre.quads().addAll(at, init);
+
+        for (Derived d : derived.values()) replaceTest(loop, body, defined, pre, d, steps.get(d.iv));
+
+        IR.Loop parent = loop.parent();
+        if (parent != null) {
+            Set<IR.BasicBlock> outer = inner.computeIfAbsent(parent, k -> new LinkedHashSet<>());
+            outer.addAll(inner.getOrDefault(loop, Set.of()));
+            if (!parent.contains(pre)) outer.add(pre);
+            outer.addAll(added);
+        }
+        added.clear();
+        return true;
+    }
+
+    /**
+     * i := i + c / i := c + i / i := i - c 的步长，其他定义返回 null
+     */
+    static Integer step(IR.Quad q) {
+        if ("iadd".equals(q.op)) {
+            if (q.left.equals(q.dest) && q.right instanceof IR.Operand.IntConst) return (int) ((IR.Operand.IntConst) q.right).value;
+            if (q.right.equals(q.dest) && q.left instanceof IR.Operand.IntConst) return (int) ((IR.Operand.IntConst) q.left).value;
+        } else if ("isub".equals(q.op) && q.left.equals(q.dest) && q.right instanceof IR.Operand.IntConst) {
+            return -(int) ((IR.Operand.IntConst) q.right).value;
+        }
+        return null;
+    }
+
+    private static Derived match(IR.Quad q, Map<List<IR.Operand>, Derived> derived) {
+        Derived d = derived.get(List.of(q.left, q.right));
+        return d != null ? d : derived.get(List.of(q.right, q.left));
+    }
+
+    /**
+     * 保存变量每次的增量 c * k：k 为常量时在编译期按 int 计算，否则在前置块中计算一次
+     */
+    private IR.Operand increment(IR.Operand k, int c, List<IR.Quad> init) {
+        if (k instanceof IR.Operand.IntConst) return IR.Operand.ofInt((int) ((IR.Operand.IntConst) k).value * c);
+        if (c == 1) return k;
+        IR.Operand h = holderVars.create("imul");
+        init.add(new IR.Quad("imul", k, IR.Operand.ofInt(c), h));
+        return h;
+    }
+
+    // -------- linear function test replacement --------
+
+    private void replaceTest(IR.Loop loop, Set<IR.BasicBlock> body, Set<IR.Operand> defined, IR.BasicBlock pre,
+                             Derived d, List<Integer> steps) {
+        if (!(d.factor instanceof IR.Operand.IntConst)) return;
+        long k = ((IR.Operand.IntConst) d.factor).value;
+        if (k <= 0) return;
+        long c = 0; // 每次迭代 i 增加的总量（展开后同一次迭代里有多个自增）
+        for (int step : steps) {
+            if (step <= 0) return;
+            c += step;
+        }
+        IR.BasicBlock exiting = exitingBlock(loop);
+        if (exiting == null) return;
+        IR.Quad test = exiting.terminator();
+
+        // 比较统一成 i op bound，并换算成"继续循环"的条件
+        String op = test.op;
+        IR.Operand bound;
+        if (test.left.equals(d.iv)) {
+            bound = test.right;
+        } else if (test.right.equals(d.iv)) {
+            bound = test.left;
+            op = swap(op);
+        } else {
+            return;
+        }
+        boolean constant = bound instanceof IR.Operand.IntConst;
+        if (!constant && (!Liveness.isName(bound) || defined.contains(bound))) return;
+        IR.BasicBlock target = cfg.targetOf(test);
+        String stay = loop.contains(target) ? op : CfgSimplification.inverse(op);
+        if (!"j<".equals(stay) && !"j<=".equals(stay)) return;
+
+        // 循环内 i 只能出现在自增（且不在内层循环中）与这条比较里，出口处不活跃
+        Map<IR.Quad, IR.BasicBlock> incs = new LinkedHashMap<>();
+        for (IR.BasicBlock b : body) {
+            for (IR.Quad q : b.quads()) {
+                if (Liveness.defines(q) && q.dest.equals(d.iv)) {
+                    IR.Loop own = cfg.loopOf(b);
+                    if (own == null || own.header() != loop.header()) return;
+                    incs.put(q, b);
+                } else if (q != test && (q.left.equals(d.iv) || q.right.equals(d.iv))) {
+                    return;
+                }
+            }
+        }
+        if (incs.isEmpty()) return;
+        for (IR.BasicBlock e : loop.exits()) {
+            if (liveAt(e, d.iv, 0)) return;
+        }
+
+        // 循环内的 i 在 [初值, max(初值, 最后一次通过比较的值) + c] 内（比较在循环头或末尾都成立），乘 k 后不能溢出
+        Long start = initialValue(pre, d.iv);
+        if (start == null || start * k < Integer.MIN_VALUE || (start + c) * k > Integer.MAX_VALUE) return;
+        IR.Operand scaled;
+        if (constant) {
+            long b = ((IR.Operand.IntConst) bound).value;
+            long hi = Math.max(start, "j<".equals(stay) ? b - 1 : b) + c;
+            if (b * k < Integer.MIN_VALUE || hi * k > Integer.MAX_VALUE) return;
+            scaled = IR.Operand.ofInt((int) (b * k));
+        } else {
+            // 循环不变的界：bound 在 [low, high] 内时 bound * k 与 i * k 都不溢出，否则进入保留原比较的副本
+            long low = Integer.MIN_VALUE / k;
+            long high = Integer.MAX_VALUE / k - c + ("j<".equals(stay) ? 1 : 0);
+            if (high < low || !version(loop, body, pre, bound, low, high)) return;
+            scaled = holderVars.create("imul");
+            IR.Quad t = pre.terminator();
+            pre.quads().add(t == null ? pre.quads().size() : pre.quads().size() - 1, new IR.Quad("imul", bound, d.factor, scaled));
+        }
+
+        IR.Quad replaced = test.left.equals(d.iv)
+                ? new IR.Quad(test.op, d.holder, scaled, test.dest)
+                : new IR.Quad(test.op, scaled, d.holder, test.dest);
+        exiting.quads().set(exiting.quads().size() - 1, replaced);
+        for (Map.Entry<IR.Quad, IR.BasicBlock> e : incs.entrySet()) e.getValue().quads().remove(e.getKey());
+    }
+
+    /**
+     * 循环版本化 (Loop Versioning)：bound 可能不在 [low, high] 内时复制一份循环（保留原来的比较与自增），
+     * 前置块之后检查 bound，超出范围时进入副本。bound 一定在范围内（low、high 取到 int 的边界）时不复制。
+     * 只处理没有内层循环的循环；副本中块尾的顺序执行改为显式跳转，临时变量换成新编号。
+     * @return 原循环是否可以按 [low, high] 改写比较
+     */
+    private boolean version(IR.Loop loop, Set<IR.BasicBlock> body, IR.BasicBlock pre, IR.Operand bound, long low, long high) {
+        boolean checkLow = low > Integer.MIN_VALUE;
+        boolean checkHigh = high < Integer.MAX_VALUE;
+        if (!checkLow && !checkHigh) return true;
+        IR.Quad enter = pre.terminator();
+        if (enter != null && !"j".equals(enter.op)) return false;
+        List<IR.BasicBlock> blocks = new ArrayList<>();
+        for (IR.BasicBlock b : cfg.blocks()) {
+            if (!body.contains(b)) continue;
+            IR.Loop own = cfg.loopOf(b);
+            if (own == null || own.header() != loop.header()) return false;
+            blocks.add(b);
+        }
+        IR.BasicBlock tail = blocks.get(blocks.size() - 1);
+        if (tail.fallsThrough() && cfg.next(tail) == null) cfg.insertBlockAfter(tail, List.of(cfg.newLabel())); // 程序末尾的落脚点
+
+        Map<IR.BasicBlock, IR.BasicBlock> copy = new HashMap<>();
+        for (IR.BasicBlock b : blocks) {
+            IR.BasicBlock x = cfg.insertDetachedBlock();
+            cfg.labelOf(x);
+            copy.put(b, x);
+            added.add(x);
+        }
+        for (IR.BasicBlock b : blocks) {
+            IR.BasicBlock x = copy.get(b);
+            x.quads().addAll(temps.copy(b.quads()));
+            IR.Quad t = x.terminator();
+            IR.BasicBlock to = cfg.targetOf(t);
+            if (copy.containsKey(to)) x.quads().set(x.quads().size() - 1, new IR.Quad(t.op, t.left, t.right, cfg.labelOf(copy.get(to))));
+            if (!b.fallsThrough()) continue;
+            IR.BasicBlock next = cfg.next(b);
+            IR.BasicBlock jump = t == null ? x : cfg.insertBlockAfter(x, null);
+            jump.quads().add(new IR.Quad("j", IR.Operand.NONE, IR.Operand.NONE, cfg.labelOf(copy.getOrDefault(next, next))));
+            if (jump != x) added.add(jump);
+        }
+
+        // 前置块 -> [bound < low 进入副本] -> [bound > high 进入副本] -> 循环头
+        IR.Operand slow = cfg.labelOf(copy.get(loop.header()));
+        IR.BasicBlock guard = cfg.insertDetachedBlock();
+        IR.BasicBlock check = guard;
+        added.add(check);
+        if (checkLow) check.quads().add(new IR.Quad("j<", bound, IR.Operand.ofInt(low), slow));
+        if (checkHigh) {
+            if (checkLow) {
+                check = cfg.insertBlockAfter(check, null);
+                added.add(check);
+            }
+            check.quads().add(new IR.Quad("j>", bound, IR.Operand.ofInt(high), slow));
+        }
+        IR.BasicBlock into = cfg.insertBlockAfter(check, null);
+        into.quads().add(new IR.Quad("j", IR.Operand.NONE, IR.Operand.NONE, cfg.labelOf(loop.header())));
+        added.add(into);
+        IR.Quad jump = new IR.Quad("j", IR.Operand.NONE, IR.Operand.NONE, cfg.labelOf(guard));
+        if (enter == null) pre.quads().add(jump);
+        else pre.quads().set(pre.quads().size() - 1, jump);
+        cfg.rebuildEdges();
+        return true;
+    }
+
+    /**
+     * 循环唯一的出口判断所在的块：先判断的循环是循环头，旋转后的循环是回边块；出口不止一处时返回 null
+     */
+    private static IR.BasicBlock exitingBlock(IR.Loop loop) {
+        IR.BasicBlock exiting = null;
+        for (IR.BasicBlock b : loop.blocks()) {
+            for (IR.BasicBlock s : b.successors()) {
+                if (loop.contains(s)) continue;
+                if (exiting != null && exiting != b) return null;
+                exiting = b;
+            }
+        }
+        if (exiting == null || exiting.successors().size() != 2) return null;
+        IR.Quad t = exiting.terminator();
+        return t == null || "j".equals(t.op) ? null : exiting;
+    }
+
+    /**
+     * 进入循环时 i 的常量初值：从前置块往前找最近的定义（只沿唯一前驱回溯）
+     */
+    static Long initialValue(IR.BasicBlock pre, IR.Operand iv) {
+        IR.BasicBlock b = pre;
+        for (int hops = 0; b != null && hops < 8; hops++) {
+            List<IR.Quad> quads = b.quads();
+            for (int i = quads.size() - 1; i >= 0; i--) {
+                IR.Quad q = quads.get(i);
+                if (!Liveness.defines(q) || !q.dest.equals(iv)) continue;
+                return ":=".equals(q.op) && q.left instanceof IR.Operand.IntConst ? ((IR.Operand.IntConst) q.left).value : null;
+            }
+            b = b.predecessors().size() == 1 ? b.predecessors().get(0) : null;
+        }
+        return null;
+    }
+
+    /**
+     * 名字在块入口是否活跃；本趟新建的块没有活跃信息，按其中的四元式与后继推算
+     */
+    private boolean liveAt(IR.BasicBlock b, IR.Operand name, int depth) {
+        if (b.id() < liveBound) return live.liveIn(b, name);
+        if (depth > 8) return true;
+        for (IR.Quad q : b.quads()) {
+            if (q.left.equals(name) || q.right.equals(name)) return true;
+            if (Liveness.defines(q) && q.dest.equals(name)) return false;
+        }
+        for (IR.BasicBlock s : b.successors()) {
+            if (liveAt(s, name, depth + 1)) return true;
+        }
+        return false;
+    }
+
+    /** 交换比较两侧后的操作码：a < b 即 b > a */
+    static String swap(String op) {
+        switch (op) {
+            case "j<": return "j>";
+            case "j>": return "j<";
+            case "j<=": return "j>=";
+            case "j>=": return "j<=";
+            default: return op;
+        }
+    }
+}
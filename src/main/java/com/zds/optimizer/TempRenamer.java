@@ -0,0 +1,44 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 临时变量重命名 (Temp Renamer)
+ * 包级私有类：复制代码的变换（循环展开、循环旋转）把一段四元式复制到别处时，副本中定义的临时变量换成新编号，
+ * 保持"临时变量只定义一次"的约定；用户变量与常量照原样复制。新编号从 CFG 中已有的最大编号之后开始。
+ */
+class TempRenamer {
+    private int next;
+
+    TempRenamer(IR.Cfg cfg) {
+        for (IR.BasicBlock b : cfg.blocks()) {
+            for (IR.Quad q : b.quads()) {
+                if (q.dest instanceof IR.Operand.Temp) next = Math.max(next, ((IR.Operand.Temp) q.dest).id + 1);
+            }
+        }
+    }
+
+    /**
+     * 复制一段四元式：段内定义的临时变量换成新编号，段内之后对它的使用随之改名
+     */
+    List<IR.Quad> copy(List<IR.Quad> code) {
+        Map<IR.Operand, IR.Operand> rename = new HashMap<>();
+        List<IR.Quad> out = new ArrayList<>(code.size());
+        for (IR.Quad q : code) {
+            IR.Operand left = rename.getOrDefault(q.left, q.left);
+            IR.Operand right = rename.getOrDefault(q.right, q.right);
+            IR.Operand dest = q.dest;
+            if (dest.isTemp() && Liveness.defines(q)) {
+                dest = IR.Operand.temp(next++);
+                rename.put(q.dest, dest);
+            }
+            out.add(new IR.Quad(q.op, left, right, dest));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,165 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 局部值编号 (Local Value Numbering)
+ * 包级私有类：在一个基本块内为每个值分配编号，(操作码, 左值编号, 右值编号) 相同的运算计算的是同一个值，
+ * 第二次出现时改写为对第一次结果的复制，复制随后由复制传播 / 死代码消除清理。
+ *
+ * - 常量按字面量编号（5 与 5.0 类型不同，编号也不同）；复制 x := y 让 x 与 y 共享编号
+ * - 可交换运算（iadd / imul / dadd / dmul 与无类型的 + *）把两个操作数编号按大小排序后再查表
+ * - 每个编号记住第一个持有它的名字；该名字被重新定义后不再持有这个编号，表项视为失效
+ * - 使用处的名字替换为同编号的持有者（块内复制传播），已知为常量时直接替换为字面量
+ */
+class ValueNumbering {
+    private static final Set<String> PURE_OPS = Set.of(
+            "iadd", "isub", "imul", "idiv", "ineg",
+            "dadd", "dsub", "dmul", "ddiv", "dneg",
+            "+", "-", "*", "/", "neg", "concat", "i2d");
+    private static final Set<String> COMMUTATIVE = Set.of("iadd", "imul", "dadd", "dmul", "+", "*");
+
+    private final Map<IR.Operand, Integer> numberOf = new HashMap<>();  // 名字 / 常量 -> 值编号
+    private final Map<Integer, IR.Operand> holderOf = new HashMap<>();  // 值编号 -> 第一个持有者
+    private final Map<Integer, IR.Operand> constantOf = new HashMap<>(); // 值编号 -> 常量
+    private final Map<Expr, Integer> exprs = new HashMap<>();
+    private int next;
+
+    private ValueNumbering() {
+    }
+
+    /** 无副作用、结果只取决于操作数的运算（可以重算或复用） */
+    static boolean isPure(String op) {
+        return PURE_OPS.contains(op);
+    }
+
+    /** 可交换运算 */
+    static boolean isCommutative(String op) {
+        return COMMUTATIVE.contains(op);
+    }
+
+    /**
+     * 对一个基本块做值编号并原地改写
+     * @return 是否有四元式被改写
+     */
+    static boolean run(List<IR.Quad> block) {
+        if (block.size() < 2) return false;
+        ValueNumbering vn = new ValueNumbering();
+        boolean changed = false;
+        for (int i = 0; i < block.size(); i++) {
+            IR.Quad q = block.get(i);
+            IR.Quad r = vn.visit(q);
+            if (r == q) continue;
+            changed = true;
+            if (":=".equals(r.op) && r.left.equals(r.dest)) {
+                block.remove(i--); // 重算的结果本来就在目标里：x := x
+            } else {
+                block.set(i, r);
+            }
+        }
+        return changed;
+    }
+
+    private IR.Quad visit(IR.Quad q) {
+        if ("label".equals(q.op)) return q;
+        IR.Operand left = canonical(q.left);
+        IR.Operand right = canonical(q.right);
+        IR.Quad r = left == q.left && right == q.right ? q : new IR.Quad(q.op, left, right, q.dest);
+        if (!Liveness.defines(q)) return r;
+
+        int value;
+        if (":=".equals(q.op)) {
+            value = number(left);
+        } else if (PURE_OPS.contains(q.op)) {
+            int a = number(left);
+            int b = right == IR.Operand.NONE ? -1 : number(right);
+            if (COMMUTATIVE.contains(q.op) && a > b) {
+                int t = a;
+                a = b;
+                b = t;
+            }
+            Expr key = new Expr(q.op, a, b);
+            Integer known = exprs.get(key);
+            IR.Operand holder = known == null ? null : holder(known);
+            if (holder != null) {
+                value = known;
+                r = new IR.Quad(":=", holder, IR.Operand.NONE, q.dest);
+            } else {
+                value = next++;
+                exprs.put(key, value);
+            }
+        } else {
+            value = next++;
+        }
+        numberOf.put(q.dest, value);
+        IR.Operand h = holderOf.get(value);
+        if (h == null || !Objects.equals(numberOf.get(h), value)) holderOf.put(value, q.dest);
+        return r;
+    }
+
+    /**
+     * 使用处的替换：已知常量 -> 字面量；否则换成同编号的第一个持有者
+     */
+    private IR.Operand canonical(IR.Operand o) {
+        if (!Liveness.isName(o)) return o;
+        Integer v = numberOf.get(o);
+        if (v == null) return o;
+        IR.Operand c = constantOf.get(v);
+        if (c != null) return c;
+        IR.Operand h = holder(v);
+        return h == null ? o : h;
+    }
+
+    /**
+     * 仍然持有该编号的名字（持有者被重新定义后返回 null；常量总是持有自己的编号）
+     */
+    private IR.Operand holder(int value) {
+        IR.Operand c = constantOf.get(value);
+        if (c != null) return c;
+        IR.Operand h = holderOf.get(value);
+        return h != null && Objects.equals(numberOf.get(h), value) ? h : null;
+    }
+
+    private int number(IR.Operand o) {
+        Integer v = numberOf.get(o);
+        if (v != null) return v;
+        int n = next++;
+        numberOf.put(o, n);
+        if (o.isConst()) constantOf.put(n, o);
+        else holderOf.put(n, o);
+        return n;
+    }
+
+    /**
+     * 表达式键：操作码与两个操作数的值编号（一元运算右侧为 -1）
+     */
+    private static final class Expr {
+        final String op;
+        final int left;
+        final int right;
+
+        Expr(String op, int left, int right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Expr)) return false;
+            Expr e = (Expr) o;
+            return left == e.left && right == e.right && op.equals(e.op);
+        }
+
+        @Override
+        public int hashCode() {
+            return (op.hashCode() * 31 + left) * 31 + right;
+        }
+    }
+}
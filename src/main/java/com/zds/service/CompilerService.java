@@ -7,6 +7,8 @@ import com.zds.lexer.Lexer;
 import com.zds.optimizer.Optimizer;
 import com.zds.parser.Parser;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -20,6 +22,10 @@ import java.util.List;
  * 输出：编译产物 (Artifacts)
  */
 public class CompilerService {
+    private static final System.Logger LOG = System.getLogger(CompilerService.class.getName());
+
+    /** GUI 与命令行模式写出汇编的位置（见 writeAsm） */
+    public static final List<Path> ASM_OUTPUTS = List.of(Path.of("src", "main", "resources", "out.asm"), Path.of("target", "out.asm"));
 
     /**
      * 执行完整的编译流程
@@ -28,6 +34,103 @@ public class CompilerService {
      * @return 编译全过程的产物（包括中间结果和最终代码）
      */
     public static Artifacts compile(String source, boolean enableOpt) {
+        return compile(source, enableOpt ? Optimizer.PassManager.level(3) : null, null);
+    }
+
+    /**
+     * 按指定的优化流水线编译，产物中带每个优化 pass 的统计（Artifacts.passStats）
+     * @param passes 优化级别或自定义流水线（Optimizer.PassManager.level / Optimizer.PassManager.parse），null 表示不优化
+     */
+    public static Artifacts compile(String source, Optimizer.PassManager passes) {
+        return compile(source, passes, null);
+    }
+
+    /**
+     * 带磁盘缓存的编译（启用优化时使用 O3 流水线），见 compileCached(String, Optimizer.PassManager, Path)
+     */
+    public static Artifacts compileCached(String source, boolean enableOpt, Path cacheDir) {
+        return compileCached(source, enableOpt ? Optimizer.PassManager.level(3) : null, cacheDir);
+    }
+
+    /**
+     * 带磁盘缓存的编译：以源码指纹和优化流水线（含优化器版本 Optimizer.VERSION）命名预编译单元（IR.Unit），
+     * 命中时直接加载四元式和符号表，跳过词法、语法、语义分析、中间代码生成和优化，只重新生成目标代码。
+     * 命中时 Artifacts 中只有 irAfter / asm 相关内容（没有 tokens、AST 和优化前的四元式）。
+     * 写缓存失败不影响编译结果，只记录一条警告。
+     * @param passes 优化流水线，null 表示不优化
+     * @param cacheDir 缓存目录（不存在时自动创建）
+     */
+    public static Artifacts compileCached(String source, Optimizer.PassManager passes, Path cacheDir) {
+        String safeSource = source == null ? "" : source;
+        long hash = sourceHash(safeSource);
+        String pipeline = pipelineKey(passes);
+        Path unitFile = cacheDir.resolve(String.format("%016x-%016x.zu", hash, sourceHash(pipeline)));
+        if (Files.isRegularFile(unitFile)) {
+            try {
+                IR.Unit unit = IR.loadUnit(unitFile);
+                if (unit.sourceHash() == hash && unit.pipeline().equals(pipeline)) {
+                    return fromUnit(unit);
+                }
+            } catch (IOException ex) {
+                // 损坏或版本不符的缓存：重新编译并覆盖
+            }
+        }
+        return compile(safeSource, passes, unitFile);
+    }
+
+    /**
+     * 流式编译：IR 生成、块内优化和目标代码生成串成一条流水线 (IR.QuadSink)，
+     * 每条四元式生成后立即被消费，不保留整个程序的四元式列表，适合大程序。
+     * 启用优化时只做块内优化（见 Optimizer.blockSink）；不生成中间文本，也不写文件。
+     * @param outErrors 错误收集列表
+     * @return 汇编指令（出错时为空列表）
+     */
+    public static List<CodeGen.Instr> compileStreaming(String source, boolean enableOpt, List<String> outErrors) {
+        String safeSource = source == null ? "" : source;
+        List<String> errors = new ArrayList<>(Lexer.scanErrors(safeSource));
+        Parser.Program program = errors.isEmpty() ? Parser.analyze(Lexer.scan(safeSource), errors) : null;
+        Semantic.Result sem = errors.isEmpty() ? Semantic.analyze(program, errors) : null;
+        if (!errors.isEmpty()) {
+            if (outErrors != null) outErrors.addAll(errors);
+            return List.of();
+        }
+        CodeGen.AsmSink asm = CodeGen.sink(sem);
+        IR.generate(program, sem, enableOpt ? Optimizer.blockSink(asm) : asm, errors);
+        if (outErrors != null) outErrors.addAll(errors);
+        return errors.isEmpty() ? asm.instructions() : List.of();
+    }
+
+    /**
+     * 把产物中的汇编写入文件（目录不存在时自动创建）
+     * 编译本身不写文件，由调用方决定输出位置，如 ASM_OUTPUTS。
+     * @throws IOException 写文件失败
+     */
+    public static void writeAsm(Artifacts artifacts, List<Path> files) throws IOException {
+        for (Path file : files) {
+            CodeGen.writeToFile(file, artifacts.asm());
+        }
+    }
+
+    /**
+     * 源码指纹（64 位 FNV-1a，按 UTF-16 字符计算）
+     */
+    public static long sourceHash(String source) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < source.length(); i++) {
+            h ^= source.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * 预编译单元中记录的流水线描述：优化器版本 + 流水线及其设置（Optimizer.PassManager.cacheKey），不优化时为空串
+     */
+    private static String pipelineKey(Optimizer.PassManager passes) {
+        return passes == null ? "" : "optimizer-v" + Optimizer.VERSION + " " + passes.cacheKey();
+    }
+
+    private static Artifacts compile(String source, Optimizer.PassManager passes, Path unitFile) {
         String safeSource = source == null ? "" : source;
         List<String> errors = new ArrayList<>();
 
@@ -67,7 +170,16 @@ public class CompilerService {
         }
 
         // 5. 代码优化
-        List<IR.Quad> irAfter = enableOpt ? Optimizer.optimize(irBefore) : copyQuads(irBefore);
+        Optimizer.Result optimized = passes == null ? null : Optimizer.optimize(irBefore, passes);
+        List<IR.Quad> irAfter = optimized == null ? copyQuads(irBefore) : optimized.quads();
+        if (unitFile != null) {
+            try {
+                IR.saveUnit(unitFile, new IR.Unit(irAfter, sem, sourceHash(safeSource), pipelineKey(passes)));
+            } catch (IOException ex) {
+                // 缓存只影响下一次编译的速度，本次编译仍然成功
+                LOG.log(System.Logger.Level.WARNING, "写预编译单元失败: " + unitFile + ": " + ex.getMessage());
+            }
+        }
 
         // 6. 目标代码生成
         List<CodeGen.Instr> asm = CodeGen.generate(irAfter, sem);
@@ -77,16 +189,22 @@ public class CompilerService {
         String irAfterText = formatQuads(irAfter);
         String asmText = CodeGen.print(asm);
 
-        // 写文件
-        try {
-            CodeGen.writeToFile(Path.of("src", "main", "resources", "out.asm"), asm);CodeGen.writeToFile(Path.of("target", "out.asm"), asm);
-        } catch (Exception ex) {
-            errors.add("写文件失败: " + ex.getMessage());
-        }
-
         return new Artifacts(
                 lexerText, astText, irBeforeText, irAfterText, asmText,
-                joinErrors(errors), tokens, irBefore, irAfter, asm
+                joinErrors(errors), tokens, irBefore, irAfter, asm,
+                optimized == null ? List.of() : optimized.stats()
+        );
+    }
+
+    /**
+     * 由预编译单元生成产物：只执行目标代码生成
+     */
+    private static Artifacts fromUnit(IR.Unit unit) {
+        List<IR.Quad> irAfter = unit.quads();
+        List<CodeGen.Instr> asm = CodeGen.generate(irAfter, unit.semantic());
+        return new Artifacts(
+                "", "", "", formatQuads(irAfter), CodeGen.print(asm),
+                joinErrors(List.of()), List.of(), List.of(), irAfter, asm
         );
     }
 
@@ -110,10 +228,19 @@ public class CompilerService {
         private final List<IR.Quad> irBefore;
         private final List<IR.Quad> irAfter;
         private final List<CodeGen.Instr> asm;
+        private final List<Optimizer.PassStats> passStats;
 
         public Artifacts(
                 String lexerText, String astText, String irBeforeText, String irAfterText, String asmText, String errorText,
                 List<Lexer.Token> tokens, List<IR.Quad> irBefore, List<IR.Quad> irAfter, List<CodeGen.Instr> asm
+        ) {
+            this(lexerText, astText, irBeforeText, irAfterText, asmText, errorText, tokens, irBefore, irAfter, asm, List.of());
+        }
+
+        public Artifacts(
+                String lexerText, String astText, String irBeforeText, String irAfterText, String asmText, String errorText,
+                List<Lexer.Token> tokens, List<IR.Quad> irBefore, List<IR.Quad> irAfter, List<CodeGen.Instr> asm,
+                List<Optimizer.PassStats> passStats
         ) {
             this.lexerText = lexerText == null ? "" : lexerText;
             this.astText = astText == null ? "" : astText;
@@ -125,6 +252,7 @@ public class CompilerService {
             this.irBefore = irBefore == null ? List.of() : List.copyOf(irBefore);
             this.irAfter = irAfter == null ? List.of() : List.copyOf(irAfter);
             this.asm = asm == null ? List.of() : List.copyOf(asm);
+            this.passStats = passStats == null ? List.of() : List.copyOf(passStats);
         }
 
         public static Artifacts empty() {
@@ -143,6 +271,16 @@ public class CompilerService {
         public List<IR.Quad> irAfter() { return Collections.unmodifiableList(irAfter); }
         public List<CodeGen.Instr> asm() { return Collections.unmodifiableList(asm); }
 
+        /** 每个优化 pass 的统计（按执行顺序；未优化或命中缓存时为空） */
+        public List<Optimizer.PassStats> passStats() { return passStats; }
+
+        /** passStats 的文本形式，每个 pass 一行 */
+        public String passStatsText() {
+            StringBuilder sb = new StringBuilder();
+            for (Optimizer.PassStats s : passStats) sb.append(s).append("\n");
+            return sb.toString();
+        }
+
         public boolean hasErrors() {
             return errorText != null && !errorText.isBlank() && !"无错误".equals(errorText);
         }
@@ -188,7 +326,7 @@ public class CompilerService {
         List<IR.Quad> out = new ArrayList<>();
         if (input != null) {
             for (IR.Quad q : input) {
-                if (q != null) out.add(new IR.Quad(q.op, q.arg1, q.arg2, q.result));
+                if (q != null) out.add(new IR.Quad(q.op, q.left, q.right, q.dest));
             }
         }
         return out;
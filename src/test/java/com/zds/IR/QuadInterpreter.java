@@ -0,0 +1,166 @@
+package com.zds.IR;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * 四元式解释器（测试用）
+ * 按目标机的语义执行线性四元式：整数为 32 位补码（用 Long 保存），浮点为 Double，字符串拼接。
+ * 语言没有输入输出，程序的结果就是结束时全局变量的值，优化前后的结果应当相同。
+ */
+public final class QuadInterpreter {
+    public static final long STEP_LIMIT = 5_000_000;
+
+    private QuadInterpreter() {
+    }
+
+    /**
+     * 执行程序，返回结束时全局变量（作用域深度 0，不含优化器的保存变量）的值
+     */
+    public static Map<String, Object> globals(List<IR.Quad> quads) {
+        Map<String, Object> vars = run(quads);
+        Map<String, Object> out = new TreeMap<>();
+        for (IR.Quad q : quads) {
+            for (IR.Operand o : new IR.Operand[]{q.left, q.right, q.dest}) {
+                if (isGlobal(o)) out.put(o.text, vars.getOrDefault(o.text, 0L));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 执行程序，返回结束时所有名字（变量与临时变量）的值
+     */
+    public static Map<String, Object> run(List<IR.Quad> quads) {
+        Map<String, Integer> labels = new HashMap<>();
+        for (int i = 0; i < quads.size(); i++) {
+            if ("label".equals(quads.get(i).op)) labels.put(quads.get(i).arg1, i);
+        }
+        Map<String, Object> vars = new HashMap<>();
+        long steps = 0;
+        int pc = 0;
+        while (pc < quads.size()) {
+            if (++steps > STEP_LIMIT) fail("超过步数上限");
+            IR.Quad q = quads.get(pc++);
+            String op = q.op;
+            switch (op) {
+                case "label":
+                    break;
+                case "j":
+                    pc = target(labels, q.result);
+                    break;
+                case ":=":
+                    vars.put(q.result, value(vars, q.left));
+                    break;
+                case "neg": case "ineg": case "dneg": {
+                    Object v = value(vars, q.left);
+                    vars.put(q.result, v instanceof Long ? (Object) (long) (int) (-(Long) v) : (Object) (-((Number) v).doubleValue()));
+                    break;
+                }
+                case "i2d":
+                    vars.put(q.result, ((Number) value(vars, q.left)).doubleValue());
+                    break;
+                default:
+                    if (op.startsWith("j")) {
+                        if (compare(op.substring(1), value(vars, q.left), value(vars, q.right))) pc = target(labels, q.result);
+                    } else {
+                        vars.put(q.result, arith(op, value(vars, q.left), value(vars, q.right)));
+                    }
+            }
+        }
+        return vars;
+    }
+
+    /**
+     * 断言两组全局变量的值相同（数值按大小比较，优化可能把 2.0 写成整数常量 2）
+     */
+    public static void assertSameGlobals(Map<String, Object> expected, Map<String, Object> actual) {
+        for (Map.Entry<String, Object> e : expected.entrySet()) {
+            Object a = actual.getOrDefault(e.getKey(), 0L);
+            Object x = e.getValue();
+            boolean same = x instanceof Number && a instanceof Number
+                    ? ((Number) x).doubleValue() == ((Number) a).doubleValue()
+                    : Objects.equals(x, a);
+            if (!same) assertEquals(x, a, "变量 " + e.getKey() + "\n期望 " + expected + "\n实际 " + actual);
+        }
+    }
+
+    public static boolean isGlobal(IR.Operand o) {
+        if (!o.isVar() || o.text.indexOf('$') >= 0) return false;
+        IR.Operand.Var v = (IR.Operand.Var) o;
+        return v.symbol == null || v.symbol.depth == 0;
+    }
+
+    private static int target(Map<String, Integer> labels, String label) {
+        Integer t = labels.get(label);
+        if (t == null) fail("跳转到不存在的标签 " + label);
+        return t;
+    }
+
+    private static Object value(Map<String, Object> vars, IR.Operand o) {
+        switch (o.kind) {
+            case INT: return Long.parseLong(o.text);
+            case DOUBLE: return o.numericValue();
+            case STRING: return o.text.substring(1, o.text.length() - 1);
+            case TEMP: case VAR: return vars.getOrDefault(o.text, 0L);
+            default: return 0L;
+        }
+    }
+
+    private static boolean compare(String op, Object a, Object b) {
+        int c;
+        if (a instanceof Long && b instanceof Long) c = Long.compare((Long) a, (Long) b);
+        else if (a instanceof Number && b instanceof Number) c = Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        else c = String.valueOf(a).compareTo(String.valueOf(b));
+        switch (op) {
+            case "<": return c < 0;
+            case "<=": return c <= 0;
+            case ">": return c > 0;
+            case ">=": return c >= 0;
+            case "==": return c == 0;
+            case "!=": return c != 0;
+            default: throw new IllegalArgumentException("未知的比较: " + op);
+        }
+    }
+
+    private static Object arith(String op, Object a, Object b) {
+        if ("concat".equals(op)) return text(a) + text(b);
+        char base = op.length() == 1 ? op.charAt(0) : "+-*/".charAt(List.of("add", "sub", "mul", "div").indexOf(op.substring(1)));
+        if (base == '+' && (a instanceof String || b instanceof String)) return text(a) + text(b);
+        boolean dbl = op.startsWith("d") || !op.startsWith("i") && (a instanceof Double || b instanceof Double);
+        if (!dbl) {
+            long x = ((Number) a).longValue();
+            long y = ((Number) b).longValue();
+            switch (base) {
+                case '+': return (long) (int) (x + y);
+                case '-': return (long) (int) (x - y);
+                case '*': return (long) (int) (x * y);
+                default:
+                    if (y == 0) fail("整数除以 0");
+                    return (long) (int) (x / y);
+            }
+        }
+        double x = ((Number) a).doubleValue();
+        double y = ((Number) b).doubleValue();
+        switch (base) {
+            case '+': return x + y;
+            case '-': return x - y;
+            case '*': return x * y;
+            default: return x / y;
+        }
+    }
+
+    private static String text(Object o) {
+        if (o instanceof Double) {
+            double d = (Double) o;
+            if (Math.rint(d) == d && !Double.isInfinite(d)) return Long.toString((long) d);
+        }
+        return String.valueOf(o);
+    }
+}
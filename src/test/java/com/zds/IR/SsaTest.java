@@ -0,0 +1,81 @@
+package com.zds.IR;
+
+import com.zds.optimizer.Optimizer;
+import com.zds.service.CompilerService;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SsaTest {
+    static final String[] PROGRAMS = {
+            "int a = 1; int b = 2; int i = 0; while (i < 10) { int t = a; a = b; b = t; i = i + 1; }",
+            "int x = 0; int y = 3; if (y > 2) { x = y * 2; } else { x = y - 1; } y = x + y;",
+            "int s = 0; int i = 0; while (i < 5) { int j = 0; while (j < i) { s = s + j; j = j + 1; } i = i + 1; }",
+            "int z = 9; int n = 5; int s = 7; int k = 3; while (k < n) { s = s + k; k = k + 1; }",
+            "double d = 1; string r = \"a\"; int i = 0; while (i < 3) { d = d * 1.5; r = r + i; i = i + 1; }",
+    };
+
+    static List<IR.Quad> ir(String source) {
+        CompilerService.Artifacts a = CompilerService.compile(source, false);
+        assertFalse(a.hasErrors(), a.errorText());
+        return a.irBefore();
+    }
+
+    static List<IR.Quad> roundTrip(List<IR.Quad> quads) {
+        IR.Cfg cfg = IR.Cfg.build(quads);
+        IR.fromSsa(IR.toSsa(cfg));
+        return cfg.toQuads();
+    }
+
+    @Test
+    void roundTripPreservesGlobals() {
+        for (String src : PROGRAMS) {
+            List<IR.Quad> input = ir(src);
+            QuadInterpreter.assertSameGlobals(QuadInterpreter.globals(input), QuadInterpreter.globals(roundTrip(input)));
+        }
+    }
+
+    /**
+     * 旋转后的循环以条件跳转结束并落出程序末尾：出口副本放在补出的出口块中，结果不变
+     */
+    @Test
+    void exitCopiesCoverLastBlockFallingOffTheEnd() {
+        List<IR.Quad> rotated = Optimizer.PassManager.parse("simplify-cfg,rotate,simplify-cfg").run(ir(PROGRAMS[3])).quads();
+        IR.Quad last = rotated.get(rotated.size() - 1);
+        assertTrue(last.op.startsWith("j") && !"j".equals(last.op), "最后一条应为条件跳转: " + rotated);
+
+        IR.Cfg cfg = IR.Cfg.build(rotated);
+        IR.Ssa ssa = IR.toSsa(cfg);
+        long copies = cfg.blocks().stream().flatMap(b -> b.quads().stream()).filter(ssa::isExitCopy).count();
+        assertEquals(4, copies); // z n s k
+        IR.fromSsa(ssa);
+        QuadInterpreter.assertSameGlobals(QuadInterpreter.globals(rotated), QuadInterpreter.globals(cfg.toQuads()));
+    }
+
+    /**
+     * 拆分关键边时新建、最终没有放入复制的块不应留下 "跳到跳转" 的桩
+     */
+    @Test
+    void noJumpStubsLeftAfterDestruction() {
+        for (String src : PROGRAMS) {
+            List<IR.Quad> input = Optimizer.PassManager.level(2).run(ir(src)).quads();
+            List<IR.Quad> back = roundTrip(input);
+            assertTrue(stubs(back) <= stubs(input), "\n" + input + "\n->\n" + back);
+        }
+    }
+
+    /** 只有一条无条件跳转的块，加上跳到紧随其后标签的跳转 */
+    static int stubs(List<IR.Quad> quads) {
+        int n = 0;
+        for (int i = 0; i + 1 < quads.size(); i++) {
+            IR.Quad q = quads.get(i), next = quads.get(i + 1);
+            if ("label".equals(q.op) && "j".equals(next.op)) n++;
+            if (q.op.startsWith("j") && "label".equals(next.op) && q.result.equals(next.arg1)) n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,78 @@
+package com.zds.IR;
+
+import com.zds.service.CompilerService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UnitCodecTest {
+    static final String SOURCE = "int a = 1; double d = 2.5; string s = \"x\"; { int a = 3; a = a + 1; } while (a < 4) { a = a + 1; }";
+
+    @TempDir
+    Path dir;
+
+    static IR.Unit unit() {
+        List<IR.Quad> quads = CompilerService.compile(SOURCE, false).irBefore();
+        return new IR.Unit(quads, null, 42, "O3");
+    }
+
+    @Test
+    void roundTripKeepsTypedOperandsAndHeader() throws IOException {
+        IR.Unit unit = unit();
+        Path file = dir.resolve("a.zu");
+        IR.saveUnit(file, unit);
+        IR.Unit back = IR.loadUnit(file);
+
+        assertEquals(42, back.sourceHash());
+        assertEquals("O3", back.pipeline());
+        assertEquals(unit.quads().size(), back.quads().size());
+        for (int i = 0; i < unit.quads().size(); i++) {
+            IR.Quad x = unit.quads().get(i), y = back.quads().get(i);
+            assertEquals(x.toString(), y.toString());
+            for (IR.Operand[] p : new IR.Operand[][]{{x.left, y.left}, {x.right, y.right}, {x.dest, y.dest}}) {
+                assertSame(p[0].kind, p[1].kind);
+                if (p[0].isVar()) assertEquals(((IR.Operand.Var) p[0]).symbol.depth, ((IR.Operand.Var) p[1]).symbol.depth);
+            }
+        }
+    }
+
+    /**
+     * 长度字段被改成很大的值：报告为损坏的单元，而不是按它分配内存
+     */
+    @Test
+    void rejectsLengthFieldsBeyondTheFile() throws IOException {
+        Path file = dir.resolve("a.zu");
+        IR.saveUnit(file, unit());
+        byte[] bytes = Files.readAllBytes(file);
+        for (int offset : new int[]{24, 28}) { // 字符串个数、第一个字符串的长度
+            byte[] bad = bytes.clone();
+            ByteBuffer.wrap(bad).putInt(offset, Integer.MAX_VALUE);
+            Files.write(file, bad);
+            assertThrows(IOException.class, () -> IR.loadUnit(file));
+            ByteBuffer.wrap(bad).putInt(offset, -1);
+            Files.write(file, bad);
+            assertThrows(IOException.class, () -> IR.loadUnit(file));
+        }
+    }
+
+    @Test
+    void rejectsTruncatedFiles() throws IOException {
+        Path file = dir.resolve("a.zu");
+        IR.saveUnit(file, unit());
+        byte[] bytes = Files.readAllBytes(file);
+        for (int n : new int[]{0, 10, 30, bytes.length / 2, bytes.length - 1}) {
+            Files.write(file, Arrays.copyOf(bytes, n));
+            assertThrows(IOException.class, () -> IR.loadUnit(file));
+        }
+    }
+}
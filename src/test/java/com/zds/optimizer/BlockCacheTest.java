@@ -0,0 +1,102 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+import com.zds.Semantic.Semantic;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static com.zds.optimizer.TestPrograms.ir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockCacheTest {
+
+    static String local(List<IR.Quad> input, BlockCache cache) {
+        IR.Cfg cfg = IR.Cfg.build(input);
+        BlockParallelism.run(cfg, Integer.MAX_VALUE, cache);
+        return cfg.toQuads().toString();
+    }
+
+    /**
+     * 第二次优化同一程序时块内改写全部命中缓存，结果与不使用缓存相同
+     */
+    @Test
+    void repeatedRunHitsWithoutNewMisses() {
+        BlockCache cache = new BlockCache(BlockCache.DEFAULT_CAPACITY);
+        for (String src : TestPrograms.PROGRAMS) {
+            List<IR.Quad> input = ir(src);
+            String uncached = local(input, null);
+            assertEquals(uncached, local(input, cache));
+            long misses = cache.misses();
+            long hits = cache.hits();
+            assertEquals(uncached, local(input, cache));
+            assertEquals(misses, cache.misses(), src);
+            assertTrue(cache.hits() > hits, src);
+        }
+    }
+
+    /**
+     * 只有临时变量编号不同的块共用一个结果，换回各自的编号
+     */
+    @Test
+    void blocksDifferingOnlyInTempNumbersShareAnEntry() {
+        List<IR.Quad> a = ir("int x = 2; int y = 3; int z = x * 4 + y * 4 + 1 * x;");
+        List<IR.Quad> b = new ArrayList<>();
+        for (IR.Quad q : a) b.add(new IR.Quad(q.op, shift(q.left), shift(q.right), shift(q.dest)));
+
+        BlockCache cache = new BlockCache(16);
+        String first = local(a, cache);
+        long misses = cache.misses();
+        String second = local(b, cache);
+        assertEquals(misses, cache.misses());
+        assertEquals(first.replaceAll("\\bt(\\d+)", "t1$1"), second);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        BlockCache cache = new BlockCache(2);
+        for (String src : TestPrograms.PROGRAMS) local(ir(src), cache);
+        assertTrue(cache.size() <= 2);
+    }
+
+    static IR.Operand shift(IR.Operand o) {
+        return o.isTemp() ? IR.Operand.parse("t1" + o.text.substring(1)) : o;
+    }
+
+    /**
+     * 缓存属于流水线：重复编译命中且计数可以从 Optimizer.PassManager 读到；命中时使用本次编译的符号
+     */
+    @Test
+    void passManagerOwnsItsCache() {
+        Optimizer.PassManager pm = Optimizer.PassManager.level(3);
+        String src = TestPrograms.PROGRAMS[2];
+        pm.run(ir(src));
+        long misses = pm.cacheMisses();
+        assertTrue(misses > 0 && pm.cacheSize() > 0);
+
+        List<IR.Quad> again = ir(src); // 新的编译，新的符号对象
+        Set<Semantic.Symbol> symbols = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (IR.Quad q : again) {
+            for (IR.Operand o : new IR.Operand[]{q.left, q.right, q.dest}) {
+                if (o.isVar()) symbols.add(((IR.Operand.Var) o).symbol);
+            }
+        }
+        List<IR.Quad> out = pm.withParallelThreshold(Integer.MAX_VALUE).run(again).quads();
+        assertEquals(misses, pm.cacheMisses());
+        assertTrue(pm.cacheHits() > 0);
+        for (IR.Quad q : out) {
+            for (IR.Operand o : new IR.Operand[]{q.left, q.right, q.dest}) {
+                if (o.isVar() && o.text.indexOf('$') < 0) assertTrue(symbols.contains(((IR.Operand.Var) o).symbol), q.toString());
+            }
+        }
+
+        Optimizer.PassManager uncached = pm.withBlockCache(0);
+        uncached.run(again);
+        assertEquals(0, uncached.cacheHits() + uncached.cacheMisses());
+    }
+}
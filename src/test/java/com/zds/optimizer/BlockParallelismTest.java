@@ -0,0 +1,53 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.zds.optimizer.TestPrograms.ir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockParallelismTest {
+
+    /** 足够大、可以被切成多个任务的程序：每个分支一个块 */
+    static String largeProgram() {
+        StringBuilder sb = new StringBuilder("int a = 3; int b = 4; int s = 0;");
+        for (int i = 0; i < 600; i++) {
+            sb.append(" if (s < ").append(i).append(") { s = s + a * b + ").append(i).append(" * 2 - 0; } else { s = s - (a + b) * 1; }");
+        }
+        return sb.toString();
+    }
+
+    static String local(List<IR.Quad> input, int threshold) {
+        IR.Cfg cfg = IR.Cfg.build(input);
+        BlockParallelism.run(cfg, threshold, null);
+        return cfg.toQuads().toString();
+    }
+
+    /**
+     * 并行执行块内改写与顺序执行的结果逐条相同
+     */
+    @Test
+    void parallelRewriteMatchesSequential() {
+        List<IR.Quad> input = ir(largeProgram());
+        assertTrue(input.size() > 2 * BlockParallelism.GRAIN);
+        assertTrue(ForkJoinPool.getCommonPoolParallelism() >= 2, "公共池只有一个线程，测试不到并行路径");
+        String sequential = local(input, Integer.MAX_VALUE);
+        for (int i = 0; i < 3; i++) assertEquals(sequential, local(input, 0));
+    }
+
+    @Test
+    void parallelPipelinesMatchSequential() {
+        for (String src : TestPrograms.PROGRAMS) {
+            List<IR.Quad> input = ir(src);
+            for (String spec : PassManagerTest.PIPELINES) {
+                Optimizer.PassManager pm = Optimizer.PassManager.parse(spec).withBlockCache(0);
+                assertEquals(pm.withParallelThreshold(Integer.MAX_VALUE).run(input).quads().toString(),
+                        pm.withParallelThreshold(0).run(input).quads().toString(), spec);
+            }
+        }
+    }
+}
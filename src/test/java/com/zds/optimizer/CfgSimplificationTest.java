@@ -0,0 +1,68 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+import com.zds.IR.QuadInterpreter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.zds.optimizer.TestPrograms.ir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CfgSimplificationTest {
+
+    static List<IR.Quad> simplify(String source) {
+        List<IR.Quad> input = ir(source);
+        List<IR.Quad> output = Optimizer.PassManager.parse("simplify-cfg").run(input).quads();
+        QuadInterpreter.assertSameGlobals(QuadInterpreter.globals(input), QuadInterpreter.globals(output));
+        return output;
+    }
+
+    /**
+     * (j<, a, b, L1) (j, _, _, L2) L1: 条件取反为 (j>=, a, b, L2)，跳到下一条的 j 与无人引用的 L1、L3 删除
+     */
+    @Test
+    void invertsBranchOverUnconditionalJump() {
+        List<IR.Quad> output = simplify("int a = 1; int b = 2; int x = 0; if (a < b) { x = 1; } x = x + 1;");
+
+        assertEquals("[(:=, 1, _, a), (:=, 2, _, b), (:=, 0, _, x), (j>=, a, b, L2), (:=, 1, _, x),"
+                + " (label, L2, _, _), (iadd, x, 1, x)]", output.toString());
+    }
+
+    /**
+     * 内层 if 的结尾经过空块 L5 / L6 与 (j, _, _, L3) 才到汇合点：跳转直接指向 L3
+     */
+    @Test
+    void threadsJumpChains() {
+        List<IR.Quad> output = simplify("int a = 1; int b = 2; int x = 0;"
+                + " if (a < b) { if (x < b) { x = 1; } } else { x = 2; } x = x + 1;");
+
+        assertEquals("[(:=, 1, _, a), (:=, 2, _, b), (:=, 0, _, x), (j>=, a, b, L2), (j>=, x, b, L3), (:=, 1, _, x),"
+                + " (j, _, _, L3), (label, L2, _, _), (:=, 2, _, x), (label, L3, _, _), (iadd, x, 1, x)]", output.toString());
+    }
+
+    /**
+     * (j<, 3, 5, L1) 恒成立：改为顺序执行 then 分支，else 分支不可达被删除
+     */
+    @Test
+    void foldsAlwaysTakenBranch() {
+        List<IR.Quad> output = simplify("int x = 0; if (3 < 5) { x = 1; } else { x = 2; }");
+
+        assertEquals("[(:=, 0, _, x), (:=, 1, _, x)]", output.toString());
+    }
+
+    /**
+     * (j<, 5, 3, L2) 恒不成立：循环体不可达，与循环头、回跳一起删除
+     */
+    @Test
+    void removesNeverTakenLoop() {
+        List<IR.Quad> output = simplify("int x = 0; int y = 0; while (5 < 3) { x = x + 1; } y = 2;");
+
+        assertEquals("[(:=, 0, _, x), (:=, 0, _, y), (:=, 2, _, y)]", output.toString());
+    }
+
+    @Test
+    void preservesGlobals() {
+        TestPrograms.assertPreservesGlobals(Optimizer.PassManager.parse("simplify-cfg"));
+    }
+}
@@ -0,0 +1,48 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+import com.zds.IR.QuadInterpreter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.zds.optimizer.TestPrograms.ir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DeadCodeEliminationTest {
+    static final String DEAD_STORES =
+            "int g = 0; int h = 0; g = 1; g = 2; { int x = 5; x = 6; h = x + g; if (h > 3) { g = 7; } else { g = 8; } g = 9; }";
+
+    /**
+     * 旋转后的循环以条件跳转结束并落出程序末尾：最后一个块也是出口，全局变量的最后一次赋值不能删除
+     */
+    @Test
+    void keepsGlobalsLiveWhenLastBlockFallsOffTheEnd() {
+        List<IR.Quad> input = ir("int z = 9; int n = 5; int s = 7; int k = 3; while (k < n) { s = s + k; k = k + 1; }");
+        List<IR.Quad> output = Optimizer.PassManager.parse("simplify-cfg,rotate,simplify-cfg,dce").run(input).quads();
+
+        Map<String, Object> after = QuadInterpreter.globals(output);
+        assertEquals(9L, after.get("z"));
+        QuadInterpreter.assertSameGlobals(QuadInterpreter.globals(input), after);
+    }
+
+    /**
+     * 被覆盖的赋值、只写不读的局部变量删除；全局变量的最后一次赋值保留
+     */
+    @Test
+    void removesDeadDefinitionsOnly() {
+        List<IR.Quad> input = ir(DEAD_STORES);
+        for (int level = 1; level <= 3; level++) {
+            List<IR.Quad> output = Optimizer.PassManager.level(level).run(input).quads();
+            QuadInterpreter.assertSameGlobals(QuadInterpreter.globals(input), QuadInterpreter.globals(output));
+            assertEquals("[(:=, 8, _, h), (:=, 9, _, g)]", output.toString());
+        }
+    }
+
+    @Test
+    void preservesGlobals() {
+        TestPrograms.assertPreservesGlobals(Optimizer.PassManager.parse("dce"));
+        TestPrograms.assertPreservesGlobals(Optimizer.PassManager.parse("local,dce,simplify-cfg"));
+    }
+}
@@ -0,0 +1,33 @@
+package com.zds.optimizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static com.zds.optimizer.TestPrograms.ir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExitObservableTest {
+
+    static String run(Optimizer.ExitObservable observable) {
+        return Optimizer.PassManager.level(1).withExitObservable(observable).run(ir(DeadCodeEliminationTest.DEAD_STORES)).quads().toString();
+    }
+
+    /**
+     * 出口处可观察的变量决定哪些最后一次赋值要保留
+     */
+    @Test
+    void observableSetDecidesWhichStoresSurvive() {
+        assertEquals("[(:=, 8, _, h), (:=, 9, _, g)]", run(Optimizer.ExitObservable.GLOBALS));
+        assertEquals("[(:=, 6, _, x), (:=, 8, _, h), (:=, 9, _, g)]", run(Optimizer.ExitObservable.ALL));
+        assertEquals("[(:=, 8, _, h)]", run(Optimizer.ExitObservable.only(Set.of("h"))));
+        assertEquals("[]", run(Optimizer.ExitObservable.only(Set.of())));
+        assertEquals(run(Optimizer.ExitObservable.GLOBALS), run(null));
+    }
+
+    @Test
+    void descriptionIsStable() {
+        assertEquals("only [a, b]", Optimizer.ExitObservable.only(Set.of("b", "a")).toString());
+        assertEquals("globals", Optimizer.ExitObservable.GLOBALS.toString());
+    }
+}
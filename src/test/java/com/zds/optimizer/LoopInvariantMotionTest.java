@@ -0,0 +1,52 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+import com.zds.IR.QuadInterpreter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.zds.optimizer.TestPrograms.ir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LoopInvariantMotionTest {
+
+    static List<IR.Quad> hoist(String source) {
+        List<IR.Quad> input = ir(source);
+        List<IR.Quad> output = Optimizer.PassManager.parse("licm").run(input).quads();
+        QuadInterpreter.assertSameGlobals(QuadInterpreter.globals(input), QuadInterpreter.globals(output));
+        return output;
+    }
+
+    /**
+     * n * m 在循环内不变：前置块计算 licm$1，循环体改为复制
+     */
+    @Test
+    void hoistsInvariantMultiplyIntoPreheader() {
+        List<IR.Quad> output = hoist("int n = 5; int m = 3; int s = 0; int i = 0; while (i < n) { s = s + n * m; i = i + 1; }");
+
+        assertEquals("[(:=, 5, _, n), (:=, 3, _, m), (:=, 0, _, s), (:=, 0, _, i), (imul, n, m, licm$1),"
+                + " (label, L1, _, _), (j<, i, n, L2), (j, _, _, L3),"
+                + " (label, L2, _, _), (:=, licm$1, _, t1), (iadd, s, t1, s), (iadd, i, 1, i), (j, _, _, L1),"
+                + " (label, L3, _, _)]", output.toString());
+    }
+
+    /**
+     * 嵌套循环：n * m 提到两层循环之外，i * 2 只对内层不变，提到内层循环的前置块
+     */
+    @Test
+    void hoistsEachComputationToItsOutermostInvariantLoop() {
+        List<IR.Quad> output = hoist("int n = 5; int m = 3; int s = 0; int i = 0; while (i < n) { int j = 0;"
+                + " while (j < m) { s = s + n * m + i * 2; j = j + 1; } i = i + 1; }");
+
+        int outer = output.indexOf(output.stream().filter(q -> "label".equals(q.op)).findFirst().orElseThrow());
+        int inner = output.indexOf(output.stream().filter(q -> "label".equals(q.op) && "L4".equals(q.arg1)).findFirst().orElseThrow());
+        assertEquals("(imul, n, m, licm$1)", output.get(outer - 1).toString());
+        assertEquals("(imul, i, 2, licm$2)", output.get(inner - 1).toString());
+    }
+
+    @Test
+    void preservesGlobals() {
+        TestPrograms.assertPreservesGlobals(Optimizer.PassManager.parse("licm+local"));
+    }
+}
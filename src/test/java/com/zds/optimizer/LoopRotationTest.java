@@ -0,0 +1,50 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+import com.zds.IR.QuadInterpreter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.zds.optimizer.TestPrograms.ir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LoopRotationTest {
+
+    static List<IR.Quad> rotate(String source) {
+        List<IR.Quad> input = ir(source);
+        List<IR.Quad> output = Optimizer.PassManager.parse("simplify-cfg,rotate").run(input).quads();
+        QuadInterpreter.assertSameGlobals(QuadInterpreter.globals(input), QuadInterpreter.globals(output));
+        return output;
+    }
+
+    /**
+     * 循环头成为取反的守卫 (j>=, i, n, L3)，条件移到循环体末尾作为回边 (j<, i, n, L4)，回跳 j 消失
+     */
+    @Test
+    void movesTestToLatch() {
+        List<IR.Quad> output = rotate("int s = 0; int n = s + 5; int i = 0; while (i < n) { s = s + i; i = i + 1; }");
+
+        assertEquals("[(:=, 0, _, s), (iadd, s, 5, n), (:=, 0, _, i),"
+                + " (label, L1, _, _), (j>=, i, n, L3),"
+                + " (label, L4, _, _), (iadd, s, i, s), (iadd, i, 1, i), (j<, i, n, L4),"
+                + " (label, L3, _, _)]", output.toString());
+    }
+
+    /**
+     * 进入时 0 < 5 已知成立：守卫删除，只剩末尾的条件回边
+     */
+    @Test
+    void dropsGuardKnownToPass() {
+        List<IR.Quad> output = rotate("int n = 5; int s = 0; int i = 0; while (i < n) { s = s + i; i = i + 1; }");
+
+        assertEquals("[(:=, 5, _, n), (:=, 0, _, s), (:=, 0, _, i), (label, L1, _, _),"
+                + " (label, L4, _, _), (iadd, s, i, s), (iadd, i, 1, i), (j<, i, n, L4),"
+                + " (label, L3, _, _)]", output.toString());
+    }
+
+    @Test
+    void preservesGlobals() {
+        TestPrograms.assertPreservesGlobals(Optimizer.PassManager.parse("simplify-cfg,rotate"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+import com.zds.IR.QuadInterpreter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.zds.optimizer.TestPrograms.ir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LoopUnrollingTest {
+
+    static long count(List<IR.Quad> quads, String op) {
+        return quads.stream().filter(q -> q.op.equals(op)).count();
+    }
+
+    /**
+     * 迭代次数少的循环完全展开：不再有条件跳转，常量一路折叠到最终值
+     */
+    @Test
+    void fullyUnrollsShortConstantLoops() {
+        List<IR.Quad> input = ir("int s = 0; int i = 0; while (i < 7) { s = s + i; i = i + 1; }");
+        List<IR.Quad> output = Optimizer.PassManager.parse("simplify-cfg,unroll+cp+local").run(input).quads();
+
+        assertEquals(0, output.stream().filter(q -> q.op.startsWith("j") && !"j".equals(q.op)).count(), output.toString());
+        assertEquals(21L, QuadInterpreter.globals(output).get("s"));
+    }
+
+    /**
+     * 部分展开：循环体放 F 份，N mod F 次迭代以直线代码放在前置块中
+     */
+    @Test
+    void partialUnrollRunsRemainderInPreheader() {
+        List<IR.Quad> input = ir("int s = 0; int i = 0; while (i < 30) { s = s + i * 3; i = i + 1; }");
+        List<IR.Quad> output = Optimizer.PassManager.parse("simplify-cfg,unroll").run(input).quads();
+
+        int loopStart = 0;
+        while (!"label".equals(output.get(loopStart).op)) loopStart++;
+        assertEquals(30 % 4, count(output.subList(0, loopStart), "imul"), output.toString());
+        assertEquals(4, count(output.subList(loopStart, output.size()), "imul"), output.toString());
+        assertEquals(1, count(output, "j>="), output.toString());
+        QuadInterpreter.assertSameGlobals(QuadInterpreter.globals(input), QuadInterpreter.globals(output));
+    }
+
+    @Test
+    void unrollFactorsPreserveGlobals() {
+        for (int factor : new int[]{1, 2, 3, 8}) {
+            TestPrograms.assertPreservesGlobals(Optimizer.PassManager.level(3).withUnrollFactor(factor));
+        }
+    }
+
+    @Test
+    void tripCount() {
+        assertEquals(7L, LoopUnrolling.tripCount(0, 7, 1, "j<"));
+        assertEquals(4L, LoopUnrolling.tripCount(0, 7, 2, "j<"));
+        assertEquals(8L, LoopUnrolling.tripCount(0, 7, 1, "j<="));
+        assertEquals(4L, LoopUnrolling.tripCount(10, 0, -3, "j>"));
+        assertEquals(0L, LoopUnrolling.tripCount(9, 7, 1, "j<"));
+        assertNull(LoopUnrolling.tripCount(0, 7, -1, "j<"));                       // 方向与步长不符
+        assertNull(LoopUnrolling.tripCount(0, Integer.MAX_VALUE, 1 << 20, "j<="));  // 归纳变量会溢出
+    }
+}
@@ -0,0 +1,36 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+import com.zds.IR.QuadInterpreter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.zds.optimizer.TestPrograms.ir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PartialRedundancyTest {
+
+    /**
+     * a * b 只在 then 分支计算、汇合后再算一次：else 分支插入一次计算，汇合后改为复制 pre$1
+     */
+    @Test
+    void insertsOnMissingBranchAndReusesAfterMerge() {
+        List<IR.Quad> input = ir("int a = 2; int b = 3; int c = 1; int x = 0; int y = 0; int z = 0;"
+                + " if (c > 0) { x = a * b; } else { y = 1; } z = a * b;");
+        List<IR.Quad> output = Optimizer.PassManager.parse("pre").run(input).quads();
+
+        assertEquals("[(:=, 2, _, a), (:=, 3, _, b), (:=, 1, _, c), (:=, 0, _, x), (:=, 0, _, y), (:=, 0, _, z),"
+                + " (j>, c, 0, L1), (j, _, _, L2),"
+                + " (label, L1, _, _), (imul, a, b, pre$1), (:=, pre$1, _, x), (j, _, _, L3),"
+                + " (label, L2, _, _), (:=, 1, _, y), (imul, a, b, pre$1),"
+                + " (label, L3, _, _), (:=, pre$1, _, z)]", output.toString());
+        QuadInterpreter.assertSameGlobals(QuadInterpreter.globals(input), QuadInterpreter.globals(output));
+    }
+
+    @Test
+    void preservesGlobals() {
+        TestPrograms.assertPreservesGlobals(Optimizer.PassManager.parse("pre+local"));
+        TestPrograms.assertPreservesGlobals(Optimizer.PassManager.parse("simplify-cfg,rotate,pre+local"));
+    }
+}
@@ -0,0 +1,85 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.zds.optimizer.TestPrograms.ir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PassManagerTest {
+    /** 自定义顺序：单独的 pass、清理 pass 的组合以及与默认级别不同的排列 */
+    static final String[] PIPELINES = {
+            "O1", "O2", "O3",
+            "dce,simplify-cfg",
+            "rotate,licm+local,dce",
+            "unroll+cp+local",
+            "pre+local,copy+local",
+            "sr+local,rotate,cp,dce",
+            "simplify-cfg,rotate,simplify-cfg,dce,unroll+local,licm,sr,local",
+    };
+
+    @Test
+    void pipelinesPreserveGlobals() {
+        for (String spec : PIPELINES) TestPrograms.assertPreservesGlobals(Optimizer.PassManager.parse(spec));
+    }
+
+    @Test
+    void inputIsNotModified() {
+        List<IR.Quad> input = ir(TestPrograms.PROGRAMS[0]);
+        String before = input.toString();
+        Optimizer.PassManager.level(3).run(input);
+        assertEquals(before, input.toString());
+    }
+
+    /**
+     * 清理 pass 只在组内第一个 pass 有变化时运行
+     */
+    @Test
+    void groupRunsFollowersOnlyAfterAChange() {
+        List<IR.Quad> input = ir("int a = 1; int b = a + 2;");
+        Optimizer.Result r = Optimizer.PassManager.parse("rotate+local,local+dce").run(input);
+        List<String> ran = r.stats().stream().map(Optimizer.PassStats::name).toList();
+        assertEquals(List.of("rotate", "local", "dce"), ran);
+    }
+
+    @Test
+    void parseRoundTripsAndRejectsUnknownPasses() {
+        assertEquals("cp,local+dce", Optimizer.PassManager.parse(" cp , local+dce ").toString());
+        assertEquals(Optimizer.PassManager.level(2).toString(), Optimizer.PassManager.parse("o2").toString());
+        assertEquals("", Optimizer.PassManager.parse(null).toString());
+        assertEquals(Optimizer.PassManager.level(3).cacheKey(), Optimizer.PassManager.parse(Optimizer.PassManager.level(3).toString()).cacheKey());
+        assertNotEquals(Optimizer.PassManager.level(3).cacheKey(), Optimizer.PassManager.level(3).withUnrollFactor(2).cacheKey());
+        assertThrows(IllegalArgumentException.class, () -> Optimizer.PassManager.parse("cp,nope"));
+        assertThrows(IllegalArgumentException.class, () -> Optimizer.PassManager.level(4));
+        assertThrows(IllegalArgumentException.class, () -> Optimizer.PassManager.level(-1));
+    }
+
+    @Test
+    void levelZeroCopiesInput() {
+        List<IR.Quad> input = ir(TestPrograms.PROGRAMS[5]);
+        Optimizer.Result r = Optimizer.PassManager.level(0).run(input);
+        assertEquals(input, r.quads());
+        assertTrue(r.stats().isEmpty());
+    }
+
+    /**
+     * removed / rewritten 是实际删除与新出现的四元式数，不是净变化：使代码变长的 pass 也不会出现负数
+     */
+    @Test
+    void statsCountDeletedAndInsertedQuads() {
+        Optimizer.Result r = Optimizer.PassManager.level(3).run(ir(TestPrograms.PROGRAMS[0]));
+        boolean grew = false;
+        for (Optimizer.PassStats s : r.stats()) {
+            assertTrue(s.removed() >= 0 && s.rewritten() >= 0, s.toString());
+            assertEquals(s.quadsAfter(), s.quadsBefore() - s.removed() + s.rewritten(), s.toString());
+            assertEquals(s.quadsAfter() - s.quadsBefore(), s.delta());
+            if (s.delta() > 0) grew = true;
+        }
+        assertTrue(grew, r.stats().toString());
+    }
+}
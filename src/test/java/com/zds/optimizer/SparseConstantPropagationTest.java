@@ -0,0 +1,61 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+import com.zds.IR.QuadInterpreter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.zds.optimizer.TestPrograms.ir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SparseConstantPropagationTest {
+    static final String GUARDED = "int s = 0; int k = 1; int i = 0;"
+            + " while (i < 10) { if (k != 1) { k = 2; } s = s + k; i = i + 1; }";
+
+    /**
+     * k = 2 所在的分支不可执行：循环头的 phi 只交汇 k = 1，k 是常量，分支随后被折叠
+     */
+    @Test
+    void ignoresAssignmentsOnUnexecutableBranch() {
+        List<IR.Quad> input = ir(GUARDED);
+        List<IR.Quad> output = Optimizer.PassManager.parse("sccp,local,simplify-cfg").run(input).quads();
+
+        assertEquals("[(:=, 0, _, s), (:=, 1, _, k), (:=, 0, _, i), (label, L1, _, _), (j>=, i, 10, L3),"
+                + " (iadd, s, 1, s), (iadd, i, 1, i), (j, _, _, L1), (label, L3, _, _)]", output.toString());
+        QuadInterpreter.assertSameGlobals(QuadInterpreter.globals(input), QuadInterpreter.globals(output));
+    }
+
+    /**
+     * 逐块状态表的 cp 在循环头看到 k = 1 与 k = 2 两个值，保留分支
+     */
+    @Test
+    void strongerThanDataflowPropagation() {
+        List<IR.Quad> output = Optimizer.PassManager.parse("cp,local,simplify-cfg").run(ir(GUARDED)).quads();
+
+        assertTrue(output.stream().anyMatch(q -> "j==".equals(q.op) && "k".equals(q.arg1)), output.toString());
+    }
+
+    /**
+     * 没有可替换的操作数时不做 SSA 往返：报告没有变化，四元式原样保留
+     */
+    @Test
+    void leavesCfgUntouchedWithoutConstants() {
+        List<IR.Quad> once = Optimizer.PassManager.parse("sccp,local,simplify-cfg").run(ir(GUARDED)).quads();
+        Optimizer.Result again = Optimizer.PassManager.parse("sccp").run(once);
+
+        assertFalse(again.stats().get(0).changed());
+        assertEquals(once.size(), again.quads().size());
+        for (int i = 0; i < once.size(); i++) {
+            if (!"label".equals(once.get(i).op)) assertTrue(once.get(i) == again.quads().get(i), once.get(i).toString());
+        }
+    }
+
+    @Test
+    void preservesGlobals() {
+        TestPrograms.assertPreservesGlobals(Optimizer.PassManager.parse("sccp"));
+        TestPrograms.assertPreservesGlobals(Optimizer.PassManager.parse("sccp,local,simplify-cfg"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+import com.zds.IR.QuadInterpreter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.zds.optimizer.TestPrograms.ir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class StrengthReductionTest {
+
+    /** 出口比较改为保存变量 sr$n 的循环 */
+    static IR.Loop replacedLoop(IR.Cfg cfg) {
+        for (IR.Loop loop : cfg.loops()) {
+            for (IR.BasicBlock b : loop.blocks()) {
+                IR.Quad t = b.terminator();
+                if (t != null && !"j".equals(t.op) && (t.arg1.startsWith("sr$") || t.arg2.startsWith("sr$"))) return loop;
+            }
+        }
+        return null;
+    }
+
+    /** 断言循环内不再出现变量 name */
+    static void assertAbsent(List<IR.Quad> output, String name) {
+        IR.Loop loop = replacedLoop(IR.Cfg.build(output));
+        assertNotNull(loop, output.toString());
+        for (IR.BasicBlock b : loop.blocks()) {
+            for (IR.Quad q : b.quads()) {
+                assertFalse(name.equals(q.arg1) || name.equals(q.arg2) || name.equals(q.result), q + " in " + output);
+            }
+        }
+    }
+
+    /**
+     * 展开后的循环每次迭代有 4 个自增：按总步长换算，比较改为 sr$n < 1000 * 8
+     */
+    @Test
+    void unrolledLoopDropsInductionVariable() {
+        List<IR.Quad> input = ir("int s = 0; for (int i = 0; i < 1000; i = i + 1) { s = s + i * 8; }");
+        List<IR.Quad> output = Optimizer.PassManager.level(3).run(input).quads();
+
+        assertAbsent(output, "i");
+        assertEquals(1, output.stream().filter(q -> "j<".equals(q.op) && "8000".equals(q.arg2)).count(), output.toString());
+        QuadInterpreter.assertSameGlobals(QuadInterpreter.globals(input), QuadInterpreter.globals(output));
+    }
+
+    /**
+     * 循环不变的界：前置块计算 n * 8，循环版本化后快速版本中没有 i
+     */
+    @Test
+    void invariantBoundIsScaledInPreheader() {
+        List<IR.Quad> input = ir("int n = 100; int s = 0; for (int i = 0; i < n; i = i + 1) { s = s + i * 8; }");
+        List<IR.Quad> output = Optimizer.PassManager.parse("licm,sr,dce").run(input).quads();
+
+        assertAbsent(output, "i");
+        assertEquals(1, output.stream().filter(q -> "imul".equals(q.op) && "n".equals(q.arg1) && "8".equals(q.arg2)).count(), output.toString());
+        QuadInterpreter.assertSameGlobals(QuadInterpreter.globals(input), QuadInterpreter.globals(output));
+    }
+
+    /**
+     * 界超出 i * 8 不溢出的范围时运行保留原比较的副本：i * 8 回绕的结果与未优化时相同
+     */
+    @Test
+    void outOfRangeBoundRunsOriginalLoop() {
+        for (String n : new String[]{"268435460", "-300000000", "5"}) {
+            List<IR.Quad> input = ir("int n = " + n + "; int s = 0;"
+                    + " for (int i = 268435400; i < n; i = i + 1) { s = s + i * 8; } s = s + 1;");
+            for (String spec : new String[]{"licm,sr,dce", "simplify-cfg,rotate,licm,sr+local,dce,simplify-cfg"}) {
+                List<IR.Quad> output = Optimizer.PassManager.parse(spec).run(input).quads();
+                QuadInterpreter.assertSameGlobals(QuadInterpreter.globals(input), QuadInterpreter.globals(output));
+            }
+        }
+    }
+
+    @Test
+    void preservesGlobals() {
+        TestPrograms.assertPreservesGlobals(Optimizer.PassManager.parse("licm,sr,dce"));
+        TestPrograms.assertPreservesGlobals(Optimizer.PassManager.parse("simplify-cfg,rotate,licm,sr+local,dce,simplify-cfg"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+import com.zds.IR.QuadInterpreter;
+import com.zds.service.CompilerService;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * 优化器测试共用的源程序与辅助方法
+ */
+final class TestPrograms {
+    static final String[] PROGRAMS = {
+            // 归纳变量与强度削减
+            "int n = 10; int x = 0; int s = 0; for (int i = 0; i < n; i = i + 1) { x = i * 8; s = s + x + i * 3; }",
+            // 步长不为 1、递减与接近溢出的循环
+            "int n = 7; int k = 3; int s = 0; int i = 0; while (i <= n) { s = s + i * k; i = i + 2; }"
+                    + " int j = 20; while (j > 0) { s = s + j * 5; j = j - 3; }"
+                    + " int m = 2147483000; while (m < 2147483600) { s = s + m * 4; m = m + 100; }",
+            // 嵌套循环中的不变量
+            "int n = 5; int m = 3; int s = 0; int i = 0; while (i < n) { int j = 0;"
+                    + " while (j < m) { s = s + n * m + i * 2; j = j + 1; } i = i + 1; }",
+            // 循环中的交换（SSA 的 lost-copy / swap 问题）
+            "int a = 1; int b = 2; int i = 0; while (i < 10) { int t = a; a = b; b = t; i = i + 1; }",
+            "int x = 0; int y = 0; int i = 0; while (i < 4) { y = x; x = x + 1; i = i + 1; } int z = y + x;",
+            // 分支与死存储
+            "int g = 0; int h = 0; g = 1; g = 2; { int x = 5; x = 6; h = x + g; if (h > 3) { g = 7; } else { g = 8; } g = 9; }",
+            // 浮点、整数除法与字符串
+            "int g0 = 7; double g1 = 2; double g2 = g0 / 2; double g3 = g0 / 2.0; int g4 = 7 / 2; double g5 = 1.5 * 0;"
+                    + " string s = \"a\" + g0; double g6 = -g0; double g7 = g1 * 3 + 1;"
+                    + " int i = 0; while (i < g1) { g1 = g1 + 0.5; i = i + 1; } if (g0 > 6.5) { g5 = g5 + 1; }",
+            // 循环次数为编译期常量、不能被展开因子整除
+            "int s = 0; int i = 0; while (i < 7) { s = s + i; i = i + 1; }",
+    };
+
+    private TestPrograms() {
+    }
+
+    /** 未优化的四元式 */
+    static List<IR.Quad> ir(String source) {
+        CompilerService.Artifacts a = CompilerService.compile(source, false);
+        assertFalse(a.hasErrors(), a.errorText());
+        return a.irBefore();
+    }
+
+    /** 断言流水线不改变 PROGRAMS 中每个程序结束时的全局变量 */
+    static void assertPreservesGlobals(Optimizer.PassManager passes) {
+        for (String src : PROGRAMS) {
+            List<IR.Quad> input = ir(src);
+            Map<String, Object> expected = QuadInterpreter.globals(input);
+            List<IR.Quad> output = passes.run(input).quads();
+            try {
+                QuadInterpreter.assertSameGlobals(expected, QuadInterpreter.globals(output));
+            } catch (AssertionError e) {
+                throw new AssertionError(passes.cacheKey() + ": " + src + "\n" + output, e);
+            }
+        }
+    }
+}
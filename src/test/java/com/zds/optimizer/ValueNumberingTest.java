@@ -0,0 +1,56 @@
+package com.zds.optimizer;
+
+import com.zds.IR.IR;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValueNumberingTest {
+
+    /**
+     * 交换了操作数的 2 * b 与 b * 2 是同一个值：第二次计算改为复制，使用处换成第一个持有者
+     */
+    @Test
+    void commutedExpressionBecomesCopy() {
+        List<IR.Quad> block = new ArrayList<>(List.of(
+                new IR.Quad("imul", "b", "2", "a"),
+                new IR.Quad("imul", "2", "b", "t1"),
+                new IR.Quad("iadd", "a", "t1", "c")));
+
+        assertTrue(ValueNumbering.run(block));
+        assertEquals("[(imul, b, 2, a), (:=, a, _, t1), (iadd, a, a, c)]", block.toString());
+    }
+
+    /**
+     * 持有者被重新定义后表项失效，之后的同一表达式重新计算
+     */
+    @Test
+    void redefinedHolderIsNotReused() {
+        List<IR.Quad> block = new ArrayList<>(List.of(
+                new IR.Quad("imul", "b", "2", "a"),
+                new IR.Quad("iadd", "b", "1", "b"),
+                new IR.Quad("imul", "b", "2", "c")));
+
+        ValueNumbering.run(block);
+        assertEquals("[(imul, b, 2, a), (iadd, b, 1, b), (imul, b, 2, c)]", block.toString());
+    }
+
+    /**
+     * 块内化简收尾：复制传播后多余的临时变量被删除
+     */
+    @Test
+    void blockRewriteDropsRedundantMultiply() {
+        List<IR.Quad> block = new ArrayList<>(List.of(
+                new IR.Quad("imul", "b", "2", "t1"),
+                new IR.Quad(":=", "t1", "_", "a"),
+                new IR.Quad("imul", "2", "b", "t2"),
+                new IR.Quad(":=", "t2", "_", "c")));
+
+        assertTrue(OptimizationPass.optimizeInPlace(block));
+        assertEquals("[(imul, b, 2, t1), (:=, t1, _, a), (:=, t1, _, c)]", block.toString());
+    }
+}
@@ -0,0 +1,61 @@
+package com.zds.service;
+
+import com.zds.optimizer.Optimizer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompilerServiceTest {
+    static final String SOURCE = "int g = 0; int i = 0; while (i < 10) { g = g + i * 2; i = i + 1; }";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void cachedUnitIsReusedOnlyForTheSamePipeline() throws IOException {
+        CompilerService.Artifacts first = CompilerService.compileCached(SOURCE, Optimizer.PassManager.level(2), dir);
+        assertFalse(first.irBefore().isEmpty()); // 完整编译
+        CompilerService.Artifacts hit = CompilerService.compileCached(SOURCE, Optimizer.PassManager.level(2), dir);
+        assertTrue(hit.irBefore().isEmpty());    // 命中：只从单元重新生成目标代码
+        assertEquals(first.irAfterText(), hit.irAfterText());
+        assertEquals(first.asmText(), hit.asmText());
+
+        // 不同的流水线或设置不会命中
+        assertFalse(CompilerService.compileCached(SOURCE, Optimizer.PassManager.level(3), dir).irBefore().isEmpty());
+        assertFalse(CompilerService.compileCached(SOURCE, Optimizer.PassManager.level(2).withExitObservable(Optimizer.ExitObservable.ALL), dir).irBefore().isEmpty());
+        assertFalse(CompilerService.compileCached(SOURCE, (Optimizer.PassManager) null, dir).irBefore().isEmpty());
+        try (var files = Files.list(dir)) {
+            assertEquals(4, files.count());
+        }
+    }
+
+    /**
+     * 缓存写不进去（缓存目录其实是一个文件）时编译仍然成功
+     */
+    @Test
+    void unitWriteFailureIsNotACompileError() throws IOException {
+        Path notADir = Files.writeString(dir.resolve("file"), "");
+        CompilerService.Artifacts a = CompilerService.compileCached(SOURCE, true, notADir);
+        assertFalse(a.hasErrors(), a.errorText());
+        assertFalse(a.asm().isEmpty());
+    }
+
+    /**
+     * 编译不写文件；汇编写到调用方指定的位置
+     */
+    @Test
+    void asmIsWrittenOnlyWhereRequested() throws IOException {
+        CompilerService.Artifacts a = CompilerService.compile(SOURCE, true);
+        Path out = dir.resolve("sub").resolve("out.asm");
+        CompilerService.writeAsm(a, List.of(out));
+        assertEquals(a.asmText(), Files.readString(out));
+    }
+}